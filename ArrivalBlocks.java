@@ -0,0 +1,143 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Hands out a run's arrivals a block of {@link #BLOCK_MINUTES} minutes at a
+ * time, as {@link ArrivalTrace}s drawn in one go by
+ * {@link ArrivalGenerator#nextBlock}. Drawing arrivals is then a tight loop
+ * kept apart from the scenarios' work, and with a worker pool the next block
+ * is drawn on another thread while the current one is being used.
+ *
+ * <p>Blocks are always drawn one after another from the same generator, so
+ * prefetching does not change the arrivals.
+ */
+final class ArrivalBlocks {
+    /**
+     * The number of minutes in a block.
+     */
+    static final int BLOCK_MINUTES = 4096;
+
+    /**
+     * Draws the arrivals.
+     */
+    private final ArrivalGenerator arrivals;
+
+    /**
+     * The first minute of the next block to draw.
+     */
+    private long nextMinute = 1;
+
+    /**
+     * The ID of the first person in the next block to draw.
+     */
+    private long nextId = 0;
+
+    /**
+     * Where the next block is drawn ahead of time, or null to draw blocks
+     * only when they are needed.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * The next block being drawn ahead of time, or null.
+     */
+    private CompletableFuture<ArrivalTrace> pending;
+
+    /**
+     * Creates the blocks of a run, starting at minute 1.
+     *
+     * @param arrivals draws the arrivals
+     */
+    public ArrivalBlocks(ArrivalGenerator arrivals) {
+        this.arrivals = arrivals;
+    }
+
+    /**
+     * Sets where the next block is drawn ahead of time.
+     *
+     * @param pool the worker pool, or null to stop drawing ahead
+     */
+    public void setPrefetch(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the next block of arrivals.
+     *
+     * @return the block
+     */
+    public ArrivalTrace next() {
+        ArrivalTrace block = (pending != null) ? pending.join() : draw();
+        pending = (pool != null) ? CompletableFuture.supplyAsync(this::draw, pool) : null;
+        return block;
+    }
+
+    /**
+     * Writes the generator, where the next block starts and any block
+     * already drawn ahead to a checkpoint, waiting for that block if it is
+     * still being drawn.
+     *
+     * @param out where to write
+     * @throws java.io.IOException if the checkpoint cannot be written
+     */
+    void writeTo(Checkpoint.Writer out) throws java.io.IOException {
+        ArrivalTrace ahead = (pending != null) ? pending.join() : null;
+        arrivals.writeTo(out);
+        out.putLong(nextMinute);
+        out.putLong(nextId);
+        out.putBoolean(ahead != null);
+        if (ahead != null) {
+            ahead.writeTo(out);
+        }
+    }
+
+    /**
+     * Returns blocks that hand out the same arrivals from here on as these
+     * will, with their own copy of the generator. A block already drawn
+     * ahead is waited for and shared, since blocks never change; drawing
+     * ahead is off in the copy until {@link #setPrefetch} is called.
+     *
+     * @return the copy
+     */
+    ArrivalBlocks fork() {
+        ArrivalTrace ahead = (pending != null) ? pending.join() : null;
+        ArrivalBlocks blocks = new ArrivalBlocks(arrivals.copy());
+        blocks.nextMinute = nextMinute;
+        blocks.nextId = nextId;
+        if (ahead != null) {
+            blocks.pending = CompletableFuture.completedFuture(ahead);
+        }
+        return blocks;
+    }
+
+    /**
+     * Reads blocks written by {@link #writeTo}. They hand out the same
+     * blocks the saved ones would have; drawing ahead is off until
+     * {@link #setPrefetch} is called again.
+     *
+     * @param in where to read from
+     * @return the blocks
+     * @throws java.io.IOException if the generator cannot be read
+     */
+    static ArrivalBlocks readFrom(Checkpoint.Reader in) throws java.io.IOException {
+        ArrivalBlocks blocks = new ArrivalBlocks(ArrivalGenerator.readFrom(in));
+        blocks.nextMinute = in.getLong();
+        blocks.nextId = in.getLong();
+        if (in.getBoolean()) {
+            blocks.pending = CompletableFuture.completedFuture(ArrivalTrace.readFrom(in));
+        }
+        return blocks;
+    }
+
+    /**
+     * Draws the next block.
+     *
+     * @return the block
+     */
+    private ArrivalTrace draw() {
+        ArrivalTrace block = ArrivalTrace.generate(arrivals, nextMinute, BLOCK_MINUTES, nextId);
+        nextMinute += BLOCK_MINUTES;
+        nextId += block.getSize();
+        return block;
+    }
+}
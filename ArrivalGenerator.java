@@ -0,0 +1,413 @@
+import java.util.Random;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+/**
+ * Draws who arrives from Mars each minute. This is the only place the
+ * arrival random numbers are drawn, so the simulation and pre-drawn
+ * {@link ArrivalTrace}s see exactly the same arrivals for the same seed.
+ *
+ * <p>There are two ways to get the random numbers. Made from an
+ * {@code int} seed, a generator uses a single {@link Random} for
+ * everything, which reproduces the arrivals of earlier versions exactly.
+ * Made from a {@link RandomGenerator.SplittableGenerator} (see
+ * {@link #newStream(long)}), it splits off an independent substream for
+ * each of the four things drawn: whether someone arrives, whether they
+ * are infected, their test and their survival time. These generators
+ * are not synchronized, so they are cheaper than {@code Random}, and a
+ * root stream can be split again to give each replication its own
+ * substream. With split streams, the minutes between arrivals are drawn
+ * directly from the geometric distribution, one draw per arrival instead
+ * of one per minute, so sparse arrivals cost almost nothing to draw. The substreams are {@link L64X128Stream}s, split off the way
+ * an {@link #ALGORITHM} stream splits, so their state can be checkpointed.
+ */
+final class ArrivalGenerator {
+    /**
+     * The algorithm used for split streams.
+     */
+    static final String ALGORITHM = "L64X128MixRandom";
+
+    /**
+     * Draws whether someone arrives.
+     */
+    private final RandomGenerator arrivalRng;
+
+    /**
+     * Draws whether the person is infected.
+     */
+    private final RandomGenerator infectedRng;
+
+    /**
+     * Draws the person's test.
+     */
+    private final RandomGenerator testRng;
+
+    /**
+     * Draws the person's survival time.
+     */
+    private final RandomGenerator survivalRng;
+
+    /**
+     * Whether each thing is drawn from its own substream.
+     */
+    private final boolean split;
+
+    /**
+     * The arrival probability.
+     */
+    private final double arrivalProb;
+
+    /**
+     * The infected probability.
+     */
+    private final double infectedProb;
+
+    /**
+     * The average survival time.
+     */
+    private final int survivalTime;
+
+    /**
+     * The survival time standard deviation.
+     */
+    private final int survivalStd;
+
+    /**
+     * The test result of the last person to arrive.
+     */
+    private double testResult;
+
+    /**
+     * The time left of the last person to arrive.
+     */
+    private int timeLeft;
+
+    /**
+     * With split streams, the number of minutes still to come before the
+     * next arrival, or -1 if it has not been drawn yet.
+     */
+    private long arrivalGap = -1;
+
+    /**
+     * The log of the probability that nobody arrives in a minute, used to
+     * draw the gaps between arrivals.
+     */
+    private final double logNoArrival;
+
+    /**
+     * Creates a generator for the given seed and parameters that draws
+     * everything from one {@link Random}, the same as earlier versions.
+     *
+     * @param seed the random number generator seed
+     * @param params the simulation parameters
+     */
+    public ArrivalGenerator(int seed, SimParams params) {
+        this(new Random(seed), params);
+    }
+
+    /**
+     * Creates a generator for the given parameters that splits a substream
+     * off the given stream for each thing it draws.
+     *
+     * @param stream the stream to split, e.g. from {@link #newStream(long)}
+     * @param params the simulation parameters
+     */
+    public ArrivalGenerator(RandomGenerator.SplittableGenerator stream, SimParams params) {
+        this(L64X128Stream.split(stream), L64X128Stream.split(stream),
+             L64X128Stream.split(stream), L64X128Stream.split(stream), params);
+    }
+
+    /**
+     * Creates a generator that draws everything from one generator.
+     *
+     * @param rng the random number generator
+     * @param params the simulation parameters
+     */
+    private ArrivalGenerator(RandomGenerator rng, SimParams params) {
+        this(rng, rng, rng, rng, params);
+    }
+
+    /**
+     * Creates a generator from a generator for each thing it draws.
+     *
+     * @param arrivalRng draws whether someone arrives
+     * @param infectedRng draws whether they are infected
+     * @param testRng draws their test
+     * @param survivalRng draws their survival time
+     * @param params the simulation parameters
+     */
+    private ArrivalGenerator(RandomGenerator arrivalRng, RandomGenerator infectedRng,
+                             RandomGenerator testRng, RandomGenerator survivalRng, SimParams params) {
+        this(arrivalRng, infectedRng, testRng, survivalRng, params.getArrivalProb(),
+             params.getInfectedProb(), params.getSurvivalTime(), params.getSurvivalStd());
+    }
+
+    /**
+     * Creates a generator from a generator for each thing it draws and the
+     * arrival parameters.
+     *
+     * @param arrivalRng draws whether someone arrives
+     * @param infectedRng draws whether they are infected
+     * @param testRng draws their test
+     * @param survivalRng draws their survival time
+     * @param arrivalProb the arrival probability
+     * @param infectedProb the infected probability
+     * @param survivalTime the average survival time
+     * @param survivalStd the survival time standard deviation
+     */
+    private ArrivalGenerator(RandomGenerator arrivalRng, RandomGenerator infectedRng,
+                             RandomGenerator testRng, RandomGenerator survivalRng,
+                             double arrivalProb, double infectedProb, int survivalTime, int survivalStd) {
+        this.arrivalRng = arrivalRng;
+        this.infectedRng = infectedRng;
+        this.testRng = testRng;
+        this.survivalRng = survivalRng;
+        this.split = (arrivalRng != infectedRng);
+        this.arrivalProb = arrivalProb;
+        this.infectedProb = infectedProb;
+        this.survivalTime = survivalTime;
+        this.survivalStd = survivalStd;
+        this.logNoArrival = Math.log1p(-arrivalProb);
+    }
+
+    /**
+     * Draws the next minute's arrival. If someone arrived, their values can
+     * be read with {@link #getTestResult()} and {@link #getTimeLeft()}.
+     *
+     * @return whether someone arrived
+     */
+    public boolean next() {
+        boolean arrived;
+        if (split) {
+            if (arrivalGap < 0) {
+                arrivalGap = drawGap();
+            }
+            arrived = (arrivalGap == 0);
+            arrivalGap--;
+        } else {
+            arrived = (arrivalRng.nextDouble() < arrivalProb);
+        }
+        if (arrived) {
+            boolean infected = (infectedRng.nextDouble() < infectedProb);
+            double test = testRng.nextDouble();
+            testResult = (infected) ? ((0.6 * test) + .4) : (0.8 * test);
+            timeLeft = (infected) ? (int) ((survivalRng.nextGaussian() * survivalStd) + survivalTime) : Integer.MAX_VALUE;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Draws the arrivals of the next {@code length} minutes in one go, the
+     * same arrivals {@link #next()} would give minute by minute.
+     *
+     * <p>With split streams, each substream is drawn in its own tight loop:
+     * first the minutes the arrivals fall in, then for each arrival
+     * whether they are infected, their test and their survival time. Each
+     * substream is used in the same order as minute by minute. With a
+     * single {@link Random} the draws are interleaved, so the minutes are
+     * drawn one at a time to keep the sequence.
+     *
+     * @param length the number of minutes to draw
+     * @param offsets receives the minute of each arrival, counting the first minute as 0
+     * @param testResults receives the test result of each arrival
+     * @param timeLefts receives the time left of each arrival
+     * @return the number of arrivals
+     */
+    public int nextBlock(int length, int[] offsets, double[] testResults, int[] timeLefts) {
+        int n = 0;
+        if (!split) {
+            for (int i = 0; i < length; i++) {
+                if (next()) {
+                    offsets[n] = i;
+                    testResults[n] = testResult;
+                    timeLefts[n] = timeLeft;
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        for (int i = 0; ; i++) {
+            if (arrivalGap < 0) {
+                arrivalGap = drawGap();
+            }
+            if (arrivalGap >= length - i) {
+                arrivalGap -= length - i;
+                break;
+            }
+            i += (int) arrivalGap;
+            offsets[n++] = i;
+            arrivalGap = -1;
+        }
+        // timeLefts holds 0 for infected people until their survival time is drawn
+        for (int j = 0; j < n; j++) {
+            timeLefts[j] = (infectedRng.nextDouble() < infectedProb) ? 0 : Integer.MAX_VALUE;
+        }
+        for (int j = 0; j < n; j++) {
+            double test = testRng.nextDouble();
+            testResults[j] = (timeLefts[j] == 0) ? ((0.6 * test) + .4) : (0.8 * test);
+        }
+        for (int j = 0; j < n; j++) {
+            if (timeLefts[j] == 0) {
+                timeLefts[j] = (int) ((survivalRng.nextGaussian() * survivalStd) + survivalTime);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Draws the number of minutes without an arrival before the next one,
+     * which is geometrically distributed.
+     *
+     * @return the number of minutes, {@code Long.MAX_VALUE} if nobody ever arrives
+     */
+    private long drawGap() {
+        if (arrivalProb >= 1) {
+            return 0;
+        }
+        if (arrivalProb <= 0) {
+            return Long.MAX_VALUE;
+        }
+        // 1 - nextDouble() is in (0, 1], so the log is finite or 0
+        return (long) Math.floor(Math.log(1 - arrivalRng.nextDouble()) / logNoArrival);
+    }
+
+    /**
+     * Creates a new root stream of the {@link #ALGORITHM} family. Split it
+     * once per replication (in replication order) and hand each split to
+     * {@link #ArrivalGenerator(RandomGenerator.SplittableGenerator, SimParams)}.
+     *
+     * @param seed the seed
+     * @return the stream
+     */
+    static RandomGenerator.SplittableGenerator newStream(long seed) {
+        return RandomGeneratorFactory.<RandomGenerator.SplittableGenerator>of(ALGORITHM).create(seed);
+    }
+
+    /**
+     * Writes the parameters and the exact state of the random number
+     * generators to a checkpoint. A single {@link Random} is saved with Java
+     * serialization, which is the only way to get at its state.
+     *
+     * @param out where to write
+     * @throws java.io.IOException if the checkpoint cannot be written
+     */
+    void writeTo(Checkpoint.Writer out) throws java.io.IOException {
+        out.putDouble(arrivalProb);
+        out.putDouble(infectedProb);
+        out.putInt(survivalTime);
+        out.putInt(survivalStd);
+        out.putBoolean(split);
+        if (split) {
+            long[] state = new long[L64X128Stream.STATE_LONGS];
+            for (RandomGenerator rng : new RandomGenerator[] {arrivalRng, infectedRng, testRng, survivalRng}) {
+                ((L64X128Stream) rng).getState(state, 0);
+                out.putLongs(state, state.length);
+            }
+            out.putLong(arrivalGap);
+        } else {
+            java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+            try (java.io.ObjectOutputStream oos = new java.io.ObjectOutputStream(bytes)) {
+                oos.writeObject(arrivalRng);
+            }
+            out.putBytes(bytes.toByteArray());
+        }
+    }
+
+    /**
+     * Returns a generator in the same state as this one, which then draws
+     * the same arrivals. A single {@link Random} is copied through Java
+     * serialization, which is the only way to get at its state.
+     *
+     * @return the copy
+     */
+    ArrivalGenerator copy() {
+        RandomGenerator[] rngs = new RandomGenerator[4];
+        if (split) {
+            RandomGenerator[] own = {arrivalRng, infectedRng, testRng, survivalRng};
+            for (int i = 0; i < rngs.length; i++) {
+                rngs[i] = ((L64X128Stream) own[i]).copy();
+            }
+        } else {
+            try {
+                java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+                try (java.io.ObjectOutputStream oos = new java.io.ObjectOutputStream(bytes)) {
+                    oos.writeObject(arrivalRng);
+                }
+                try (java.io.ObjectInputStream ois = new java.io.ObjectInputStream(
+                        new java.io.ByteArrayInputStream(bytes.toByteArray()))) {
+                    java.util.Arrays.fill(rngs, (Random) ois.readObject());
+                }
+            } catch (java.io.IOException | ClassNotFoundException e) {
+                throw new IllegalStateException("Cannot copy the random number generator", e);
+            }
+        }
+        ArrivalGenerator copy = new ArrivalGenerator(rngs[0], rngs[1], rngs[2], rngs[3],
+                                                     arrivalProb, infectedProb, survivalTime, survivalStd);
+        copy.testResult = testResult;
+        copy.timeLeft = timeLeft;
+        copy.arrivalGap = arrivalGap;
+        return copy;
+    }
+
+    /**
+     * Reads a generator written by {@link #writeTo}.
+     *
+     * @param in where to read from
+     * @return a generator that draws what the saved one would have drawn next
+     * @throws java.io.IOException if the saved {@code Random} cannot be read
+     */
+    static ArrivalGenerator readFrom(Checkpoint.Reader in) throws java.io.IOException {
+        double arrivalProb = in.getDouble();
+        double infectedProb = in.getDouble();
+        int survivalTime = in.getInt();
+        int survivalStd = in.getInt();
+        RandomGenerator[] rngs = new RandomGenerator[4];
+        long arrivalGap = -1;
+        if (in.getBoolean()) {
+            for (int i = 0; i < rngs.length; i++) {
+                rngs[i] = new L64X128Stream(in.getLong(), in.getLong(), in.getLong(), in.getLong());
+            }
+            arrivalGap = in.getLong();
+        } else {
+            java.io.ByteArrayInputStream bytes = new java.io.ByteArrayInputStream(in.getBytes());
+            try (java.io.ObjectInputStream ois = new java.io.ObjectInputStream(bytes)) {
+                java.util.Arrays.fill(rngs, (Random) ois.readObject());
+            } catch (ClassNotFoundException | ClassCastException e) {
+                throw new java.io.IOException("Bad random number generator state", e);
+            }
+        }
+        ArrivalGenerator arrivals = new ArrivalGenerator(rngs[0], rngs[1], rngs[2], rngs[3],
+                                                         arrivalProb, infectedProb, survivalTime, survivalStd);
+        arrivals.arrivalGap = arrivalGap;
+        return arrivals;
+    }
+
+    /**
+     * Returns the probability that someone arrives in a minute.
+     *
+     * @return the arrival probability
+     */
+    public double getArrivalProb() {
+        return arrivalProb;
+    }
+
+    /**
+     * Returns the test result of the last person to arrive.
+     *
+     * @return the test result
+     */
+    public double getTestResult() {
+        return testResult;
+    }
+
+    /**
+     * Returns the time left of the last person to arrive.
+     *
+     * @return the time left, or {@code Integer.MAX_VALUE} if not infected
+     */
+    public int getTimeLeft() {
+        return timeLeft;
+    }
+}
@@ -0,0 +1,366 @@
+/**
+ * Every arrival of a run, drawn once up front and kept in primitive arrays
+ * so any number of scenarios can be run against exactly the same people
+ * (common random numbers) without cloning anything or drawing any more
+ * random numbers. A trace is never changed after it is generated; each
+ * scenario reads it through its own {@link View}.
+ *
+ * <p>A trace can also cover just a block of minutes in the middle of a
+ * run, continuing from an {@link ArrivalGenerator} that has drawn the
+ * minutes before it. Arrival {@code i} is the person with ID
+ * {@link #getId(int)}, counting on from the block's first ID.
+ *
+ * <p>Each arrival costs 20 bytes: its minute, test result and time left.
+ * Whether the person is infected is not stored separately, since only
+ * infected people have a time left other than {@code Integer.MAX_VALUE}.
+ */
+final class ArrivalTrace {
+    /**
+     * The minute each person arrived in, in increasing order.
+     */
+    private final long[] minutes;
+
+    /**
+     * The test result of each person.
+     */
+    private final double[] testResults;
+
+    /**
+     * The time left of each person.
+     */
+    private final int[] timeLefts;
+
+    /**
+     * The first minute the trace covers.
+     */
+    private final long firstMinute;
+
+    /**
+     * The number of minutes the trace covers.
+     */
+    private final long length;
+
+    /**
+     * The ID of the first person in the trace.
+     */
+    private final long firstId;
+
+    /**
+     * Creates a trace from its arrays.
+     *
+     * @param minutes the minute of each arrival
+     * @param testResults the test result of each arrival
+     * @param timeLefts the time left of each arrival
+     * @param firstMinute the first minute covered
+     * @param length the number of minutes covered
+     * @param firstId the ID of the first arrival
+     */
+    private ArrivalTrace(long[] minutes, double[] testResults, int[] timeLefts, long firstMinute, long length, long firstId) {
+        this.minutes = minutes;
+        this.testResults = testResults;
+        this.timeLefts = timeLefts;
+        this.firstMinute = firstMinute;
+        this.length = length;
+        this.firstId = firstId;
+    }
+
+    /**
+     * Draws the arrivals for the given number of minutes, the same ones a
+     * {@link Simulation} with the same seed and parameters would see.
+     *
+     * @param seed the random number generator seed
+     * @param params the simulation parameters
+     * @param length the number of minutes to draw
+     * @return the trace
+     */
+    public static ArrivalTrace generate(int seed, SimParams params, long length) {
+        return generate(new ArrivalGenerator(seed, params), 1, length, 0);
+    }
+
+    /**
+     * Draws the arrivals for a block of minutes from a generator that has
+     * already drawn all the minutes before the block.
+     *
+     * @param arrivals the generator
+     * @param firstMinute the first minute of the block
+     * @param length the number of minutes in the block
+     * @param firstId the ID to give the first person who arrives
+     * @return the trace of the block
+     */
+    public static ArrivalTrace generate(ArrivalGenerator arrivals, long firstMinute, long length, long firstId) {
+        int chunkMax = (int) Math.min(length, ArrivalBlocks.BLOCK_MINUTES);
+        int[] offsets = new int[chunkMax];
+        double[] chunkTestResults = new double[chunkMax];
+        int[] chunkTimeLefts = new int[chunkMax];
+
+        int capacity = (int) Math.min(Math.max(16, (long) (length * arrivals.getArrivalProb() * 1.1)), Integer.MAX_VALUE - 8);
+        long[] minutes = new long[capacity];
+        double[] testResults = new double[capacity];
+        int[] timeLefts = new int[capacity];
+        int size = 0;
+        for (long start = 0; start < length; start += chunkMax) {
+            int n = arrivals.nextBlock((int) Math.min(chunkMax, length - start), offsets, chunkTestResults, chunkTimeLefts);
+            if (size + n > minutes.length) {
+                capacity = (int) Math.min(Math.max(capacity * 2L, size + n), Integer.MAX_VALUE - 8);
+                minutes = java.util.Arrays.copyOf(minutes, capacity);
+                testResults = java.util.Arrays.copyOf(testResults, capacity);
+                timeLefts = java.util.Arrays.copyOf(timeLefts, capacity);
+            }
+            for (int j = 0; j < n; j++) {
+                minutes[size + j] = firstMinute + start + offsets[j];
+            }
+            System.arraycopy(chunkTestResults, 0, testResults, size, n);
+            System.arraycopy(chunkTimeLefts, 0, timeLefts, size, n);
+            size += n;
+        }
+        if (size < minutes.length) {
+            minutes = java.util.Arrays.copyOf(minutes, size);
+            testResults = java.util.Arrays.copyOf(testResults, size);
+            timeLefts = java.util.Arrays.copyOf(timeLefts, size);
+        }
+        return new ArrivalTrace(minutes, testResults, timeLefts, firstMinute, length, firstId);
+    }
+
+    /**
+     * Writes the trace to a checkpoint.
+     *
+     * @param out where to write
+     * @throws java.io.IOException if the checkpoint cannot be written
+     */
+    void writeTo(Checkpoint.Writer out) throws java.io.IOException {
+        out.putLong(firstMinute);
+        out.putLong(length);
+        out.putLong(firstId);
+        out.putInt(minutes.length);
+        out.putLongs(minutes, minutes.length);
+        out.putDoubles(testResults, testResults.length);
+        out.putInts(timeLefts, timeLefts.length);
+    }
+
+    /**
+     * Reads a trace written by {@link #writeTo}.
+     *
+     * @param in where to read from
+     * @return the trace
+     */
+    static ArrivalTrace readFrom(Checkpoint.Reader in) {
+        long firstMinute = in.getLong();
+        long length = in.getLong();
+        long firstId = in.getLong();
+        int size = in.getCount();
+        long[] minutes = new long[size];
+        double[] testResults = new double[size];
+        int[] timeLefts = new int[size];
+        in.getLongs(minutes, size);
+        in.getDoubles(testResults, size);
+        in.getInts(timeLefts, size);
+        return new ArrivalTrace(minutes, testResults, timeLefts, firstMinute, length, firstId);
+    }
+
+    /**
+     * Returns the number of people who arrive.
+     *
+     * @return the number of arrivals
+     */
+    public int getSize() {
+        return minutes.length;
+    }
+
+    /**
+     * Returns the first minute the trace covers.
+     *
+     * @return the first minute, starting from 1
+     */
+    public long getFirstMinute() {
+        return firstMinute;
+    }
+
+    /**
+     * Returns the number of minutes the trace covers.
+     *
+     * @return the number of minutes
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the last minute the trace covers.
+     *
+     * @return the last minute
+     */
+    public long getLastMinute() {
+        return firstMinute + length - 1;
+    }
+
+    /**
+     * Returns the ID of a person in the trace.
+     *
+     * @param i the arrival
+     * @return the person's ID
+     */
+    public long getId(int i) {
+        return firstId + i;
+    }
+
+    /**
+     * Returns the minute a person arrived in.
+     *
+     * @param i the arrival
+     * @return the minute, starting from 1
+     */
+    public long getMinute(int i) {
+        return minutes[i];
+    }
+
+    /**
+     * Returns a person's test result.
+     *
+     * @param i the arrival
+     * @return the test result
+     */
+    public double getTestResult(int i) {
+        return testResults[i];
+    }
+
+    /**
+     * Returns a person's time left when they arrived.
+     *
+     * @param i the arrival
+     * @return the time left, or {@code Integer.MAX_VALUE} if not infected
+     */
+    public int getTimeLeft(int i) {
+        return timeLefts[i];
+    }
+
+    /**
+     * Returns whether a person is infected.
+     *
+     * @param i the arrival
+     * @return {@code true} if the person is infected
+     */
+    public boolean isInfected(int i) {
+        return timeLefts[i] != Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns a new view for feeding this trace to one scenario.
+     *
+     * @return a view positioned at the start of the trace
+     */
+    public View view() {
+        return new View(firstMinute - 1);
+    }
+
+    /**
+     * Returns a new view for feeding this trace to a scenario that has
+     * already been run to the given minute.
+     *
+     * @param minute the minute the scenario has been run to
+     * @return a view positioned after that minute
+     */
+    public View view(long minute) {
+        return new View(minute);
+    }
+
+    /**
+     * Returns the first arrival after the given minute.
+     *
+     * @param minute the minute
+     * @return the index of the first arrival after it, or {@link #getSize()} if none
+     */
+    public int indexAfter(long minute) {
+        int low = 0;
+        int high = minutes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (minutes[mid] <= minute) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A read-only cursor over the trace that hands its arrivals to one
+     * scenario as the scenario's time moves forward. Views of the same trace
+     * are independent, so scenarios can be run one after another or at the
+     * same time on different threads.
+     */
+    final class View {
+        /**
+         * The next arrival to hand out.
+         */
+        private int next;
+
+        /**
+         * The minute the scenario has been run to.
+         */
+        private long minute;
+
+        /**
+         * Creates a view positioned after the given minute.
+         *
+         * @param minute the minute the scenario has been run to
+         */
+        private View(long minute) {
+            this.minute = minute;
+            this.next = indexAfter(minute);
+        }
+
+        /**
+         * Returns the minute the scenario has been run to.
+         *
+         * @return the current minute
+         */
+        public long getMinute() {
+            return minute;
+        }
+
+        /**
+         * Hands the arrivals of the given minute to a scenario. Minutes must
+         * be visited in order.
+         *
+         * @param scenario the scenario
+         * @param minute the minute that just started
+         */
+        public void addArrivals(Scenario scenario, long minute) {
+            this.minute = minute;
+            while (next < minutes.length && minutes[next] == minute) {
+                scenario.addArrival(firstId + next, testResults[next], timeLefts[next]);
+                next++;
+            }
+        }
+
+        /**
+         * Runs a scenario to the given minute against this trace: each minute
+         * the scenario is ticked and then given that minute's arrivals, like
+         * {@link Simulation#step()} does. Quiet minutes are skipped in one go
+         * when the scenario can tell how many there are
+         * (see {@link Scenario#getQuietMinutes()}).
+         *
+         * @param scenario the scenario, which must have been run to {@link #getMinute()}
+         * @param target the minute to stop at, at most {@link #getLastMinute()}
+         */
+        public void runUntil(Scenario scenario, long target) {
+            if (target > getLastMinute()) {
+                throw new IllegalArgumentException("Trace only covers minutes up to " + getLastMinute());
+            }
+            while (minute < target) {
+                long nextArrival = (next < minutes.length) ? minutes[next] : Long.MAX_VALUE;
+                // Skip up to the minute before the next thing happens
+                long quiet = Math.min(scenario.getQuietMinutes(),
+                        Math.min(nextArrival, target + 1) - minute - 1);
+                if (quiet > 0) {
+                    scenario.skip(quiet);
+                    minute += quiet;
+                    continue;
+                }
+                scenario.tick();
+                addArrivals(scenario, minute + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An event sink that writes a compact binary trace to a file.
+ *
+ * <p>The file starts with the 4 bytes {@code MARS} and a version byte,
+ * followed by records that each start with a one-byte type. The minute is
+ * not repeated in every record: a {@link #MINUTE} record is written whenever
+ * the minute changes, and the records after it happened in that minute.
+ * All numbers are big-endian.
+ * <pre>
+ *   MINUTE            type, minute (long)                           9 bytes
+ *   ARRIVAL           type, id (long), testResult (double),
+ *                     timeLeft (int)                               21 bytes
+ *   TEST_RESULT       type, scenario (byte), id (long),
+ *                     needsTreatment (byte)                        11 bytes
+ *   TREATMENT_START   type, scenario (byte), id (long)             10 bytes
+ *   TREATMENT_FINISH  type, scenario (byte), id (long)             10 bytes
+ *   DEATH             type, scenario (byte), id (long)             10 bytes
+ * </pre>
+ * The event record types use the same numbers as the {@link SimEventSink}
+ * mask bits. Records are collected in a direct buffer and written out when
+ * it fills up and on {@link #close()}.
+ */
+class BinaryTraceSink implements SimEventSink {
+    /**
+     * The record type for a change of minute.
+     */
+    static final byte MINUTE = 0;
+
+    /**
+     * The version of the trace format.
+     */
+    static final byte VERSION = 2;
+
+    /**
+     * The size of the write buffer in bytes.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The largest record, so the buffer is flushed before it can overflow.
+     */
+    private static final int MAX_RECORD = 21;
+
+    /**
+     * The file being written.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Records not yet written.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * The events this sink records.
+     */
+    private final int events;
+
+    /**
+     * The minute of the last minute record written.
+     */
+    private long lastMinute = -1;
+
+    /**
+     * Creates a binary trace, replacing the file if it exists.
+     *
+     * @param file the trace file
+     * @param events the events to record, as a mask of the {@link SimEventSink} bits
+     * @throws IOException if the file cannot be opened
+     */
+    public BinaryTraceSink(Path file, int events) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.events = events;
+        buffer.put((byte) 'M').put((byte) 'A').put((byte) 'R').put((byte) 'S').put(VERSION);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEvents() {
+        return events;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void step(long minute) {
+        startRecord(minute);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void arrival(long minute, Person p) {
+        startRecord(minute);
+        buffer.put((byte) ARRIVAL).putLong(p.getId()).putDouble(p.getTestResult()).putInt(p.getTimeLeft());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void testResult(int scenario, long minute, Person p, boolean needsTreatment) {
+        startRecord(minute);
+        buffer.put((byte) TEST_RESULT).put((byte) scenario).putLong(p.getId()).put((byte) (needsTreatment ? 1 : 0));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void treatmentStart(int scenario, long minute, Person p) {
+        startRecord(minute);
+        buffer.put((byte) TREATMENT_START).put((byte) scenario).putLong(p.getId());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void treatmentFinish(int scenario, long minute, Person p) {
+        startRecord(minute);
+        buffer.put((byte) TREATMENT_FINISH).put((byte) scenario).putLong(p.getId());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void death(int scenario, long minute, Person p) {
+        startRecord(minute);
+        buffer.put((byte) DEATH).put((byte) scenario).putLong(p.getId());
+    }
+
+    /**
+     * Writes out the remaining records and closes the file.
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Makes room for the next record, writing a minute record first if the
+     * minute has changed.
+     *
+     * @param minute the minute of the next record
+     */
+    private void startRecord(long minute) {
+        if (buffer.remaining() < MAX_RECORD + 9) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (minute != lastMinute) {
+            buffer.put(MINUTE).putLong(minute);
+            lastMinute = minute;
+        }
+    }
+
+    /**
+     * Writes the buffered records to the file.
+     *
+     * @throws IOException if writing fails
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
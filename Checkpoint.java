@@ -0,0 +1,545 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves the complete state of a {@link Simulation} to a binary file and
+ * loads it back, so a long run can be stopped and resumed later, or pick
+ * up from its last checkpoint after a crash. A restored simulation carries
+ * on exactly as the original would have: the random number generators,
+ * the arrivals already drawn, both scenarios' lines, countdowns and
+ * counters, and the person ID counter are all saved.
+ *
+ * <p>The file is written through a {@link FileChannel} in little-endian
+ * order, with primitive arrays (such as a {@link PersonStore}) copied in
+ * bulk. It starts with a magic number and a format version and ends with a
+ * CRC-32 of everything before it. It is written to a temporary file that
+ * then replaces the old checkpoint, so a crash while saving leaves the old
+ * one intact. Loading maps the file into memory and reads it in place.
+ *
+ * <p>{@link Person} objects are written once each, the first time they come
+ * up, and referred to by number after that, so a person who is in a line
+ * and in the deadline heap at the same time is still one person after a
+ * restore. The event sink and worker threads are not saved; a restored
+ * simulation logs to the console like a new one.
+ */
+final class Checkpoint {
+    /**
+     * The first eight bytes of every checkpoint: "MARSCKPT" in ASCII.
+     */
+    static final long MAGIC = 0x4D415253434B5054L;
+
+    /**
+     * The version of the format written.
+     */
+    static final int VERSION = 6;
+
+    /**
+     * The byte order of the file.
+     */
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * The scenario types that can be checkpointed, by their tag in the file.
+     */
+    private static final String[] SCENARIO_TYPES = {"TreatAll", "TestAndTreat", "CompactTreatAll", "CompactTestAndTreat"};
+
+    /**
+     * Not instantiable.
+     */
+    private Checkpoint() {
+    }
+
+    /**
+     * Saves a simulation, replacing the file if it exists.
+     *
+     * @param sim the simulation; it must not be running on another thread
+     * @param file the checkpoint file
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if one of the scenarios cannot be checkpointed
+     */
+    static void save(Simulation sim, Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Writer out = new Writer(channel);
+            out.putLong(MAGIC);
+            out.putInt(VERSION);
+            sim.writeTo(out);
+            out.finish();
+            channel.force(true);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Loads a simulation saved by {@link #save}.
+     *
+     * @param file the checkpoint file
+     * @return the simulation, at the minute it was saved
+     * @throws IOException if the file cannot be read, is not a checkpoint,
+     *                     is from another version or is damaged
+     */
+    static Simulation load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 20) {
+                throw new IOException(file + " is not a simulation checkpoint");
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to map");
+            }
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ORDER);
+
+            java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+            crc.update(buf.duplicate().limit((int) size - 8));
+            if (buf.getLong(0) != MAGIC) {
+                throw new IOException(file + " is not a simulation checkpoint");
+            }
+            if (buf.getLong((int) size - 8) != crc.getValue()) {
+                throw new IOException(file + " is damaged (checksum mismatch)");
+            }
+            buf.limit((int) size - 8).position(8);
+
+            Reader in = new Reader(buf);
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " is checkpoint version " + version + ", expected " + VERSION);
+            }
+            Simulation sim = Simulation.readFrom(in);
+            if (buf.hasRemaining()) {
+                throw new IOException(file + " has " + buf.remaining() + " unexpected bytes at the end");
+            }
+            return sim;
+        } catch (java.nio.BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException(file + " is not a valid simulation checkpoint", e);
+        }
+    }
+
+    /**
+     * Writes a scenario's type and settings, then its state.
+     *
+     * @param out where to write
+     * @param s the scenario
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if the scenario's type cannot be checkpointed
+     */
+    static void writeScenario(Writer out, Scenario s) throws IOException {
+        String type = s.getClass().getName();
+        int tag = java.util.Arrays.asList(SCENARIO_TYPES).indexOf(type);
+        if (tag < 0) {
+            throw new IllegalArgumentException("Cannot checkpoint a " + type + " scenario");
+        }
+        out.putInt(tag);
+        TreatAll t = (TreatAll) s;
+        if (t instanceof TestAndTreat) {
+            TestAndTreat tt = (TestAndTreat) t;
+            out.putInt(tt.testingTime);
+            out.putDouble(tt.triageThreshold);
+        }
+        out.putInt(t.treatmentTime);
+        out.putBoolean(t.isExpiringByDeadline());
+        s.writeState(out);
+    }
+
+    /**
+     * Reads a scenario written by {@link #writeScenario}.
+     *
+     * @param in where to read from
+     * @return the scenario
+     * @throws IOException if the scenario's type is unknown
+     */
+    static Scenario readScenario(Reader in) throws IOException {
+        int tag = in.getInt();
+        if (tag < 0 || tag >= SCENARIO_TYPES.length) {
+            throw new IOException("Unknown scenario type " + tag);
+        }
+        String type = SCENARIO_TYPES[tag];
+        boolean testing = type.endsWith("TestAndTreat");
+        int testingTime = testing ? in.getInt() : 0;
+        double triageThreshold = testing ? in.getDouble() : 0;
+        int treatmentTime = in.getInt();
+        boolean expireByDeadline = in.getBoolean();
+
+        Scenario s;
+        switch (type) {
+            case "TreatAll":
+                s = new TreatAll(treatmentTime, expireByDeadline);
+                break;
+            case "TestAndTreat":
+                s = new TestAndTreat(testingTime, treatmentTime, triageThreshold, expireByDeadline);
+                break;
+            case "CompactTreatAll":
+                s = new CompactTreatAll(treatmentTime, expireByDeadline);
+                break;
+            default:
+                s = new CompactTestAndTreat(testingTime, treatmentTime, triageThreshold, expireByDeadline);
+                break;
+        }
+        s.readState(in);
+        return s;
+    }
+
+    /**
+     * Writes the values of a checkpoint to a file channel through a buffer,
+     * keeping a running checksum.
+     */
+    static final class Writer {
+        /**
+         * The file being written.
+         */
+        private final FileChannel channel;
+
+        /**
+         * Values waiting to be written.
+         */
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16).order(ORDER);
+
+        /**
+         * The checksum of everything written so far.
+         */
+        private final java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+
+        /**
+         * The number of each person already written.
+         */
+        private final java.util.Map<Person, Integer> people = new java.util.IdentityHashMap<>();
+
+        /**
+         * Creates a writer for a file channel.
+         *
+         * @param channel the file, positioned at the start
+         */
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Writes a boolean as one byte.
+         *
+         * @param v the value
+         * @throws IOException if the file cannot be written
+         */
+        void putBoolean(boolean v) throws IOException {
+            room(1);
+            buf.put((byte) (v ? 1 : 0));
+        }
+
+        /**
+         * Writes an int.
+         *
+         * @param v the value
+         * @throws IOException if the file cannot be written
+         */
+        void putInt(int v) throws IOException {
+            room(4);
+            buf.putInt(v);
+        }
+
+        /**
+         * Writes a long.
+         *
+         * @param v the value
+         * @throws IOException if the file cannot be written
+         */
+        void putLong(long v) throws IOException {
+            room(8);
+            buf.putLong(v);
+        }
+
+        /**
+         * Writes a double.
+         *
+         * @param v the value
+         * @throws IOException if the file cannot be written
+         */
+        void putDouble(double v) throws IOException {
+            room(8);
+            buf.putDouble(v);
+        }
+
+        /**
+         * Writes a length and then that many bytes.
+         *
+         * @param a the bytes
+         * @throws IOException if the file cannot be written
+         */
+        void putBytes(byte[] a) throws IOException {
+            putInt(a.length);
+            for (int off = 0; off < a.length; ) {
+                room(1);
+                int n = Math.min(a.length - off, buf.remaining());
+                buf.put(a, off, n);
+                off += n;
+            }
+        }
+
+        /**
+         * Writes the first {@code n} values of an array, without a length.
+         *
+         * @param a the array
+         * @param n the number of values
+         * @throws IOException if the file cannot be written
+         */
+        void putInts(int[] a, int n) throws IOException {
+            for (int off = 0; off < n; ) {
+                room(4);
+                int k = Math.min(n - off, buf.remaining() / 4);
+                buf.asIntBuffer().put(a, off, k);
+                buf.position(buf.position() + 4 * k);
+                off += k;
+            }
+        }
+
+        /**
+         * Writes the first {@code n} values of an array, without a length.
+         *
+         * @param a the array
+         * @param n the number of values
+         * @throws IOException if the file cannot be written
+         */
+        void putLongs(long[] a, int n) throws IOException {
+            for (int off = 0; off < n; ) {
+                room(8);
+                int k = Math.min(n - off, buf.remaining() / 8);
+                buf.asLongBuffer().put(a, off, k);
+                buf.position(buf.position() + 8 * k);
+                off += k;
+            }
+        }
+
+        /**
+         * Writes the first {@code n} values of an array, without a length.
+         *
+         * @param a the array
+         * @param n the number of values
+         * @throws IOException if the file cannot be written
+         */
+        void putDoubles(double[] a, int n) throws IOException {
+            for (int off = 0; off < n; ) {
+                room(8);
+                int k = Math.min(n - off, buf.remaining() / 8);
+                buf.asDoubleBuffer().put(a, off, k);
+                buf.position(buf.position() + 8 * k);
+                off += k;
+            }
+        }
+
+        /**
+         * Writes a person: their number if they were written before,
+         * otherwise -1 followed by all their fields.
+         *
+         * @param p the person
+         * @throws IOException if the file cannot be written
+         */
+        void putPerson(Person p) throws IOException {
+            Integer num = people.get(p);
+            if (num != null) {
+                putInt(num);
+                return;
+            }
+            people.put(p, people.size());
+            putInt(-1);
+            putLong(p.getId());
+            putDouble(p.getTestResult());
+            putInt(p.getTimeLeft());
+            putBoolean(p.isDead());
+            putInt(p.getLineIndex());
+            putLong(p.getDeadline());
+            putLong(p.getArrived());
+            putLong(p.getQueued());
+        }
+
+        /**
+         * Writes out everything still buffered, followed by the checksum.
+         *
+         * @throws IOException if the file cannot be written
+         */
+        void finish() throws IOException {
+            flush();
+            buf.putLong(crc.getValue());
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            buf.clear();
+        }
+
+        /**
+         * Makes sure the buffer has room for at least {@code bytes} more bytes.
+         *
+         * @param bytes the number of bytes needed
+         * @throws IOException if the file cannot be written
+         */
+        private void room(int bytes) throws IOException {
+            if (buf.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes the buffer to the file and adds it to the checksum.
+         *
+         * @throws IOException if the file cannot be written
+         */
+        private void flush() throws IOException {
+            buf.flip();
+            crc.update(buf.duplicate());
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            buf.clear();
+        }
+    }
+
+    /**
+     * Reads the values of a checkpoint from a mapped file.
+     */
+    static final class Reader {
+        /**
+         * The mapped file, positioned at the next value.
+         */
+        private final ByteBuffer buf;
+
+        /**
+         * The people read so far, by number.
+         */
+        private final java.util.List<Person> people = new java.util.ArrayList<>();
+
+        /**
+         * Creates a reader over a buffer.
+         *
+         * @param buf the buffer, in {@link #ORDER}
+         */
+        Reader(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        /**
+         * Reads a boolean.
+         *
+         * @return the value
+         */
+        boolean getBoolean() {
+            return buf.get() != 0;
+        }
+
+        /**
+         * Reads an int.
+         *
+         * @return the value
+         */
+        int getInt() {
+            return buf.getInt();
+        }
+
+        /**
+         * Reads a long.
+         *
+         * @return the value
+         */
+        long getLong() {
+            return buf.getLong();
+        }
+
+        /**
+         * Reads a double.
+         *
+         * @return the value
+         */
+        double getDouble() {
+            return buf.getDouble();
+        }
+
+        /**
+         * Reads bytes written by {@link Writer#putBytes}.
+         *
+         * @return the bytes
+         */
+        byte[] getBytes() {
+            byte[] a = new byte[getCount()];
+            buf.get(a);
+            return a;
+        }
+
+        /**
+         * Reads a count and checks that it is not negative.
+         *
+         * @return the count
+         * @throws IllegalArgumentException if it is negative
+         */
+        int getCount() {
+            int n = buf.getInt();
+            if (n < 0) {
+                throw new IllegalArgumentException("Negative count " + n);
+            }
+            return n;
+        }
+
+        /**
+         * Reads {@code n} values into the start of an array.
+         *
+         * @param a the array
+         * @param n the number of values
+         */
+        void getInts(int[] a, int n) {
+            buf.asIntBuffer().get(a, 0, n);
+            buf.position(buf.position() + 4 * n);
+        }
+
+        /**
+         * Reads {@code n} values into the start of an array.
+         *
+         * @param a the array
+         * @param n the number of values
+         */
+        void getLongs(long[] a, int n) {
+            buf.asLongBuffer().get(a, 0, n);
+            buf.position(buf.position() + 8 * n);
+        }
+
+        /**
+         * Reads {@code n} values into the start of an array.
+         *
+         * @param a the array
+         * @param n the number of values
+         */
+        void getDoubles(double[] a, int n) {
+            buf.asDoubleBuffer().get(a, 0, n);
+            buf.position(buf.position() + 8 * n);
+        }
+
+        /**
+         * Reads a person written by {@link Writer#putPerson}.
+         *
+         * @return the person, the same object each time the same person is read
+         */
+        Person getPerson() {
+            int num = buf.getInt();
+            if (num >= 0) {
+                return people.get(num);
+            }
+            long id = getLong();
+            double testResult = getDouble();
+            int timeLeft = getInt();
+            boolean dead = getBoolean();
+            int lineIndex = getInt();
+            long deadline = getLong();
+            long arrived = getLong();
+            long queued = getLong();
+            Person p = new Person(testResult, timeLeft, id, dead, lineIndex, deadline, arrived, queued);
+            people.add(p);
+            return p;
+        }
+    }
+}
@@ -0,0 +1,470 @@
+/**
+ * A {@link TestAndTreat} scenario that keeps its people in a
+ * {@link PersonStore} instead of as {@link Person} objects: the testing line
+ * is an {@link IntLine} of handles and the priority treatment line a
+ * {@link HandleHeap}. People either expire by deadline or, in tick mode, are
+ * counted down by {@link PersonStore#tick}; the results are the same as
+ * {@code TestAndTreat} either way.
+ *
+ * <p>{@code Person} objects are only built for the GUI and for event sinks
+ * that want the event.
+ */
+class CompactTestAndTreat extends TestAndTreat {
+    /**
+     * Everyone in this scenario.
+     */
+    private final PersonStore store;
+
+    /**
+     * The handles of the people waiting for testing, front first.
+     */
+    private final IntLine testing = new IntLine();
+
+    /**
+     * The handles of the people waiting for treatment, by priority.
+     */
+    private final HandleHeap queue;
+
+    /**
+     * Everyone's deadlines in deadline mode, otherwise {@code null}.
+     */
+    private final HandleDeadlines expiries;
+
+    /**
+     * Handles each death found by {@link PersonStore#tick}.
+     */
+    private final java.util.function.IntConsumer onDeath = this::died;
+
+    /**
+     * Frees a dead person's row while the testing line is compacted.
+     */
+    private final java.util.function.IntPredicate dropIfDead = this::dropIfDead;
+
+    /**
+     * The number of people who have died but are still in {@code testing}.
+     */
+    private int deadInTesting = 0;
+
+    /**
+     * Constructs a CompactTestAndTreat scenario with the specified testing and
+     * treatment times and triage threshold.
+     *
+     * @param testingTime the time required to administer a test
+     * @param treatmentTime the time required to administer a treatment regimen
+     * @param triageThreshold the test result at or above which a person is sent to treatment
+     */
+    public CompactTestAndTreat(int testingTime, int treatmentTime, double triageThreshold) {
+        this(testingTime, treatmentTime, triageThreshold, true);
+    }
+
+    /**
+     * Constructs a CompactTestAndTreat scenario with the specified testing and
+     * treatment times and triage threshold, expiring people by deadline or
+     * counting everyone down each minute.
+     *
+     * @param testingTime the time required to administer a test
+     * @param treatmentTime the time required to administer a treatment regimen
+     * @param triageThreshold the test result at or above which a person is sent to treatment
+     * @param expireByDeadline whether to expire people by deadline instead of
+     *                         ticking everyone in line every minute
+     */
+    public CompactTestAndTreat(int testingTime, int treatmentTime, double triageThreshold, boolean expireByDeadline) {
+        super(testingTime, treatmentTime, triageThreshold, false);
+        this.store = new PersonStore(!expireByDeadline);
+        this.queue = new HandleHeap(store);
+        this.expiries = expireByDeadline ? new HandleDeadlines(store) : null;
+    }
+
+    /**
+     * Builds the testing line for the GUI from the store.
+     *
+     * @return the line of people waiting for testing
+     */
+    @Override
+    public Line<Person> getTestingLine() {
+        Line<Person> view = new Line<>();
+        for (int i = 0; i < testing.getSize(); i++) {
+            int h = testing.get(i);
+            if (!store.isDead(h)) {
+                view.add(store.toPerson(h, clock), view.getSize());
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Builds the front of the testing line for the GUI from the store.
+     *
+     * @param limit the most people to return
+     * @return the first living people waiting for testing, front first
+     */
+    @Override
+    public Line<Person> getTestingLine(int limit) {
+        Line<Person> view = new Line<>();
+        for (int i = 0; i < testing.getSize() && view.getSize() < limit; i++) {
+            int h = testing.get(i);
+            if (!store.isDead(h)) {
+                view.add(store.toPerson(h, clock), view.getSize());
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Builds the treatment line, in priority order, for the GUI from the store.
+     *
+     * @return the line of people waiting for treatment
+     */
+    @Override
+    public Line<Person> getTreatmentLine() {
+        Line<Person> view = new Line<>();
+        for (int h : queue.toSortedArray()) {
+            view.add(store.toPerson(h, clock), view.getSize());
+        }
+        treatmentLine = view;
+        return view;
+    }
+
+    /**
+     * Builds the front of the treatment line, in priority order, for the GUI
+     * from the store, putting only those people in order.
+     *
+     * @param limit the most people to return
+     * @return the first people waiting for treatment, front first
+     */
+    @Override
+    public Line<Person> getTreatmentLine(int limit) {
+        Line<Person> view = new Line<>();
+        for (int h : queue.firstInOrder(limit)) {
+            view.add(store.toPerson(h, clock), view.getSize());
+        }
+        return view;
+    }
+
+    /**
+     * Returns the number of people currently waiting in the treatment line.
+     *
+     * @return the number of people in the treatment line
+     */
+    @Override
+    public int getPending() {
+        return queue.getSize();
+    }
+
+    /**
+     * Adds a person to the testing line, copying them into the store.
+     *
+     * @param p the person to add to the testing line
+     */
+    @Override
+    public void addPerson(Person p) {
+        addArrival(p.getId(), p.getTestResult(), p.getTimeLeft());
+    }
+
+    /**
+     * Adds a person to the testing line. If they are the only person in line,
+     * they will start being tested immediately.
+     *
+     * @param id the person's ID
+     * @param testResult the person's test result
+     * @param timeLeft the time the person has left
+     */
+    @Override
+    public void addArrival(long id, double testResult, int timeLeft) {
+        int h = store.add(id, testResult, timeLeft, clock);
+        testing.addLast(h);
+        if (expiries != null) {
+            expiries.add(h);
+        }
+
+        if (getTestingPending() == 1) {
+            currentTestingTime = testingTime;
+        }
+    }
+
+    /**
+     * Does the work of one minute: the test being administered, then deaths
+     * in both lines, then the treatment being administered.
+     */
+    @Override
+    protected void processMinute() {
+        if (getTestingPending() > 0) {
+            testingMinutes++;
+            currentTestingTime--;
+            if (currentTestingTime <= 0) {
+                int h = testing.removeFirst();
+                while (store.isDead(h)) {
+                    store.remove(h);
+                    deadInTesting--;
+                    h = testing.removeFirst();
+                }
+                boolean needsTreatment = store.getTestResult(h) >= triageThreshold;
+                recordTest(store.getId(h), store.getArrived(h), needsTreatment);
+                if (wants(SimEventSink.TEST_RESULT)) {
+                    events.testResult(scenarioNum, clock, store.toPerson(h, clock), needsTreatment);
+                }
+
+                if (needsTreatment) {
+                    store.joinLine(h, clock);
+                    queue.add(h);
+                    if (queue.getSize() == 1) {
+                        currentTreatmentTime = treatmentTime;
+                        if (wants(SimEventSink.TREATMENT_START)) {
+                            events.treatmentStart(scenarioNum, clock, store.toPerson(h, clock));
+                        }
+                    }
+                } else {
+                    store.remove(h);
+                    numSafe++;
+                }
+
+                if (getTestingPending() > 0) {
+                    currentTestingTime = testingTime;
+                }
+            }
+        }
+
+        if (expiries != null) {
+            for (int h = expiries.pollExpired(clock); h >= 0; h = expiries.pollExpired(clock)) {
+                store.kill(h);
+                died(h);
+            }
+        } else {
+            store.tick(onDeath);
+        }
+        // Once at least half the testing line is dead, drop them all in one
+        // pass so a line that barely moves does not fill the store with the dead
+        if (deadInTesting > 0 && deadInTesting * 2 >= testing.getSize()) {
+            testing.removeIf(dropIfDead);
+            deadInTesting = 0;
+        }
+
+        if (getPending() > 0) {
+            treatingMinutes++;
+            currentTreatmentTime--;
+            if (currentTreatmentTime <= 0) {
+                int h = queue.poll();
+                numSafe++;
+                recordTreatment(store.getId(h), store.getQueued(h));
+                if (wants(SimEventSink.TREATMENT_FINISH)) {
+                    events.treatmentFinish(scenarioNum, clock, store.toPerson(h, clock));
+                }
+                store.remove(h);
+
+                if (getPending() > 0) {
+                    currentTreatmentTime = treatmentTime;
+                    if (wants(SimEventSink.TREATMENT_START)) {
+                        events.treatmentStart(scenarioNum, clock, store.toPerson(queue.peek(), clock));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns how many upcoming minutes are quiet: until the next deadline,
+     * the end of the current test and the end of the current treatment, or
+     * in tick mode, while nobody is waiting.
+     *
+     * @return the number of quiet minutes ahead
+     */
+    @Override
+    public long getQuietMinutes() {
+        if (expiries == null) {
+            return (getPending() == 0 && getTestingPending() == 0) ? Long.MAX_VALUE : 0;
+        }
+        long quiet = expiries.peekDeadline() - clock - 1;
+        if (getPending() > 0) {
+            quiet = Math.min(quiet, currentTreatmentTime - 1);
+        }
+        if (getTestingPending() > 0) {
+            quiet = Math.min(quiet, currentTestingTime - 1);
+        }
+        return Math.max(quiet, 0);
+    }
+
+    /**
+     * Moves time forward over quiet minutes, advancing the testing countdown
+     * as well as the treatment countdown.
+     *
+     * @param minutes the number of minutes to skip, at most {@link #getQuietMinutes()}
+     */
+    @Override
+    public void skip(long minutes) {
+        if (getTestingPending() > 0) {
+            currentTestingTime -= (int) minutes;
+            testingMinutes += minutes;
+        }
+        // The inherited testing line is always empty, so this only moves the
+        // clock and the treatment countdown
+        super.skip(minutes);
+    }
+
+    /**
+     * Counts a person who just died. People in the priority line are removed
+     * right away; the testing line is only cleaned up lazily.
+     *
+     * @param h the handle of the person who died
+     */
+    private void died(int h) {
+        numDeaths++;
+        recordDeath(store.getId(h), store.getArrived(h));
+        if (wants(SimEventSink.DEATH)) {
+            events.death(scenarioNum, clock, store.toPerson(h, clock));
+        }
+        if (queue.remove(h)) {
+            store.remove(h);
+        } else {
+            deadInTesting++;
+        }
+    }
+
+    /**
+     * Returns whether this scenario expires people by deadline.
+     *
+     * @return {@code true} in deadline mode, {@code false} in tick mode
+     */
+    @Override
+    boolean isExpiringByDeadline() {
+        return expiries != null;
+    }
+
+    /**
+     * Writes the store and the handles in each line to a checkpoint after
+     * the countdowns and counters kept by the superclass.
+     *
+     * @param out where to write
+     * @throws java.io.IOException if the checkpoint cannot be written
+     */
+    @Override
+    protected void writeState(Checkpoint.Writer out) throws java.io.IOException {
+        super.writeState(out);
+        store.writeTo(out);
+        out.putInt(testing.getSize());
+        for (int i = 0; i < testing.getSize(); i++) {
+            out.putInt(testing.get(i));
+        }
+        out.putInt(deadInTesting);
+        queue.writeTo(out);
+        if (expiries != null) {
+            expiries.writeTo(out);
+        }
+    }
+
+    /**
+     * Reads the state written by {@link #writeState}.
+     *
+     * @param in where to read from
+     */
+    @Override
+    protected void readState(Checkpoint.Reader in) {
+        super.readState(in);
+        store.readFrom(in);
+        for (int i = in.getCount(); i > 0; i--) {
+            testing.addLast(in.getInt());
+        }
+        deadInTesting = in.getInt();
+        queue.readFrom(in);
+        if (expiries != null) {
+            expiries.readFrom(in);
+        }
+    }
+
+    /**
+     * Creates a branch of this scenario with the same settings.
+     *
+     * @return the branch
+     * @see Scenario#fork()
+     */
+    @Override
+    public CompactTestAndTreat fork() {
+        return fork(testingTime, treatmentTime, triageThreshold);
+    }
+
+    /**
+     * Creates a branch of this scenario with a different treatment time.
+     *
+     * @param treatmentTime the branch's treatment time
+     * @return the branch
+     */
+    @Override
+    public CompactTestAndTreat fork(int treatmentTime) {
+        return fork(testingTime, treatmentTime, triageThreshold);
+    }
+
+    /**
+     * Creates a branch of this scenario that uses the given settings from now
+     * on. The branch shares the store, the testing line and the priority
+     * line with this scenario until either of them changes them, so forking
+     * costs next to nothing and each array is copied only by a scenario
+     * that writes to it.
+     *
+     * @param testingTime the branch's testing time
+     * @param treatmentTime the branch's treatment time
+     * @param triageThreshold the branch's triage threshold
+     * @return the branch
+     * @throws UnsupportedOperationException if this is a subclass that cannot be forked
+     */
+    @Override
+    public CompactTestAndTreat fork(int testingTime, int treatmentTime, double triageThreshold) {
+        requireForkable(CompactTestAndTreat.class);
+        CompactTestAndTreat branch = new CompactTestAndTreat(testingTime, treatmentTime, triageThreshold, expiries != null);
+        branch.copyState(this, new java.util.IdentityHashMap<>());
+        return branch;
+    }
+
+    /**
+     * Shares the store and the handles in each line of another scenario
+     * after copying the countdowns and counters kept by the superclass.
+     *
+     * @param from the scenario to copy
+     * @param copies the copy made so far of each person
+     */
+    @Override
+    protected void copyState(Scenario from, java.util.Map<Person, Person> copies) {
+        super.copyState(from, copies);
+        CompactTestAndTreat other = (CompactTestAndTreat) from;
+        store.shareFrom(other.store);
+        testing.shareFrom(other.testing);
+        deadInTesting = other.deadInTesting;
+        queue.shareFrom(other.queue);
+        if (expiries != null) {
+            expiries.shareFrom(other.expiries);
+        }
+    }
+
+    /**
+     * Frees a person's row if they are dead.
+     *
+     * @param h the handle of the person
+     * @return whether the person was dead and should leave the testing line
+     */
+    private boolean dropIfDead(int h) {
+        if (store.isDead(h)) {
+            store.remove(h);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reports this scenario's own testing line in place of the inherited
+     * one, which is always empty.
+     *
+     * @param values where to put each channel's value
+     */
+    @Override
+    protected void sampleMetrics(long[] values) {
+        super.sampleMetrics(values);
+        values[Timeline.TESTING_LINE] = getTestingPending();
+    }
+
+    /**
+     * Returns the number of living people in the testing line.
+     *
+     * @return the number of people waiting to be tested
+     */
+    private int getTestingPending() {
+        return testing.getSize() - deadInTesting;
+    }
+}
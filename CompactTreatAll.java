@@ -0,0 +1,352 @@
+/**
+ * A {@link TreatAll} scenario that keeps its people in a {@link PersonStore}
+ * instead of as {@link Person} objects, so very long lines cost a few dozen
+ * bytes per person and arrivals allocate nothing. People either expire by
+ * deadline or, in tick mode, are counted down by {@link PersonStore#tick};
+ * the results are the same as {@code TreatAll} either way.
+ *
+ * <p>{@code Person} objects are only built for the GUI and for event sinks
+ * that want the event.
+ */
+class CompactTreatAll extends TreatAll {
+    /**
+     * Everyone in this scenario.
+     */
+    private final PersonStore store;
+
+    /**
+     * The handles of the people waiting for treatment, front first.
+     */
+    private final IntLine line = new IntLine();
+
+    /**
+     * Everyone's deadlines in deadline mode, otherwise {@code null}.
+     */
+    private final HandleDeadlines expiries;
+
+    /**
+     * Handles each death found by {@link PersonStore#tick}.
+     */
+    private final java.util.function.IntConsumer onDeath = this::died;
+
+    /**
+     * Frees a dead person's row while the line is compacted.
+     */
+    private final java.util.function.IntPredicate dropIfDead = this::dropIfDead;
+
+    /**
+     * The number of people who have died but are still in {@code line}.
+     */
+    private int deadInLine = 0;
+
+    /**
+     * Constructs a CompactTreatAll scenario with the specified treatment time.
+     *
+     * @param treatmentTime the time required to administer a treatment regimen
+     */
+    public CompactTreatAll(int treatmentTime) {
+        this(treatmentTime, true);
+    }
+
+    /**
+     * Constructs a CompactTreatAll scenario with the specified treatment time,
+     * expiring people by deadline or counting everyone down each minute.
+     *
+     * @param treatmentTime the time required to administer a treatment regimen
+     * @param expireByDeadline whether to expire people by deadline instead of
+     *                         ticking everyone in line every minute
+     */
+    public CompactTreatAll(int treatmentTime, boolean expireByDeadline) {
+        super(treatmentTime, false);
+        this.store = new PersonStore(!expireByDeadline);
+        this.expiries = expireByDeadline ? new HandleDeadlines(store) : null;
+    }
+
+    /**
+     * Builds the treatment line for the GUI from the store.
+     *
+     * @return the line of people waiting for treatment
+     */
+    @Override
+    public Line<Person> getTreatmentLine() {
+        Line<Person> view = new Line<>();
+        for (int i = 0; i < line.getSize(); i++) {
+            int h = line.get(i);
+            if (!store.isDead(h)) {
+                view.add(store.toPerson(h, clock), view.getSize());
+            }
+        }
+        treatmentLine = view;
+        return view;
+    }
+
+    /**
+     * Builds the front of the treatment line for the GUI from the store.
+     *
+     * @param limit the most people to return
+     * @return the first living people waiting for treatment, front first
+     */
+    @Override
+    public Line<Person> getTreatmentLine(int limit) {
+        Line<Person> view = new Line<>();
+        for (int i = 0; i < line.getSize() && view.getSize() < limit; i++) {
+            int h = line.get(i);
+            if (!store.isDead(h)) {
+                view.add(store.toPerson(h, clock), view.getSize());
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Returns the number of people currently waiting in the treatment line.
+     *
+     * @return the number of people in the treatment line
+     */
+    @Override
+    public int getPending() {
+        return line.getSize() - deadInLine;
+    }
+
+    /**
+     * Adds a person to the treatment line, copying them into the store.
+     *
+     * @param p the person to add to the treatment line
+     */
+    @Override
+    public void addPerson(Person p) {
+        addArrival(p.getId(), p.getTestResult(), p.getTimeLeft());
+    }
+
+    /**
+     * Adds a person to the treatment line. If they are the only person in line,
+     * they will start being treated immediately.
+     *
+     * @param id the person's ID
+     * @param testResult the person's test result
+     * @param timeLeft the time the person has left
+     */
+    @Override
+    public void addArrival(long id, double testResult, int timeLeft) {
+        int h = store.add(id, testResult, timeLeft, clock);
+        line.addLast(h);
+        if (expiries != null) {
+            expiries.add(h);
+        }
+
+        if (getPending() == 1) {
+            currentTreatmentTime = treatmentTime;
+            if (wants(SimEventSink.TREATMENT_START)) {
+                events.treatmentStart(scenarioNum, clock, store.toPerson(h, clock));
+            }
+        }
+    }
+
+    /**
+     * Does the work of one minute: handles deaths in the line and the
+     * treatment being administered.
+     */
+    @Override
+    protected void processMinute() {
+        if (expiries != null) {
+            for (int h = expiries.pollExpired(clock); h >= 0; h = expiries.pollExpired(clock)) {
+                store.kill(h);
+                died(h);
+            }
+        } else {
+            store.tick(onDeath);
+        }
+        // Once at least half the line is dead, drop them all in one pass so
+        // a line that barely moves does not fill the store with the dead
+        if (deadInLine > 0 && deadInLine * 2 >= line.getSize()) {
+            line.removeIf(dropIfDead);
+            deadInLine = 0;
+        }
+
+        if (getPending() > 0) {
+            treatingMinutes++;
+            currentTreatmentTime--;
+            if (currentTreatmentTime <= 0) {
+                int h = frontOfLine();
+                line.removeFirst();
+                numSafe++;
+                recordTreatment(store.getId(h), store.getQueued(h));
+                if (wants(SimEventSink.TREATMENT_FINISH)) {
+                    events.treatmentFinish(scenarioNum, clock, store.toPerson(h, clock));
+                }
+                store.remove(h);
+
+                if (getPending() > 0) {
+                    currentTreatmentTime = treatmentTime;
+                    // Always clear the dead off the front, so the line does
+                    // not depend on which events are being reported
+                    int next = frontOfLine();
+                    if (wants(SimEventSink.TREATMENT_START)) {
+                        events.treatmentStart(scenarioNum, clock, store.toPerson(next, clock));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns how many upcoming minutes are quiet: until the next deadline
+     * and until the current treatment ends, or in tick mode, while nobody is
+     * waiting.
+     *
+     * @return the number of quiet minutes ahead
+     */
+    @Override
+    public long getQuietMinutes() {
+        if (expiries == null) {
+            return (getPending() == 0) ? Long.MAX_VALUE : 0;
+        }
+        long quiet = expiries.peekDeadline() - clock - 1;
+        if (getPending() > 0) {
+            quiet = Math.min(quiet, currentTreatmentTime - 1);
+        }
+        return Math.max(quiet, 0);
+    }
+
+    /**
+     * Counts a person who just died, leaving them in line until they reach
+     * the front.
+     *
+     * @param h the handle of the person who died
+     */
+    private void died(int h) {
+        numDeaths++;
+        recordDeath(store.getId(h), store.getArrived(h));
+        if (wants(SimEventSink.DEATH)) {
+            events.death(scenarioNum, clock, store.toPerson(h, clock));
+        }
+        deadInLine++;
+    }
+
+    /**
+     * Returns whether this scenario expires people by deadline.
+     *
+     * @return {@code true} in deadline mode, {@code false} in tick mode
+     */
+    @Override
+    boolean isExpiringByDeadline() {
+        return expiries != null;
+    }
+
+    /**
+     * Writes the store and the handles in each line to a checkpoint after
+     * the countdowns and counters kept by the superclass.
+     *
+     * @param out where to write
+     * @throws java.io.IOException if the checkpoint cannot be written
+     */
+    @Override
+    protected void writeState(Checkpoint.Writer out) throws java.io.IOException {
+        super.writeState(out);
+        store.writeTo(out);
+        out.putInt(line.getSize());
+        for (int i = 0; i < line.getSize(); i++) {
+            out.putInt(line.get(i));
+        }
+        out.putInt(deadInLine);
+        if (expiries != null) {
+            expiries.writeTo(out);
+        }
+    }
+
+    /**
+     * Reads the state written by {@link #writeState}.
+     *
+     * @param in where to read from
+     */
+    @Override
+    protected void readState(Checkpoint.Reader in) {
+        super.readState(in);
+        store.readFrom(in);
+        for (int i = in.getCount(); i > 0; i--) {
+            line.addLast(in.getInt());
+        }
+        deadInLine = in.getInt();
+        if (expiries != null) {
+            expiries.readFrom(in);
+        }
+    }
+
+    /**
+     * Creates a branch of this scenario with the same treatment time.
+     *
+     * @return the branch
+     * @see Scenario#fork()
+     */
+    @Override
+    public CompactTreatAll fork() {
+        return fork(treatmentTime);
+    }
+
+    /**
+     * Creates a branch of this scenario that treats people in the given time
+     * from now on. The branch shares the store and the line with this
+     * scenario until either of them changes them, so forking costs next to
+     * nothing and each array is copied only by a scenario that writes to it.
+     *
+     * @param treatmentTime the branch's treatment time
+     * @return the branch
+     * @throws UnsupportedOperationException if this is a subclass that cannot be forked
+     */
+    @Override
+    public CompactTreatAll fork(int treatmentTime) {
+        requireForkable(CompactTreatAll.class);
+        CompactTreatAll branch = new CompactTreatAll(treatmentTime, expiries != null);
+        branch.copyState(this, new java.util.IdentityHashMap<>());
+        return branch;
+    }
+
+    /**
+     * Shares the store and the handles in each line of another scenario
+     * after copying the countdowns and counters kept by the superclass.
+     *
+     * @param from the scenario to copy
+     * @param copies the copy made so far of each person
+     */
+    @Override
+    protected void copyState(Scenario from, java.util.Map<Person, Person> copies) {
+        super.copyState(from, copies);
+        CompactTreatAll other = (CompactTreatAll) from;
+        store.shareFrom(other.store);
+        line.shareFrom(other.line);
+        deadInLine = other.deadInLine;
+        if (expiries != null) {
+            expiries.shareFrom(other.expiries);
+        }
+    }
+
+    /**
+     * Frees a person's row if they are dead.
+     *
+     * @param h the handle of the person
+     * @return whether the person was dead and should leave the line
+     */
+    private boolean dropIfDead(int h) {
+        if (store.isDead(h)) {
+            store.remove(h);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drops dead people from the front of the line and returns the handle
+     * of the first living one.
+     *
+     * @return the handle of the person being treated
+     */
+    private int frontOfLine() {
+        int h = line.get(0);
+        while (store.isDead(h)) {
+            store.remove(line.removeFirst());
+            deadInLine--;
+            h = line.get(0);
+        }
+        return h;
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * A min-heap of people keyed by their absolute time of death (see
+ * {@link Person#getDeadline()}). Scenarios running in deadline mode use it
+ * to find only the people whose deadline has passed instead of ticking
+ * everyone in line.
+ *
+ * <p>The key is copied into the heap when a person is added, so a person
+ * who leaves their scenario early is not searched for; they are simply
+ * skipped when their old deadline comes up (see {@link Person#expire(long)}),
+ * or dropped as soon as they reach the root, so they never hide how long
+ * the scenario will stay quiet. People with the same deadline come out in
+ * order of ID, however the heap happens to be laid out.
+ */
+class DeadlineQueue {
+    /**
+     * The deadlines, in heap order.
+     */
+    private long[] deadlines;
+
+    /**
+     * The people, in the same heap order as {@code deadlines}.
+     */
+    private Person[] people;
+
+    /**
+     * The current number of entries in the heap.
+     */
+    private int size;
+
+    /**
+     * Constructs a new, empty DeadlineQueue.
+     */
+    public DeadlineQueue() {
+        deadlines = new long[16];
+        people = new Person[16];
+        size = 0;
+    }
+
+    /**
+     * Returns the number of entries in the heap, including entries for
+     * people who have already left their scenario.
+     *
+     * @return the number of entries
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the earliest deadline of someone still waiting, which is when
+     * the next death happens. Entries for people who have left their
+     * scenario are dropped from the top of the heap first.
+     *
+     * @return the earliest deadline, or {@code Long.MAX_VALUE} if none
+     */
+    public long peekDeadline() {
+        while (size > 0 && people[0].getDeadline() != deadlines[0]) {
+            removeRoot();
+        }
+        return size == 0 ? Long.MAX_VALUE : deadlines[0];
+    }
+
+    /**
+     * Returns the deadline of an entry, for saving the heap in a
+     * {@link Checkpoint}.
+     *
+     * @param index the entry's position in heap order
+     * @return the deadline the entry was added with
+     */
+    public long getDeadline(int index) {
+        return deadlines[index];
+    }
+
+    /**
+     * Returns the person of an entry, for saving the heap in a
+     * {@link Checkpoint}.
+     *
+     * @param index the entry's position in heap order
+     * @return the person
+     */
+    public Person get(int index) {
+        return people[index];
+    }
+
+    /**
+     * Adds an entry at the end of the heap without sifting it, to restore a
+     * heap saved in heap order by a {@link Checkpoint}. The entry's deadline
+     * is given, since the person may have left since it was added.
+     *
+     * @param deadline the deadline the entry was added with
+     * @param p the person
+     */
+    void append(long deadline, Person p) {
+        if (size == deadlines.length) {
+            deadlines = java.util.Arrays.copyOf(deadlines, size * 2);
+            people = java.util.Arrays.copyOf(people, size * 2);
+        }
+        deadlines[size] = deadline;
+        people[size] = p;
+        size++;
+    }
+
+    /**
+     * Adds a person keyed by their current deadline. People who can never
+     * die are not added.
+     *
+     * @param p the person to add
+     */
+    public void add(Person p) {
+        long deadline = p.getDeadline();
+        if (deadline == Long.MAX_VALUE) {
+            return;
+        }
+        if (size == deadlines.length) {
+            deadlines = java.util.Arrays.copyOf(deadlines, size * 2);
+            people = java.util.Arrays.copyOf(people, size * 2);
+        }
+
+        // Sift the new entry up from the bottom
+        long id = p.getId();
+        int index = size++;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!comesBefore(deadline, id, parent)) {
+                break;
+            }
+            deadlines[index] = deadlines[parent];
+            people[index] = people[parent];
+            index = parent;
+        }
+        deadlines[index] = deadline;
+        people[index] = p;
+    }
+
+    /**
+     * Removes and returns the next person whose deadline is at or before
+     * the given time.
+     *
+     * @param now the current scenario time
+     * @return the person, or {@code null} if no deadline has passed
+     */
+    public Person pollExpired(long now) {
+        if (size == 0 || deadlines[0] > now) {
+            return null;
+        }
+        Person expired = people[0];
+        removeRoot();
+        return expired;
+    }
+
+    /**
+     * Removes the root entry by moving the last entry to the root and
+     * sifting it down.
+     */
+    private void removeRoot() {
+        size--;
+        long deadline = deadlines[size];
+        Person last = people[size];
+        people[size] = null;
+        long id = last.getId();
+        int index = 0;
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && comesBefore(deadlines[child + 1], people[child + 1].getId(), child)) {
+                child++;
+            }
+            if (!comesBefore(deadlines[child], people[child].getId(), deadline, id)) {
+                break;
+            }
+            deadlines[index] = deadlines[child];
+            people[index] = people[child];
+            index = child;
+        }
+        if (size > 0) {
+            deadlines[index] = deadline;
+            people[index] = last;
+        }
+    }
+
+    /**
+     * Returns whether an entry comes before the entry in the given slot.
+     *
+     * @param deadline the entry's deadline
+     * @param id the ID of the entry's person
+     * @param index the slot of the entry to compare with
+     * @return {@code true} if the entry's deadline is earlier, or the same
+     *         with a lower ID
+     */
+    private boolean comesBefore(long deadline, long id, int index) {
+        return comesBefore(deadline, id, deadlines[index], people[index].getId());
+    }
+
+    /**
+     * Returns whether one entry comes before another: by deadline, then by
+     * ID.
+     *
+     * @param deadline the first entry's deadline
+     * @param id the ID of the first entry's person
+     * @param otherDeadline the second entry's deadline
+     * @param otherId the ID of the second entry's person
+     * @return {@code true} if the first entry comes first
+     */
+    static boolean comesBefore(long deadline, long id, long otherDeadline, long otherId) {
+        return deadline < otherDeadline || (deadline == otherDeadline && id < otherId);
+    }
+}
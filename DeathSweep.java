@@ -0,0 +1,132 @@
+/**
+ * The per-minute death check for people kept in a primitive {@code int[]} of
+ * remaining times, as in {@link Person#tick()}: everyone's time goes down by
+ * one minute, except for people who are not infected
+ * ({@code Integer.MAX_VALUE}), and anyone at or below zero has died.
+ *
+ * <p>{@link #tick(int[], int)} is written without branches, as a plain loop
+ * of integer operations plus a minimum, so that the JIT compiler can turn it
+ * into SIMD instructions that handle many people at once. Callers only look
+ * for the dead when the minimum says someone died. {@link #tickScalar} is the
+ * straightforward version it must agree with; {@link #main} checks that,
+ * and that it kills the same people as {@link Person#tick()} does.
+ */
+final class DeathSweep {
+    /**
+     * Not instantiable.
+     */
+    private DeathSweep() {
+    }
+
+    /**
+     * Ticks the first {@code n} remaining times by one minute.
+     *
+     * @param timeLeft the remaining times, {@code Integer.MAX_VALUE} for people who cannot die
+     * @param n the number of entries to tick
+     * @return the smallest remaining time after the tick; someone died if it is at most 0
+     */
+    static int tick(int[] timeLeft, int n) {
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            int t = timeLeft[i];
+            // d is 0 for MAX_VALUE and non-zero otherwise; (d | -d) >>> 31 turns that into 0 or 1
+            int d = t ^ Integer.MAX_VALUE;
+            t -= (d | -d) >>> 31;
+            timeLeft[i] = t;
+            min = Math.min(min, t);
+        }
+        return min;
+    }
+
+    /**
+     * Ticks the first {@code n} remaining times by one minute, one person at
+     * a time like {@link Person#tick()}. Gives the same result as {@link #tick}.
+     *
+     * @param timeLeft the remaining times, {@code Integer.MAX_VALUE} for people who cannot die
+     * @param n the number of entries to tick
+     * @return the smallest remaining time after the tick; someone died if it is at most 0
+     */
+    static int tickScalar(int[] timeLeft, int n) {
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            if (timeLeft[i] != Integer.MAX_VALUE) {
+                timeLeft[i]--;
+            }
+            if (timeLeft[i] < min) {
+                min = timeLeft[i];
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Checks that both versions of the sweep agree on random lines, and that
+     * a {@link PersonStore} swept with them kills the same people each minute
+     * as a {@link Line} of {@link Person}s swept with
+     * {@link Person#tickAndCheckDead}. Exits with status 1 on a mismatch.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        java.util.Random rng = new java.util.Random(0);
+        for (int round = 0; round < 1000; round++) {
+            int n = rng.nextInt(2000);
+            int[] a = new int[n + rng.nextInt(8)];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = randomTimeLeft(rng);
+            }
+            int[] b = a.clone();
+            for (int minute = 0; minute < 5; minute++) {
+                if (tick(a, n) != tickScalar(b, n) || !java.util.Arrays.equals(a, b)) {
+                    System.out.println("DeathSweep mismatch in round " + round);
+                    System.exit(1);
+                }
+            }
+        }
+
+        for (int round = 0; round < 200; round++) {
+            java.util.Random people = new java.util.Random(round);
+            Line<Person> line = new Line<>();
+            PersonStore store = new PersonStore(true);
+            long nextId = 0;
+            for (int minute = 0; minute < 60; minute++) {
+                for (int i = people.nextInt(minute == 0 ? 2000 : 40); i > 0; i--) {
+                    int timeLeft = randomTimeLeft(people);
+                    line.add(new Person(0.5, timeLeft, nextId), line.getSize());
+                    store.add(nextId, 0.5, timeLeft, minute);
+                    nextId++;
+                }
+
+                java.util.Set<Long> fromLine = new java.util.HashSet<>();
+                line.removeIf(p -> {
+                    if (Person.tickAndCheckDead(p)) {
+                        fromLine.add(p.getId());
+                        return true;
+                    }
+                    return false;
+                });
+                java.util.Set<Long> fromStore = new java.util.HashSet<>();
+                store.tick(h -> fromStore.add(store.getId(h)));
+
+                if (!fromLine.equals(fromStore)) {
+                    System.out.println("DeathSweep and Person.tick() disagree in round " + round
+                            + " at minute " + minute + ": " + fromStore + " vs " + fromLine);
+                    System.exit(1);
+                }
+            }
+        }
+        System.out.println("DeathSweep agrees with tickScalar and Person.tick()");
+    }
+
+    /**
+     * Draws a remaining time: not infected, about to die, or anything up to
+     * 1000 minutes.
+     *
+     * @param rng where to draw it from
+     * @return the remaining time
+     */
+    private static int randomTimeLeft(java.util.Random rng) {
+        int kind = rng.nextInt(4);
+        return (kind == 0) ? Integer.MAX_VALUE : (kind == 1) ? rng.nextInt(3) - 1 : rng.nextInt(1000);
+    }
+}
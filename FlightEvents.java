@@ -0,0 +1,321 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JDK Flight Recorder events a running simulation emits, so that a
+ * recording opened in JDK Mission Control shows what the simulation was
+ * doing next to where the time went.
+ *
+ * <p>Nothing touches an event class until the flight recorder has started,
+ * since loading the first one would start it, which takes a good part of a
+ * second. After that every event is created and checked with
+ * {@link Event#isEnabled()} before it is filled in, so when no recording
+ * has the event enabled the JIT drops the event altogether. Only
+ * {@link Run} is enabled by default; the per-minute and per-person events
+ * come millions of times a second and have to be asked for, e.g.
+ * <pre>
+ * java -XX:StartFlightRecording:filename=sim.jfr,+mars.Death#enabled=true SimBatch
+ * </pre>
+ */
+final class FlightEvents {
+    /**
+     * Not instantiable.
+     */
+    private FlightEvents() {
+    }
+
+    /**
+     * Returns whether the flight recorder has started. Until it has, there
+     * is no recording to want any event.
+     *
+     * @return whether events can be recorded
+     */
+    static boolean isStarted() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /**
+     * Returns whether a recording wants arrivals, so a run of them can be
+     * skipped at once.
+     *
+     * @return whether arrivals are recorded
+     */
+    static boolean isArrivalEnabled() {
+        return isStarted() && new Arrival().isEnabled();
+    }
+
+    /**
+     * Emits an arrival if a recording wants it.
+     *
+     * @param minute the minute they arrived
+     * @param id the person's ID
+     * @param infected whether they are infected
+     */
+    static void arrival(long minute, long id, boolean infected) {
+        if (isStarted()) {
+            Arrival event = new Arrival();
+            if (event.isEnabled()) {
+                event.minute = minute;
+                event.id = id;
+                event.infected = infected;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Emits a test result if a recording wants it.
+     *
+     * @param scenario the number of the scenario
+     * @param minute the minute of the result
+     * @param id the person's ID
+     * @param waited the minutes from arriving to the result
+     * @param needsTreatment whether they were sent on for treatment
+     */
+    static void testResult(int scenario, long minute, long id, long waited, boolean needsTreatment) {
+        if (isStarted()) {
+            TestResult event = new TestResult();
+            if (event.isEnabled()) {
+                event.scenario = scenario;
+                event.minute = minute;
+                event.id = id;
+                event.waited = waited;
+                event.needsTreatment = needsTreatment;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Emits a treatment finishing if a recording wants it.
+     *
+     * @param scenario the number of the scenario
+     * @param minute the minute the treatment finished
+     * @param id the person's ID
+     * @param waited the minutes from joining the treatment line to being treated
+     */
+    static void treatmentFinish(int scenario, long minute, long id, long waited) {
+        if (isStarted()) {
+            TreatmentFinish event = new TreatmentFinish();
+            if (event.isEnabled()) {
+                event.scenario = scenario;
+                event.minute = minute;
+                event.id = id;
+                event.waited = waited;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Emits a death if a recording wants it.
+     *
+     * @param scenario the number of the scenario
+     * @param minute the minute they died
+     * @param id the person's ID
+     * @param waited the minutes from arriving to dying
+     */
+    static void death(int scenario, long minute, long id, long waited) {
+        if (isStarted()) {
+            Death event = new Death();
+            if (event.isEnabled()) {
+                event.scenario = scenario;
+                event.minute = minute;
+                event.id = id;
+                event.waited = waited;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * One call to {@link Simulation#step()}.
+     */
+    @Name("mars.Step")
+    @Label("Simulation Step")
+    @Category({"MARS Simulation", "Simulation"})
+    @Description("One simulated minute run through Simulation.step()")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Step extends Event {
+        /**
+         * The minute simulated.
+         */
+        @Label("Minute")
+        long minute;
+    }
+
+    /**
+     * One call to {@link Simulation#runUntil(long)}.
+     */
+    @Name("mars.Run")
+    @Label("Simulation Run")
+    @Category({"MARS Simulation", "Simulation"})
+    @Description("Minutes simulated in one call to Simulation.runUntil()")
+    @StackTrace(false)
+    static final class Run extends Event {
+        /**
+         * The minute the run started after.
+         */
+        @Label("From Minute")
+        long from;
+
+        /**
+         * The minute the run stopped at.
+         */
+        @Label("To Minute")
+        long to;
+
+        /**
+         * Whether the scenarios ran on worker threads.
+         */
+        @Label("Parallel")
+        boolean parallel;
+    }
+
+    /**
+     * A person arriving from Mars.
+     */
+    @Name("mars.Arrival")
+    @Label("Arrival")
+    @Category({"MARS Simulation", "Simulation"})
+    @Description("A person arriving from Mars, handed to every scenario")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Arrival extends Event {
+        /**
+         * The minute they arrived.
+         */
+        @Label("Minute")
+        long minute;
+
+        /**
+         * The person's ID.
+         */
+        @Label("Person")
+        long id;
+
+        /**
+         * Whether they are infected.
+         */
+        @Label("Infected")
+        boolean infected;
+    }
+
+    /**
+     * A test result coming in.
+     */
+    @Name("mars.TestResult")
+    @Label("Test Result")
+    @Category({"MARS Simulation", "Scenario"})
+    @Description("A person's test result coming in")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class TestResult extends Event {
+        /**
+         * The number of the scenario.
+         */
+        @Label("Scenario")
+        int scenario;
+
+        /**
+         * The minute of the result.
+         */
+        @Label("Minute")
+        long minute;
+
+        /**
+         * The person's ID.
+         */
+        @Label("Person")
+        long id;
+
+        /**
+         * The minutes from arriving to the result.
+         */
+        @Label("Minutes Waited")
+        long waited;
+
+        /**
+         * Whether they were sent on for treatment.
+         */
+        @Label("Needs Treatment")
+        boolean needsTreatment;
+    }
+
+    /**
+     * A treatment finishing.
+     */
+    @Name("mars.TreatmentFinish")
+    @Label("Treatment Finish")
+    @Category({"MARS Simulation", "Scenario"})
+    @Description("A person's treatment finishing, leaving them safe")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class TreatmentFinish extends Event {
+        /**
+         * The number of the scenario.
+         */
+        @Label("Scenario")
+        int scenario;
+
+        /**
+         * The minute the treatment finished.
+         */
+        @Label("Minute")
+        long minute;
+
+        /**
+         * The person's ID.
+         */
+        @Label("Person")
+        long id;
+
+        /**
+         * The minutes from joining the treatment line to being treated.
+         */
+        @Label("Minutes Waited")
+        long waited;
+    }
+
+    /**
+     * A death.
+     */
+    @Name("mars.Death")
+    @Label("Death")
+    @Category({"MARS Simulation", "Scenario"})
+    @Description("A person dying before they were treated")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Death extends Event {
+        /**
+         * The number of the scenario.
+         */
+        @Label("Scenario")
+        int scenario;
+
+        /**
+         * The minute they died.
+         */
+        @Label("Minute")
+        long minute;
+
+        /**
+         * The person's ID.
+         */
+        @Label("Person")
+        long id;
+
+        /**
+         * The minutes from arriving to dying.
+         */
+        @Label("Minutes in Scenario")
+        long waited;
+    }
+}
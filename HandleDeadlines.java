@@ -0,0 +1,219 @@
+/**
+ * A min-heap of {@link PersonStore} handles keyed by deadline, the primitive
+ * counterpart of {@link DeadlineQueue}. Each entry also remembers the ID the
+ * handle had when it was added, so an entry for someone who has left (and
+ * whose row may since have been reused) is recognized and skipped.
+ *
+ * <p>As in {@link DeadlineQueue}, people with the same deadline come out
+ * in order of ID.
+ *
+ * <p>A heap can copy another with {@link #shareFrom}; the two then share
+ * their arrays until either one changes.
+ */
+class HandleDeadlines {
+    /**
+     * The store the handles point into.
+     */
+    private final PersonStore store;
+
+    /**
+     * The deadlines, in heap order.
+     */
+    private long[] deadlines;
+
+    /**
+     * The handles, in the same order.
+     */
+    private int[] handles;
+
+    /**
+     * The IDs the handles had when added, in the same order.
+     */
+    private long[] ids;
+
+    /**
+     * The current number of entries.
+     */
+    private int size;
+
+    /**
+     * Whether the arrays are shared with another heap and must be copied
+     * before they are changed.
+     */
+    private boolean shared;
+
+    /**
+     * Constructs a new, empty heap over the given store.
+     *
+     * @param store the store the handles point into
+     */
+    public HandleDeadlines(PersonStore store) {
+        this.store = store;
+        deadlines = new long[16];
+        handles = new int[16];
+        ids = new long[16];
+    }
+
+    /**
+     * Returns the earliest deadline of someone still waiting, which is when
+     * the next death happens. Entries for people who have left, or whose
+     * row has been reused, are dropped from the top of the heap first.
+     *
+     * @return the earliest deadline, or {@code Long.MAX_VALUE} if none
+     */
+    public long peekDeadline() {
+        while (size > 0 && (store.getId(handles[0]) != ids[0] || store.getDeadline(handles[0]) != deadlines[0])) {
+            removeRoot();
+        }
+        return size == 0 ? Long.MAX_VALUE : deadlines[0];
+    }
+
+    /**
+     * Adds a person keyed by their deadline. People who can never die are
+     * not added.
+     *
+     * @param h the person's handle
+     */
+    public void add(int h) {
+        long deadline = store.getDeadline(h);
+        if (deadline == PersonStore.NO_DEADLINE) {
+            return;
+        }
+        if (shared) {
+            unshare();
+        }
+        if (size == deadlines.length) {
+            deadlines = java.util.Arrays.copyOf(deadlines, size * 2);
+            handles = java.util.Arrays.copyOf(handles, size * 2);
+            ids = java.util.Arrays.copyOf(ids, size * 2);
+        }
+        long id = store.getId(h);
+        int index = size++;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!DeadlineQueue.comesBefore(deadline, id, deadlines[parent], ids[parent])) {
+                break;
+            }
+            deadlines[index] = deadlines[parent];
+            handles[index] = handles[parent];
+            ids[index] = ids[parent];
+            index = parent;
+        }
+        deadlines[index] = deadline;
+        handles[index] = h;
+        ids[index] = id;
+    }
+
+    /**
+     * Writes every entry, in heap order, to a checkpoint. Entries for
+     * people who have left are kept, so the heap comes back as it was.
+     *
+     * @param out where to write
+     * @throws java.io.IOException if the checkpoint cannot be written
+     */
+    void writeTo(Checkpoint.Writer out) throws java.io.IOException {
+        out.putInt(size);
+        out.putLongs(deadlines, size);
+        out.putInts(handles, size);
+        out.putLongs(ids, size);
+    }
+
+    /**
+     * Replaces the contents of this heap with those written by
+     * {@link #writeTo}.
+     *
+     * @param in where to read from
+     */
+    void readFrom(Checkpoint.Reader in) {
+        size = in.getCount();
+        int capacity = Math.max(Integer.highestOneBit(Math.max(size, 8)) * 2, 16);
+        deadlines = new long[capacity];
+        handles = new int[capacity];
+        ids = new long[capacity];
+        in.getLongs(deadlines, size);
+        in.getInts(handles, size);
+        in.getLongs(ids, size);
+        shared = false;
+    }
+
+    /**
+     * Replaces the contents of this heap with another heap's, sharing its
+     * arrays until either heap next changes. This heap's store must have
+     * taken over the other heap's store first (see
+     * {@link PersonStore#shareFrom}).
+     *
+     * @param other the heap to share, which must not be in use on another thread
+     */
+    void shareFrom(HandleDeadlines other) {
+        deadlines = other.deadlines;
+        handles = other.handles;
+        ids = other.ids;
+        size = other.size;
+        shared = true;
+        other.shared = true;
+    }
+
+    /**
+     * Gives this heap its own copy of the arrays it shares with another.
+     */
+    private void unshare() {
+        deadlines = deadlines.clone();
+        handles = handles.clone();
+        ids = ids.clone();
+        shared = false;
+    }
+
+    /**
+     * Removes entries until one is found for a person still waiting whose
+     * deadline is at or before the given time.
+     *
+     * @param now the current scenario time
+     * @return that person's handle, or -1 if no one is due to die
+     */
+    public int pollExpired(long now) {
+        while (size > 0 && deadlines[0] <= now) {
+            long deadline = deadlines[0];
+            int h = handles[0];
+            long id = ids[0];
+            removeRoot();
+            // Skip entries for people who left or whose row was reused
+            if (store.getId(h) == id && store.getDeadline(h) == deadline) {
+                return h;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the root entry and restores the heap.
+     */
+    private void removeRoot() {
+        if (shared) {
+            unshare();
+        }
+        size--;
+        long deadline = deadlines[size];
+        int h = handles[size];
+        long id = ids[size];
+        int index = 0;
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && DeadlineQueue.comesBefore(deadlines[child + 1], ids[child + 1], deadlines[child], ids[child])) {
+                child++;
+            }
+            if (!DeadlineQueue.comesBefore(deadlines[child], ids[child], deadline, id)) {
+                break;
+            }
+            deadlines[index] = deadlines[child];
+            handles[index] = handles[child];
+            ids[index] = ids[child];
+            index = child;
+        }
+        if (size > 0) {
+            deadlines[index] = deadline;
+            handles[index] = h;
+            ids[index] = id;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+/**
+ * A binary heap of {@link PersonStore} handles in treatment priority order
+ * ({@link PersonStore#compare}), the primitive counterpart of
+ * {@link PriorityLine}. Adding, removing the front and removing any
+ * handle are O(log n); the heap keeps a handle-to-slot table so handles
+ * can be removed without searching.
+ *
+ * <p>A heap can copy another with {@link #shareFrom}; the two then share
+ * their arrays until either one changes.
+ */
+class HandleHeap {
+    /**
+     * The store the handles point into.
+     */
+    private final PersonStore store;
+
+    /**
+     * The handles, in heap order.
+     */
+    private int[] heap;
+
+    /**
+     * The slot of each handle in {@code heap}, or -1 if not in the heap.
+     */
+    private int[] slotOf;
+
+    /**
+     * The current number of handles in the heap.
+     */
+    private int size;
+
+    /**
+     * Whether the arrays are shared with another heap and must be copied
+     * before they are changed.
+     */
+    private boolean shared;
+
+    /**
+     * Constructs a new, empty heap over the given store.
+     *
+     * @param store the store the handles point into
+     */
+    public HandleHeap(PersonStore store) {
+        this.store = store;
+        heap = new int[16];
+        slotOf = new int[0];
+    }
+
+    /**
+     * Returns the number of handles in the heap.
+     *
+     * @return the number of handles
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the handle in the given heap slot, for visiting every handle.
+     *
+     * @param index the heap slot
+     * @return the handle in that slot
+     */
+    public int get(int index) {
+        return heap[index];
+    }
+
+    /**
+     * Returns whether the given handle is in the heap.
+     *
+     * @param h the handle
+     * @return {@code true} if it is in the heap
+     */
+    public boolean contains(int h) {
+        return h < slotOf.length && slotOf[h] >= 0;
+    }
+
+    /**
+     * Adds a handle in priority order.
+     *
+     * @param h the handle to add
+     */
+    public void add(int h) {
+        if (shared) {
+            unshare();
+        }
+        if (h >= slotOf.length) {
+            int old = slotOf.length;
+            slotOf = java.util.Arrays.copyOf(slotOf, Math.max(store.getCapacity(), h + 1));
+            java.util.Arrays.fill(slotOf, old, slotOf.length, -1);
+        }
+        if (size == heap.length) {
+            heap = java.util.Arrays.copyOf(heap, size * 2);
+        }
+        heap[size] = h;
+        slotOf[h] = size;
+        size++;
+        siftUp(size - 1);
+    }
+
+    /**
+     * Returns the highest priority handle without removing it.
+     *
+     * @return the front handle
+     * @throws IndexOutOfBoundsException if the heap is empty
+     */
+    public int peek() {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("Line is empty");
+        }
+        return heap[0];
+    }
+
+    /**
+     * Removes and returns the highest priority handle.
+     *
+     * @return the front handle
+     * @throws IndexOutOfBoundsException if the heap is empty
+     */
+    public int poll() {
+        int h = peek();
+        removeAt(0);
+        return h;
+    }
+
+    /**
+     * Removes the given handle from wherever it is in the heap.
+     *
+     * @param h the handle
+     * @return {@code true} if the handle was in the heap
+     */
+    public boolean remove(int h) {
+        if (!contains(h)) {
+            return false;
+        }
+        removeAt(slotOf[h]);
+        return true;
+    }
+
+    /**
+     * Writes the heap, in heap order, to a checkpoint.
+     *
+     * @param out where to write
+     * @throws java.io.IOException if the checkpoint cannot be written
+     */
+    void writeTo(Checkpoint.Writer out) throws java.io.IOException {
+        out.putInt(size);
+        out.putInts(heap, size);
+    }
+
+    /**
+     * Replaces the contents of this heap with those written by
+     * {@link #writeTo}. The store must have been restored first.
+     *
+     * @param in where to read from
+     */
+    void readFrom(Checkpoint.Reader in) {
+        size = in.getCount();
+        heap = new int[Math.max(Integer.highestOneBit(Math.max(size, 8)) * 2, 16)];
+        in.getInts(heap, size);
+        slotOf = new int[store.getCapacity()];
+        java.util.Arrays.fill(slotOf, -1);
+        for (int i = 0; i < size; i++) {
+            slotOf[heap[i]] = i;
+        }
+        shared = false;
+    }
+
+    /**
+     * Replaces the contents of this heap with another heap's, sharing its
+     * arrays until either heap next changes. This heap's store must have
+     * taken over the other heap's store first (see
+     * {@link PersonStore#shareFrom}).
+     *
+     * @param other the heap to share, which must not be in use on another thread
+     */
+    void shareFrom(HandleHeap other) {
+        heap = other.heap;
+        slotOf = other.slotOf;
+        size = other.size;
+        shared = true;
+        other.shared = true;
+    }
+
+    /**
+     * Gives this heap its own copy of the arrays it shares with another.
+     */
+    private void unshare() {
+        heap = heap.clone();
+        slotOf = slotOf.clone();
+        shared = false;
+    }
+
+    /**
+     * Returns the handles in priority order, front first.
+     *
+     * @return a new array of the handles
+     */
+    public int[] toSortedArray() {
+        Integer[] boxed = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = heap[i];
+        }
+        java.util.Arrays.sort(boxed, store::compare);
+        int[] sorted = new int[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = boxed[i];
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the first handles in priority order, without sorting the whole
+     * heap. The heap is walked from the root, keeping the slots that could
+     * come next in a small heap of their own, so this takes
+     * O(limit log limit) however many handles there are.
+     *
+     * @param limit the most handles to return
+     * @return a new array of up to {@code limit} handles, front first
+     */
+    public int[] firstInOrder(int limit) {
+        int n = Math.max(Math.min(limit, size), 0);
+        int[] first = new int[n];
+        if (n == 0) {
+            return first;
+        }
+        int[] next = new int[n + 1];
+        int count = 1;
+        next[0] = 0;
+        for (int found = 0; found < n; found++) {
+            int slot = next[0];
+            next[0] = next[--count];
+            siftDownSlot(next, count, 0);
+            first[found] = heap[slot];
+            for (int child = 2 * slot + 1; child <= 2 * slot + 2 && child < size; child++) {
+                next[count] = child;
+                siftUpSlot(next, count++);
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Moves a slot towards the root of a heap of slots, ordered by the
+     * handles in them, as used by {@link #firstInOrder}.
+     *
+     * @param slots the heap of slots
+     * @param index the position of the slot to move
+     */
+    private void siftUpSlot(int[] slots, int index) {
+        int slot = slots[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (store.compare(heap[slot], heap[slots[parent]]) >= 0) {
+                break;
+            }
+            slots[index] = slots[parent];
+            index = parent;
+        }
+        slots[index] = slot;
+    }
+
+    /**
+     * Moves a slot away from the root of a heap of slots, ordered by the
+     * handles in them, as used by {@link #firstInOrder}.
+     *
+     * @param slots the heap of slots
+     * @param count the number of slots in the heap
+     * @param index the position of the slot to move
+     */
+    private void siftDownSlot(int[] slots, int count, int index) {
+        if (count == 0) {
+            return;
+        }
+        int slot = slots[index];
+        int half = count >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < count && store.compare(heap[slots[right]], heap[slots[child]]) < 0) {
+                child = right;
+            }
+            if (store.compare(heap[slot], heap[slots[child]]) <= 0) {
+                break;
+            }
+            slots[index] = slots[child];
+            index = child;
+        }
+        slots[index] = slot;
+    }
+
+    /**
+     * Removes the handle in the given slot and restores the heap.
+     *
+     * @param index the heap slot
+     */
+    private void removeAt(int index) {
+        if (shared) {
+            unshare();
+        }
+        int removed = heap[index];
+        size--;
+        if (index != size) {
+            int last = heap[size];
+            heap[index] = last;
+            slotOf[last] = index;
+            siftDown(index);
+            if (heap[index] == last) {
+                siftUp(index);
+            }
+        }
+        slotOf[removed] = -1;
+    }
+
+    /**
+     * Moves the handle in the given slot towards the root as needed.
+     *
+     * @param index the heap slot
+     */
+    private void siftUp(int index) {
+        int h = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            int p = heap[parent];
+            if (store.compare(h, p) >= 0) {
+                break;
+            }
+            heap[index] = p;
+            slotOf[p] = index;
+            index = parent;
+        }
+        heap[index] = h;
+        slotOf[h] = index;
+    }
+
+    /**
+     * Moves the handle in the given slot away from the root as needed.
+     *
+     * @param index the heap slot
+     */
+    private void siftDown(int index) {
+        int h = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int c = heap[child];
+            int right = child + 1;
+            if (right < size && store.compare(heap[right], c) < 0) {
+                child = right;
+                c = heap[child];
+            }
+            if (store.compare(h, c) <= 0) {
+                break;
+            }
+            heap[index] = c;
+            slotOf[c] = index;
+            index = child;
+        }
+        heap[index] = h;
+        slotOf[h] = index;
+    }
+}
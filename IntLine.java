@@ -0,0 +1,146 @@
+/**
+ * A first-in-first-out line of {@code int}s (e.g. {@link PersonStore}
+ * handles) in a circular buffer, without boxing. Adding at the back and
+ * removing from the front are constant-time, and the capacity doubles as
+ * needed, like {@link Line}.
+ *
+ * <p>A line can copy another with {@link #shareFrom}; the two then share
+ * their buffer until either one writes to it.
+ */
+class IntLine {
+    /**
+     * The circular buffer. Its length is always a power of two.
+     */
+    private int[] data;
+
+    /**
+     * The index in {@code data} of the first element.
+     */
+    private int head;
+
+    /**
+     * The current number of elements in the line.
+     */
+    private int size;
+
+    /**
+     * Whether the buffer is shared with another line and must be copied
+     * before it is written to.
+     */
+    private boolean shared;
+
+    /**
+     * Constructs a new, empty IntLine.
+     */
+    public IntLine() {
+        data = new int[16];
+    }
+
+    /**
+     * Returns the number of elements in the line.
+     *
+     * @return the number of elements in the line
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the element at the specified index in the line.
+     *
+     * @param index the index of the element, 0 being the front
+     * @return the element at the specified index
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     */
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+        return data[(head + index) & (data.length - 1)];
+    }
+
+    /**
+     * Adds an element to the back of the line.
+     *
+     * @param item the element to add
+     */
+    public void addLast(int item) {
+        if (shared) {
+            unshare();
+        }
+        if (size == data.length) {
+            int[] newData = new int[data.length * 2];
+            for (int i = 0; i < size; i++) {
+                newData[i] = data[(head + i) & (data.length - 1)];
+            }
+            data = newData;
+            head = 0;
+        }
+        data[(head + size) & (data.length - 1)] = item;
+        size++;
+    }
+
+    /**
+     * Removes and returns the element at the front of the line.
+     *
+     * @return the removed element
+     * @throws IndexOutOfBoundsException if the line is empty
+     */
+    public int removeFirst() {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("Line is empty");
+        }
+        int item = data[head];
+        head = (head + 1) & (data.length - 1);
+        size--;
+        return item;
+    }
+
+    /**
+     * Removes every element matching the given filter in a single pass,
+     * keeping the order of the remaining elements.
+     *
+     * @param filter returns {@code true} for elements to remove
+     * @return the number of elements removed
+     */
+    public int removeIf(java.util.function.IntPredicate filter) {
+        if (shared) {
+            unshare();
+        }
+        int mask = data.length - 1;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int item = data[(head + i) & mask];
+            if (!filter.test(item)) {
+                data[(head + kept) & mask] = item;
+                kept++;
+            }
+        }
+        int removed = size - kept;
+        size = kept;
+        return removed;
+    }
+
+    /**
+     * Replaces the contents of this line with another line's, sharing its
+     * buffer until either line next writes to it. Removing from the front
+     * only moves the head, so it does not need a copy.
+     *
+     * @param other the line to share, which must not be in use on another thread
+     */
+    void shareFrom(IntLine other) {
+        data = other.data;
+        head = other.head;
+        size = other.size;
+        shared = true;
+        other.shared = true;
+    }
+
+    /**
+     * Gives this line its own copy of the buffer it shares with another.
+     */
+    private void unshare() {
+        data = data.clone();
+        shared = false;
+    }
+}
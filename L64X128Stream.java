@@ -0,0 +1,151 @@
+import java.util.random.RandomGenerator;
+
+/**
+ * The JDK's {@code L64X128MixRandom} algorithm, written out so that its
+ * state can be saved and restored (see {@link Checkpoint}); the JDK class
+ * keeps its state private. It gives exactly the same numbers: only
+ * {@link #nextLong()} is implemented, and {@code nextDouble()} and
+ * {@code nextGaussian()} are the {@link RandomGenerator} defaults built on
+ * it, which the JDK class uses too.
+ *
+ * <p>{@link #split(RandomGenerator.SplittableGenerator)} seeds a new stream
+ * the same way {@code L64X128MixRandom.split()} does, so splitting an
+ * {@code L64X128MixRandom} into these gives the same substreams as splitting
+ * it into JDK generators.
+ */
+final class L64X128Stream implements RandomGenerator {
+    /**
+     * The multiplier of the LCG part.
+     */
+    private static final long M = 0xd1342543de82ef95L;
+
+    /**
+     * The number of {@code long}s of state, as used by {@link #getState}.
+     */
+    static final int STATE_LONGS = 4;
+
+    /**
+     * The additive parameter of the LCG part, always odd.
+     */
+    private final long a;
+
+    /**
+     * The state of the LCG part.
+     */
+    private long s;
+
+    /**
+     * The first word of the state of the XBG part.
+     */
+    private long x0;
+
+    /**
+     * The second word of the state of the XBG part.
+     */
+    private long x1;
+
+    /**
+     * Creates a stream from its state, like the {@code L64X128MixRandom}
+     * constructor of the same shape.
+     *
+     * @param a the additive parameter (made odd)
+     * @param s the LCG state
+     * @param x0 the first XBG word
+     * @param x1 the second XBG word; if both XBG words are 0 they are seeded from {@code s}
+     */
+    L64X128Stream(long a, long s, long x0, long x1) {
+        this.a = a | 1;
+        this.s = s;
+        if ((x0 | x1) == 0) {
+            long v = s;
+            x0 = mixStafford13(v += 0x9e3779b97f4a7c15L);
+            x1 = mixStafford13(v + 0x9e3779b97f4a7c15L);
+        }
+        this.x0 = x0;
+        this.x1 = x1;
+    }
+
+    /**
+     * Splits a new stream off the given one, drawing its seed the way
+     * {@code L64X128MixRandom.split()} does.
+     *
+     * @param source the stream to split
+     * @return the new stream
+     */
+    static L64X128Stream split(RandomGenerator.SplittableGenerator source) {
+        long brine = source.nextLong();
+        long s = source.nextLong();
+        long x0 = source.nextLong();
+        long x1 = source.nextLong();
+        return new L64X128Stream(brine << 1, s, x0, x1);
+    }
+
+    /**
+     * Returns the next 64 random bits.
+     *
+     * @return the bits
+     */
+    @Override
+    public long nextLong() {
+        long result = mixLea64(s + x0);
+        s = M * s + a;
+        long q0 = x0;
+        long q1 = x1;
+        // xoroshiro128 v1.0
+        q1 ^= q0;
+        q0 = Long.rotateLeft(q0, 24);
+        q0 = q0 ^ q1 ^ (q1 << 16);
+        q1 = Long.rotateLeft(q1, 37);
+        x0 = q0;
+        x1 = q1;
+        return result;
+    }
+
+    /**
+     * Copies the state into an array, to be given back to
+     * {@link #L64X128Stream(long, long, long, long)} in the same order.
+     *
+     * @param state receives {@link #STATE_LONGS} values
+     * @param offset where to put the first one
+     */
+    void getState(long[] state, int offset) {
+        state[offset] = a;
+        state[offset + 1] = s;
+        state[offset + 2] = x0;
+        state[offset + 3] = x1;
+    }
+
+    /**
+     * Returns a stream with the same state as this one, which then goes on
+     * to give the same numbers.
+     *
+     * @return the copy
+     */
+    L64X128Stream copy() {
+        return new L64X128Stream(a, s, x0, x1);
+    }
+
+    /**
+     * The output mixing function.
+     *
+     * @param z the value to mix
+     * @return the mixed value
+     */
+    private static long mixLea64(long z) {
+        z = (z ^ (z >>> 32)) * 0xdaba0b6eb09322e3L;
+        z = (z ^ (z >>> 32)) * 0xdaba0b6eb09322e3L;
+        return z ^ (z >>> 32);
+    }
+
+    /**
+     * The mixing function used to seed the XBG state.
+     *
+     * @param z the value to mix
+     * @return the mixed value
+     */
+    private static long mixStafford13(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
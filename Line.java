@@ -2,6 +2,11 @@
  * A dynamic array-based class to simulate a line of items, allowing adding,
  * removing, and retrieving items by index.
  *
+ * <p>The backing array is used as a circular buffer: {@code head} is the
+ * physical slot of index 0 and the line wraps around the end of the array.
+ * Adding or removing at either end of the line is constant-time, while
+ * changes in the middle shift whichever side of the line is shorter.
+ *
  * @param <T> the type of elements in this line
  */
 class Line<T> {
@@ -10,6 +15,11 @@ class Line<T> {
      */
     private T[] data;
     
+    /**
+     * The physical index in {@code data} of the first element of the line.
+     */
+    private int head;
+    
     /**
      * The current number of elements in the line.
      */
@@ -22,9 +32,26 @@ class Line<T> {
     public Line() {
         // Default for data should be capacity of 1
         data = (T[]) new Object[1];  // Initialize with capacity of 1
+        head = 0;
         size = 0;  // No elements initially
     }
 
+    /**
+     * Maps a logical index in the line to its slot in the backing array.
+     *
+     * @param index the logical index (may be -1 or up to the capacity)
+     * @return the physical index in {@code data}
+     */
+    private int slot(int index) {
+        int p = head + index;
+        if (p >= data.length) {
+            p -= data.length;
+        } else if (p < 0) {
+            p += data.length;
+        }
+        return p;
+    }
+
     /**
      * Returns the element at the specified index in the line.
      *
@@ -37,12 +64,13 @@ class Line<T> {
         if (index < 0 || index >= size) {
             throw new IndexOutOfBoundsException("Index out of bounds: " + index);
         }
-        return data[index];
+        return data[slot(index)];
     }
 
     /**
      * Removes the element at the specified index in the line, shifting any
-     * subsequent elements to the left.
+     * subsequent elements to the left. Removing the first or last element
+     * takes constant time.
      *
      * @param index the index of the element to remove
      * @return the removed element
@@ -55,15 +83,22 @@ class Line<T> {
         }
 
         // Remove the object at the given index
-        T removedItem = data[index];
+        T removedItem = data[slot(index)];
         
-        // Shift elements to the left
-        for (int i = index; i < size - 1; i++) {
-            data[i] = data[i + 1];
+        if (index < size / 2) {
+            // Closer to the front: shift the earlier elements one to the right
+            for (int i = index; i > 0; i--) {
+                data[slot(i)] = data[slot(i - 1)];
+            }
+            data[head] = null;
+            head = slot(1);
+        } else {
+            // Closer to the back: shift the later elements one to the left
+            for (int i = index; i < size - 1; i++) {
+                data[slot(i)] = data[slot(i + 1)];
+            }
+            data[slot(size - 1)] = null;
         }
-        
-        // Nullify the last item and decrease the size
-        data[size - 1] = null;
         size--;
         
         return removedItem;
@@ -72,7 +107,8 @@ class Line<T> {
     /**
      * Adds the specified element at the specified index in the line, shifting
      * any subsequent elements to the right. If the line reaches its capacity,
-     * it is doubled.
+     * it is doubled. Adding at the front or back takes constant time
+     * (amortized over growth).
      *
      * @param item  the element to add
      * @param index the index at which to insert the element
@@ -88,23 +124,62 @@ class Line<T> {
         // Double the data array size if more space is needed
         if (size == data.length) {
             T[] newData = (T[]) new Object[data.length * 2];
-            // Copy existing elements
+            // Copy existing elements, unwrapping them to start at 0
             for (int i = 0; i < size; i++) {
-                newData[i] = data[i];
+                newData[i] = data[slot(i)];
             }
             data = newData;
+            head = 0;
         }
 
-        // Shift elements to the right
-        for (int i = size; i > index; i--) {
-            data[i] = data[i - 1];
+        if (index < size / 2) {
+            // Closer to the front: move head back and shift earlier elements left
+            head = slot(-1);
+            for (int i = 0; i < index; i++) {
+                data[slot(i)] = data[slot(i + 1)];
+            }
+        } else {
+            // Closer to the back: shift later elements to the right
+            for (int i = size; i > index; i--) {
+                data[slot(i)] = data[slot(i - 1)];
+            }
         }
 
         // Add the new item
-        data[index] = item;
+        data[slot(index)] = item;
         size++;
     }
 
+    /**
+     * Removes every element matching the given filter in a single pass,
+     * keeping the order of the remaining elements. The filter is called
+     * exactly once per element, front to back, so it may also update the
+     * element as it goes.
+     *
+     * @param filter returns {@code true} for elements to remove
+     * @return the number of elements removed
+     */
+    public int removeIf(java.util.function.Predicate<? super T> filter) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            T item = data[slot(i)];
+            if (!filter.test(item)) {
+                if (kept != i) {
+                    data[slot(kept)] = item;
+                }
+                kept++;
+            }
+        }
+        
+        // Nullify the vacated slots at the back
+        for (int i = kept; i < size; i++) {
+            data[slot(i)] = null;
+        }
+        int removed = size - kept;
+        size = kept;
+        return removed;
+    }
+
     /**
      * Returns the number of elements in the line.
      *
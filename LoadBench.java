@@ -0,0 +1,275 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *  Measures how fast whole simulations run under a set of standard load
+ *  profiles, and how much queue, heap and garbage collection each one
+ *  needs, and writes the results to a CSV file.
+ *
+ *  <p>Every profile is first run briefly to warm up the JIT compiler, then
+ *  measured on a fresh simulation with the same seed, so runs are
+ *  repeatable. The number of people waiting in each scenario is sampled
+ *  {@value #SAMPLES} times over a run rather than every minute, so the
+ *  sampling does not slow the run down; the peak is the largest sample.
+ *  The heap high-water mark is the sum of the peak usage of each heap
+ *  memory pool over the measured run.
+ */
+public final class LoadBench {
+
+	/**
+	 *  The number of times the queues are sampled during a run.
+	 */
+	private static final int SAMPLES = 1000;
+
+	/**
+	 *  The storage modes, as passed on the command line.
+	 */
+	private static final String[] MODES = {"tick", "deadline", "compact-tick", "compact"};
+
+	/**
+	 *  The profiles to run, by name.
+	 */
+	private final Map<String, SimParams> profiles;
+
+	/**
+	 *  The number of minutes each profile is measured for.
+	 */
+	private final long minutes;
+
+	/**
+	 *  The random number generator seed.
+	 */
+	private final int seed;
+
+	/**
+	 *  How the scenarios keep their people, one of {@link #MODES}.
+	 */
+	private final String mode;
+
+	/**
+	 * Creates a harness.
+	 *
+	 * @param profiles the profiles to run, by name
+	 * @param minutes the number of minutes each profile is measured for
+	 * @param seed the random number generator seed
+	 * @param mode how the scenarios keep their people: {@code tick},
+	 *             {@code deadline}, {@code compact-tick} or {@code compact}
+	 * @throws IllegalArgumentException if the mode is unknown
+	 */
+	public LoadBench(Map<String, SimParams> profiles, long minutes, int seed, String mode) {
+		if(!java.util.Arrays.asList(MODES).contains(mode)) {
+			throw new IllegalArgumentException("Unknown mode: " + mode);
+		}
+		this.profiles = profiles;
+		this.minutes = minutes;
+		this.seed = seed;
+		this.mode = mode;
+	}
+
+	/**
+	 *  Returns the standard load profiles: {@code idle} (hardly anyone
+	 *  arrives), {@code balanced} (the defaults), {@code saturated} (someone
+	 *  arrives every minute and treatment is slow, so the lines grow without
+	 *  bound) and {@code high-mortality} (infected people die within a few
+	 *  minutes).
+	 *
+	 *  @return the profiles, by name
+	 */
+	public static Map<String, SimParams> standardProfiles() {
+		SimParams defaults = SimParams.defaults();
+		Map<String, SimParams> profiles = new LinkedHashMap<>();
+		profiles.put("idle", defaults.with("arrivalProb", 0.05));
+		profiles.put("balanced", defaults);
+		profiles.put("saturated", defaults.with("arrivalProb", 1.0).with("treatmentTime", 20));
+		profiles.put("high-mortality", defaults.with("survivalTime", 2));
+		return profiles;
+	}
+
+	/**
+	 *  Warms up, then measures every profile, printing each result and
+	 *  writing them all to the report.
+	 *
+	 *  @param report the CSV file to write; replaced if it exists
+	 *  @throws IOException if the report cannot be written
+	 */
+	public void run(Path report) throws IOException {
+		long warmup = Math.max(minutes / 10, 10000);
+		for(SimParams params : profiles.values()) {
+			newSimulation(params).runUntil(warmup);
+		}
+
+		try(BufferedWriter out = Files.newBufferedWriter(report)) {
+			out.write("# minutes=" + minutes + ",seed=" + seed + ",mode=" + mode
+					+ ",java=" + System.getProperty("java.version")
+					+ ",cpus=" + Runtime.getRuntime().availableProcessors()
+					+ ",maxHeap=" + Runtime.getRuntime().maxMemory());
+			out.newLine();
+			out.write(header());
+			out.newLine();
+			System.out.println(header());
+			for(Map.Entry<String, SimParams> profile : profiles.entrySet()) {
+				String line = measure(profile.getKey(), profile.getValue());
+				out.write(line);
+				out.newLine();
+				out.flush();
+				System.out.println(line);
+			}
+		}
+	}
+
+	/**
+	 *  Runs one profile from the start and measures it.
+	 *
+	 *  @param name the profile's name
+	 *  @param params the profile's parameters
+	 *  @return the profile's CSV line
+	 */
+	private String measure(String name, SimParams params) {
+		Simulation sim = newSimulation(params);
+		int numScenarios = sim.getScenarios().size();
+		long[] peakWaiting = new long[numScenarios];
+
+		System.gc();
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			pool.resetPeakUsage();
+		}
+		long gcCount = -gcCount();
+		long gcMillis = -gcMillis();
+		long start = System.nanoTime();
+
+		long reportEvery = Math.max(minutes / SAMPLES, 1);
+		while(sim.getMinute() < minutes) {
+			sim.runUntil(Math.min(sim.getMinute() + reportEvery, minutes));
+			for(int i = 0; i < numScenarios; i++) {
+				peakWaiting[i] = Math.max(peakWaiting[i], waiting(sim, sim.getScenarios().get(i)));
+			}
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		gcCount += gcCount();
+		gcMillis += gcMillis();
+		long peakHeap = 0;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if(pool.getType() == MemoryType.HEAP) {
+				peakHeap += pool.getPeakUsage().getUsed();
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(name).append(',').append(params);
+		sb.append(',').append(minutes);
+		sb.append(',').append(String.format(java.util.Locale.ROOT, "%.3f", seconds));
+		sb.append(',').append((long)(minutes / seconds));
+		for(long peak : peakWaiting) {
+			sb.append(',').append(peak);
+		}
+		sb.append(',').append(peakHeap);
+		sb.append(',').append(gcCount);
+		sb.append(',').append(gcMillis);
+		for(Scenario s : sim.getScenarios()) {
+			sb.append(',').append(s.getSafe()).append(',').append(s.getDeaths());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 *  Creates a simulation for a profile with logging turned off.
+	 *
+	 *  @param params the profile's parameters
+	 *  @return the simulation
+	 */
+	private Simulation newSimulation(SimParams params) {
+		Simulation sim = new Simulation(seed, params, !mode.endsWith("tick"), mode.startsWith("compact"));
+		sim.setEventSink(SimEventSink.NONE);
+		return sim;
+	}
+
+	/**
+	 *  Returns the number of people waiting in a scenario, in any line.
+	 *
+	 *  @param sim the simulation
+	 *  @param s one of its scenarios
+	 *  @return the number of people who arrived and are neither safe nor dead
+	 */
+	private static long waiting(Simulation sim, Scenario s) {
+		return sim.getArrivals() - s.getSafe() - s.getDeaths();
+	}
+
+	/**
+	 *  Returns the total number of garbage collections so far.
+	 *
+	 *  @return the number of collections
+	 */
+	private static long gcCount() {
+		long count = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(gc.getCollectionCount(), 0);
+		}
+		return count;
+	}
+
+	/**
+	 *  Returns the total time spent in garbage collection so far.
+	 *
+	 *  @return the time in milliseconds
+	 */
+	private static long gcMillis() {
+		long millis = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(gc.getCollectionTime(), 0);
+		}
+		return millis;
+	}
+
+	/**
+	 *  Returns the CSV header line.
+	 *
+	 *  @return the header
+	 */
+	private static String header() {
+		return "profile," + String.join(",", SimParams.NAMES)
+				+ ",minutes,seconds,minutesPerSec,peakWaiting1,peakWaiting2,peakHeapBytes,gcCount,gcMillis"
+				+ ",safe1,deaths1,safe2,deaths2";
+	}
+
+	/**
+	 * Main method that runs the standard profiles.
+	 * @param args the number of minutes per profile, the report file, the storage mode and the seed
+	 */
+	public static void main(String[] args) {
+		String usageMsg = "Usage: java LoadBench [minutes] [report.csv] [tick|deadline|compact-tick|compact] [seed]";
+
+		//defaults
+		long minutes = 1000000;
+		String report = "loadbench.csv";
+		String mode = "compact";
+		int seed = 0;
+
+		try {
+			if(args.length >= 1) minutes = Long.parseLong(args[0]);
+			if(args.length >= 2) report = args[1];
+			if(args.length >= 3) mode = args[2];
+			if(args.length >= 4) seed = Integer.parseInt(args[3]);
+
+			if(args.length >= 5) {
+				System.out.println(usageMsg);
+				return;
+			}
+
+			new LoadBench(standardProfiles(), minutes, seed, mode).run(Paths.get(report));
+		}
+		catch(IOException | RuntimeException e) {
+			e.printStackTrace();
+			System.err.println(usageMsg);
+		}
+	}
+}
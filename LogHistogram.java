@@ -0,0 +1,253 @@
+/**
+ * A histogram of non-negative {@code long} values in fixed memory, in the
+ * style of HdrHistogram: values below 128 are counted exactly, and above
+ * that each power of two is split into 64 equal buckets, so any value is
+ * known to within 1/64 (about 1.6%). Recording a value is a few shifts and
+ * an array increment and never allocates, so a scenario can record every
+ * person who passes through it.
+ *
+ * <p>The whole {@code long} range fits in 3712 buckets (about
+ * 29KB). Percentiles are reported as the highest value in their bucket,
+ * capped at the largest value recorded.
+ */
+final class LogHistogram {
+    /**
+     * The number of values below which every value has its own bucket.
+     */
+    private static final int LINEAR = 128;
+
+    /**
+     * The number of buckets each power of two at or above {@link #LINEAR}
+     * is split into, as a number of bits.
+     */
+    private static final int SUB_BITS = 6;
+
+    /**
+     * The number of buckets needed for every {@code long} value.
+     */
+    static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+    /**
+     * The number of values recorded in each bucket.
+     */
+    private final long[] counts = new long[BUCKETS];
+
+    /**
+     * The number of values recorded.
+     */
+    private long count;
+
+    /**
+     * The sum of the values recorded.
+     */
+    private long sum;
+
+    /**
+     * The smallest value recorded, or {@code Long.MAX_VALUE} if none.
+     */
+    private long min = Long.MAX_VALUE;
+
+    /**
+     * The largest value recorded, or 0 if none.
+     */
+    private long max;
+
+    /**
+     * Records a value.
+     *
+     * @param value the value, which must not be negative
+     */
+    void record(long value) {
+        counts[bucketOf(value)]++;
+        count++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the smallest value recorded.
+     *
+     * @return the smallest value, or 0 if none
+     */
+    public long getMin() {
+        return (count == 0) ? 0 : min;
+    }
+
+    /**
+     * Returns the largest value recorded.
+     *
+     * @return the largest value, or 0 if none
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the exact mean of the values recorded.
+     *
+     * @return the mean, or 0 if none
+     */
+    public double getMean() {
+        return (count == 0) ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the value at or below which the given percentage of the
+     * recorded values fall, to within the precision of the buckets.
+     *
+     * @param percentile the percentage, from 0 to 100
+     * @return the value, or 0 if nothing has been recorded
+     * @throws IllegalArgumentException if the percentage is out of range
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("Percentile out of range: " + percentile);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max((long) Math.ceil(percentile / 100 * count), 1);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestInBucket(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the median.
+     *
+     * @return the 50th percentile
+     */
+    public long getP50() {
+        return getValueAtPercentile(50);
+    }
+
+    /**
+     * Returns the 99th percentile.
+     *
+     * @return the 99th percentile
+     */
+    public long getP99() {
+        return getValueAtPercentile(99);
+    }
+
+    /**
+     * Returns the 99.9th percentile.
+     *
+     * @return the 99.9th percentile
+     */
+    public long getP999() {
+        return getValueAtPercentile(99.9);
+    }
+
+    /**
+     * Replaces the contents of this histogram with a copy of another's.
+     *
+     * @param other the histogram to copy
+     */
+    void copyFrom(LogHistogram other) {
+        System.arraycopy(other.counts, 0, counts, 0, BUCKETS);
+        count = other.count;
+        sum = other.sum;
+        min = other.min;
+        max = other.max;
+    }
+
+    /**
+     * Writes the histogram to a checkpoint, up to its last non-empty bucket.
+     *
+     * @param out where to write
+     * @throws java.io.IOException if the checkpoint cannot be written
+     */
+    void writeTo(Checkpoint.Writer out) throws java.io.IOException {
+        int used = BUCKETS;
+        while (used > 0 && counts[used - 1] == 0) {
+            used--;
+        }
+        out.putInt(used);
+        out.putLongs(counts, used);
+        out.putLong(count);
+        out.putLong(sum);
+        out.putLong(min);
+        out.putLong(max);
+    }
+
+    /**
+     * Replaces the contents of this histogram with those written by
+     * {@link #writeTo}.
+     *
+     * @param in where to read from
+     * @throws IllegalArgumentException if there are too many buckets
+     */
+    void readFrom(Checkpoint.Reader in) {
+        int used = in.getCount();
+        if (used > BUCKETS) {
+            throw new IllegalArgumentException("Bad histogram size " + used);
+        }
+        java.util.Arrays.fill(counts, 0);
+        in.getLongs(counts, used);
+        count = in.getLong();
+        sum = in.getLong();
+        min = in.getLong();
+        max = in.getLong();
+    }
+
+    /**
+     * Returns a summary of the count, mean and main percentiles.
+     *
+     * @return the summary
+     */
+    @Override
+    public String toString() {
+        return String.format(java.util.Locale.ROOT, "n=%d mean=%.1f p50=%d p99=%d p999=%d max=%d",
+                             count, getMean(), getP50(), getP99(), getP999(), max);
+    }
+
+    /**
+     * Returns the bucket a value is counted in.
+     *
+     * @param value the value
+     * @return the bucket
+     */
+    private static int bucketOf(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        // Keep the top SUB_BITS + 1 bits: 64..127 shifted down by 'shift'
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the highest value counted in a bucket.
+     *
+     * @param bucket the bucket
+     * @return the highest value
+     */
+    private static long highestInBucket(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BITS) - 1;
+        long top = (bucket & ((1 << SUB_BITS) - 1)) + (1 << SUB_BITS);
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -2,13 +2,10 @@
  * The {@code Person} class represents a person in the simulation.
  * Each person has a unique ID, a test result, a countdown timer for
  * their time left before they "die" (or not infected).
+ * IDs are handed out by the {@link Simulation} that creates the person,
+ * so they are unique within a simulation and the same for the same seed.
  */
-class Person implements Comparable<Person> {
-    /**
-     * Static counter to assign unique IDs to each person.
-     */
-    private static int numPeople = 0;
-
+class Person implements Comparable<Person>, PriorityLine.Indexed {
     /**
      * The test result for the person.
      * A double representing the likelihood of infection.
@@ -28,35 +25,67 @@ class Person implements Comparable<Person> {
     /**
      * The unique ID for this person.
      */
-    private final int id;
+    private final long id;
+
+    /**
+     * The slot this person occupies in a {@link PriorityLine}, or -1 if
+     * they are not in one.
+     */
+    private int lineIndex = -1;
+
+    /**
+     * The absolute scenario time at which this person dies, used when a
+     * scenario expires people by deadline instead of ticking them.
+     * {@code Long.MAX_VALUE} if no deadline is running.
+     */
+    private long deadline = Long.MAX_VALUE;
+
+    /**
+     * The scenario time at which this person arrived.
+     */
+    private long arrived;
 
     /**
-     * Constructs a {@code Person} with a given test result and time left.
-     * Each person gets a unique ID upon creation.
+     * The scenario time at which this person joined the line they are in.
+     */
+    private long queued;
+
+    /**
+     * Constructs a {@code Person} with a given test result, time left,
+     * and ID.
      *
      * @param testResult the test result for the person
      * @param timeLeft the time left before the person dies
+     * @param id the unique ID to assign to the person
      */
-    public Person(double testResult, int timeLeft) {
+    public Person(double testResult, int timeLeft, long id) {
         this.testResult = testResult;
         this.timeLeft = timeLeft;
         this.isDead = false; // Initialize isDead to false
-        this.id = numPeople++;
+        this.id = id;
     }
 
     /**
-     * Constructs a {@code Person} with a given test result, time left,
-     * and a specific ID. This is used for cloning purposes.
+     * Constructs a {@code Person} with every field given, to restore one
+     * saved in a {@link Checkpoint} or to copy one (see {@link #copy()}).
      *
      * @param testResult the test result for the person
      * @param timeLeft the time left before the person dies
-     * @param id the specific ID to assign to the person
+     * @param id the unique ID to assign to the person
+     * @param isDead whether the person has died
+     * @param lineIndex the person's slot in a priority line, or -1
+     * @param deadline the person's absolute deadline
+     * @param arrived the scenario time the person arrived
+     * @param queued the scenario time the person joined their line
      */
-    private Person(double testResult, int timeLeft, int id) {
-        this.testResult = testResult;
-        this.timeLeft = timeLeft;
-        this.isDead = false; // Initialize isDead to false
-        this.id = id;
+    Person(double testResult, int timeLeft, long id, boolean isDead, int lineIndex, long deadline,
+           long arrived, long queued) {
+        this(testResult, timeLeft, id);
+        this.isDead = isDead;
+        this.lineIndex = lineIndex;
+        this.deadline = deadline;
+        this.arrived = arrived;
+        this.queued = queued;
     }
 
     /**
@@ -73,6 +102,101 @@ class Person implements Comparable<Person> {
         }
     }
 
+    /**
+     * Ticks the given person and reports whether they have now died. Meant
+     * to be handed to {@link Line#removeIf} to sweep a whole line at once.
+     *
+     * @param p the person to tick
+     * @return {@code true} if the person died
+     */
+    static boolean tickAndCheckDead(Person p) {
+        p.tick();
+        return p.isDead();
+    }
+
+    /**
+     * Starts this person's deadline, converting their time left into the
+     * absolute scenario time at which {@link #tick()} would have killed them.
+     * People who are not infected get no deadline.
+     *
+     * @param now the number of minutes the scenario has already run
+     */
+    public void startDeadline(long now) {
+        if (timeLeft != Integer.MAX_VALUE) {
+            // tick() always takes at least one minute to kill someone
+            deadline = now + Math.max(timeLeft, 1);
+        }
+    }
+
+    /**
+     * Records the scenario time this person arrived, which is also when
+     * they joined their first line.
+     *
+     * @param now the number of minutes the scenario has already run
+     */
+    public void arrive(long now) {
+        arrived = now;
+        queued = now;
+    }
+
+    /**
+     * Records the scenario time this person joined another line.
+     *
+     * @param now the number of minutes the scenario has already run
+     */
+    public void joinLine(long now) {
+        queued = now;
+    }
+
+    /**
+     * Returns the scenario time this person arrived.
+     *
+     * @return the arrival time
+     */
+    public long getArrived() {
+        return arrived;
+    }
+
+    /**
+     * Returns the scenario time this person joined the line they are in.
+     *
+     * @return the time they joined their line
+     */
+    public long getQueued() {
+        return queued;
+    }
+
+    /**
+     * Stops this person's deadline, e.g. once they have been treated.
+     */
+    public void clearDeadline() {
+        deadline = Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the absolute scenario time at which this person dies.
+     *
+     * @return the deadline, or {@code Long.MAX_VALUE} if none is running
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Marks the person dead if their deadline has been reached.
+     *
+     * @param now the current scenario time
+     * @return {@code true} if the person died just now
+     */
+    public boolean expire(long now) {
+        if (deadline <= now) {
+            isDead = true;
+            deadline = Long.MAX_VALUE;
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Checks if the person is dead.
      *
@@ -92,15 +216,45 @@ class Person implements Comparable<Person> {
         return testResult;
     }
 
+    /**
+     * Returns the time this person has left before they die. In deadline
+     * mode this stays at the time they had on arrival.
+     *
+     * @return the time left in minutes, or {@code Integer.MAX_VALUE} if not infected
+     */
+    public int getTimeLeft() {
+        return timeLeft;
+    }
+
     /**
      * Returns the unique ID assigned to this person.
      *
      * @return the person's unique ID
      */
-    public int getId() {
+    public long getId() {
         return id;
     }
 
+    /**
+     * Returns the slot this person occupies in a priority line.
+     *
+     * @return the slot, or -1 if the person is not in a priority line
+     */
+    @Override
+    public int getLineIndex() {
+        return lineIndex;
+    }
+
+    /**
+     * Records the slot this person occupies in a priority line.
+     *
+     * @param index the slot, or -1 if the person was removed
+     */
+    @Override
+    public void setLineIndex(int index) {
+        this.lineIndex = index;
+    }
+
     /**
      * Creates and returns a copy (clone) of this {@code Person}, preserving the
      * test result, time left, and ID.
@@ -111,6 +265,17 @@ class Person implements Comparable<Person> {
         return new Person(testResult, timeLeft, id);
     }
 
+    /**
+     * Creates an exact copy of this person, including whether they have died,
+     * their deadline, their times and their slot in a priority line, for a
+     * forked scenario.
+     *
+     * @return the copy
+     */
+    Person copy() {
+        return new Person(testResult, timeLeft, id, isDead, lineIndex, deadline, arrived, queued);
+    }
+
     /**
      * Returns a string representation of the person, displaying their ID and
      * either their time left (in minutes) or a message indicating they are not infected.
@@ -138,7 +303,7 @@ class Person implements Comparable<Person> {
         } else if (this.testResult < other.testResult) {
             return 1; // Lower test result comes later in priority
         } else {
-            return Integer.compare(this.id, other.id); // Use ID to break ties
+            return Long.compare(this.id, other.id); // Use ID to break ties
         }
     }
 }
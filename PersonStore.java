@@ -0,0 +1,513 @@
+/**
+ * A pool of people kept in parallel primitive arrays instead of
+ * {@link Person} objects. Each person is addressed by an {@code int}
+ * handle (their row in the arrays); rows of people who have left are
+ * reused, so a steady stream of arrivals allocates nothing once the
+ * pool has grown to the size of the queues.
+ *
+ * <p>Each row holds the low 32 bits of the person's ID and arrival time,
+ * their test result and their life, the minutes from arrival to their
+ * deadline (see {@link Person#startDeadline(long)}): 20 bytes per person.
+ * IDs and times are read back against the latest ID and time the store
+ * was given, so no one may stay in the store for 2^31 minutes or 2^31
+ * arrivals. Test results stay doubles, since rounding them would change
+ * who is treated first. A store whose people move on to a second line
+ * (see {@link #joinLine}) also keeps when they joined it, 4 bytes more,
+ * and a store made for tick mode keeps everyone's remaining time in an
+ * {@code int[]}, 4 bytes more, so that {@link #tick} can count everyone
+ * down with {@link DeathSweep}. Free rows are chained through their
+ * arrival times, so they need no column of their own.
+ *
+ * <p>Where a person waits costs more on top of their row: 4 bytes in an
+ * {@link IntLine}, 8 in a {@link HandleHeap}, and 20 in
+ * {@link HandleDeadlines} in deadline mode, which keeps whole deadlines
+ * and IDs so that entries for rows since reused are recognized. Someone in
+ * the treatment line of a compact scenario that expires by deadline thus
+ * takes 44 bytes (56 in the testing scenario's priority line, with its
+ * queue time), against about 80 as a {@link Person} in a {@link Line}.
+ *
+ * <p>A store can take over another's people with {@link #shareFrom}; the
+ * two then share their arrays until either one changes them.
+ */
+class PersonStore {
+    /**
+     * The deadline of someone who is not infected.
+     */
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /**
+     * The deadline of someone who has died.
+     */
+    static final long DEAD = Long.MIN_VALUE;
+
+    /**
+     * The life of someone who is not infected.
+     */
+    private static final int NO_LIFE = Integer.MAX_VALUE;
+
+    /**
+     * The life of someone who has died.
+     */
+    private static final int DEAD_LIFE = -1;
+
+    /**
+     * The life of a free row. Everyone else has a life of at least a minute.
+     */
+    private static final int FREE_LIFE = 0;
+
+    /**
+     * The low 32 bits of each person's ID.
+     */
+    private int[] ids;
+
+    /**
+     * The latest ID given to {@link #add}, which the stored IDs are read
+     * back against.
+     */
+    private long lastId;
+
+    /**
+     * The test result of each person.
+     */
+    private double[] testResults;
+
+    /**
+     * The minutes from each person's arrival to their deadline,
+     * {@link #NO_LIFE}, {@link #DEAD_LIFE} or {@link #FREE_LIFE}.
+     */
+    private int[] lives;
+
+    /**
+     * The low 32 bits of the scenario time each person arrived, or for a
+     * free row the next free row, -1 for none.
+     */
+    private int[] arrived;
+
+    /**
+     * The low 32 bits of the scenario time each person joined the line
+     * they are in, or {@code null} until someone first moves to another line.
+     */
+    private int[] queued;
+
+    /**
+     * The latest scenario time given to {@link #add} or {@link #joinLine},
+     * which the stored times are read back against.
+     */
+    private long lastTime;
+
+    /**
+     * The remaining time of each person in tick mode, {@code Integer.MAX_VALUE}
+     * for free rows and people who cannot die; {@code null} in deadline mode.
+     */
+    private int[] timeLeft;
+
+    /**
+     * The free row used last, the top of a stack chained through
+     * {@link #arrived}, or -1 for none.
+     */
+    private int freeTop = -1;
+
+    /**
+     * The number of free rows on the stack.
+     */
+    private int numFree;
+
+    /**
+     * The number of rows handed out so far (free or not).
+     */
+    private int used;
+
+    /**
+     * Whether the arrays are shared with another store and must be copied
+     * before they are changed.
+     */
+    private boolean shared;
+
+    /**
+     * Constructs a new, empty PersonStore.
+     */
+    public PersonStore() {
+        this(false);
+    }
+
+    /**
+     * Constructs a new, empty PersonStore, optionally keeping remaining times
+     * for {@link #tick}.
+     *
+     * @param tickMode whether people will be counted down with {@link #tick}
+     */
+    public PersonStore(boolean tickMode) {
+        ids = new int[16];
+        testResults = new double[16];
+        lives = new int[16];
+        arrived = new int[16];
+        this.timeLeft = tickMode ? new int[16] : null;
+    }
+
+    /**
+     * Returns the number of rows the store has, i.e. the largest handle plus one.
+     *
+     * @return the number of rows
+     */
+    public int getCapacity() {
+        return ids.length;
+    }
+
+    /**
+     * Adds a person who arrived at the given time and returns their handle.
+     *
+     * @param id the person's ID
+     * @param testResult the person's test result
+     * @param timeLeft the time the person has left, or {@code Integer.MAX_VALUE} if not infected
+     * @param now the number of minutes the scenario has already run
+     * @return the person's handle
+     */
+    public int add(long id, double testResult, int timeLeft, long now) {
+        if (shared) {
+            unshare();
+        }
+        int h;
+        if (numFree > 0) {
+            h = freeTop;
+            freeTop = arrived[h];
+            numFree--;
+        } else {
+            if (used == ids.length) {
+                int capacity = used * 2;
+                ids = java.util.Arrays.copyOf(ids, capacity);
+                testResults = java.util.Arrays.copyOf(testResults, capacity);
+                lives = java.util.Arrays.copyOf(lives, capacity);
+                arrived = java.util.Arrays.copyOf(arrived, capacity);
+                if (queued != null) {
+                    queued = java.util.Arrays.copyOf(queued, capacity);
+                }
+                if (this.timeLeft != null) {
+                    this.timeLeft = java.util.Arrays.copyOf(this.timeLeft, capacity);
+                }
+            }
+            h = used++;
+        }
+        ids[h] = (int) id;
+        lastId = Math.max(lastId, id);
+        testResults[h] = testResult;
+        // Same as Person.startDeadline(): tick() always takes at least a minute
+        lives[h] = (timeLeft == Integer.MAX_VALUE) ? NO_LIFE : Math.max(timeLeft, 1);
+        arrived[h] = (int) now;
+        if (queued != null) {
+            queued[h] = (int) now;
+        }
+        lastTime = Math.max(lastTime, now);
+        if (this.timeLeft != null) {
+            this.timeLeft[h] = timeLeft;
+        }
+        return h;
+    }
+
+    /**
+     * Frees a person's row once they have left the scenario.
+     *
+     * @param h the person's handle
+     */
+    public void remove(int h) {
+        if (shared) {
+            unshare();
+        }
+        lives[h] = FREE_LIFE;
+        if (timeLeft != null) {
+            timeLeft[h] = Integer.MAX_VALUE;
+        }
+        arrived[h] = freeTop;
+        freeTop = h;
+        numFree++;
+    }
+
+    /**
+     * Returns a person's ID.
+     *
+     * @param h the person's handle
+     * @return the ID, or -1 if the row is free
+     */
+    public long getId(int h) {
+        if (lives[h] == FREE_LIFE) {
+            return -1;
+        }
+        return lastId - ((int) lastId - ids[h]);
+    }
+
+    /**
+     * Returns a person's test result.
+     *
+     * @param h the person's handle
+     * @return the test result
+     */
+    public double getTestResult(int h) {
+        return testResults[h];
+    }
+
+    /**
+     * Returns a person's absolute deadline.
+     *
+     * @param h the person's handle
+     * @return the deadline, {@link #NO_DEADLINE} or {@link #DEAD}
+     */
+    public long getDeadline(int h) {
+        int life = lives[h];
+        if (life == NO_LIFE) {
+            return NO_DEADLINE;
+        } else if (life == DEAD_LIFE) {
+            return DEAD;
+        }
+        return getArrived(h) + life;
+    }
+
+    /**
+     * Returns the scenario time a person arrived.
+     *
+     * @param h the person's handle
+     * @return the arrival time
+     */
+    public long getArrived(int h) {
+        return toTime(arrived[h]);
+    }
+
+    /**
+     * Records the scenario time a person joined another line.
+     *
+     * @param h the person's handle
+     * @param now the current scenario time
+     */
+    public void joinLine(int h, long now) {
+        if (shared) {
+            unshare();
+        }
+        if (queued == null) {
+            queued = arrived.clone();
+        }
+        queued[h] = (int) now;
+        lastTime = Math.max(lastTime, now);
+    }
+
+    /**
+     * Returns the scenario time a person joined the line they are in.
+     *
+     * @param h the person's handle
+     * @return the time they joined their line
+     */
+    public long getQueued(int h) {
+        return toTime((queued != null) ? queued[h] : arrived[h]);
+    }
+
+    /**
+     * Turns the low 32 bits of a scenario time back into the whole time,
+     * taking it to be the time within 2^31 minutes of {@link #lastTime}.
+     *
+     * @param low the low 32 bits of the time
+     * @return the time
+     */
+    private long toTime(int low) {
+        return lastTime - ((int) lastTime - low);
+    }
+
+    /**
+     * Marks a person dead.
+     *
+     * @param h the person's handle
+     */
+    public void kill(int h) {
+        if (shared) {
+            unshare();
+        }
+        lives[h] = DEAD_LIFE;
+        if (timeLeft != null) {
+            timeLeft[h] = Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Moves everyone's remaining time forward one minute (tick mode only),
+     * marking anyone who runs out of time dead and handing them to the
+     * consumer in handle order. Free rows and the dead are not affected.
+     *
+     * @param onDeath called with the handle of each person who died
+     * @return the number of people who died
+     */
+    public int tick(java.util.function.IntConsumer onDeath) {
+        if (shared) {
+            unshare();
+        }
+        if (DeathSweep.tick(timeLeft, used) > 0) {
+            return 0;
+        }
+        int died = 0;
+        for (int h = 0; h < used; h++) {
+            if (timeLeft[h] <= 0) {
+                kill(h);
+                onDeath.accept(h);
+                died++;
+            }
+        }
+        return died;
+    }
+
+    /**
+     * Returns whether a person is dead.
+     *
+     * @param h the person's handle
+     * @return {@code true} if the person has died
+     */
+    public boolean isDead(int h) {
+        return lives[h] == DEAD_LIFE;
+    }
+
+    /**
+     * Compares two people by treatment priority, the same way as
+     * {@link Person#compareTo}: higher test result first, then lower ID.
+     *
+     * @param a one person's handle
+     * @param b the other person's handle
+     * @return a negative integer, zero, or a positive integer as {@code a}
+     *         comes before, with, or after {@code b}
+     */
+    public int compare(int a, int b) {
+        if (testResults[a] > testResults[b]) {
+            return -1;
+        } else if (testResults[a] < testResults[b]) {
+            return 1;
+        } else {
+            // IDs in the store are within 2^31 of each other, so the
+            // difference of their low bits has the right sign
+            return ids[a] - ids[b];
+        }
+    }
+
+    /**
+     * Writes every row and the free list to a checkpoint.
+     *
+     * @param out where to write
+     * @throws java.io.IOException if the checkpoint cannot be written
+     */
+    void writeTo(Checkpoint.Writer out) throws java.io.IOException {
+        out.putInt(ids.length);
+        out.putInt(used);
+        out.putInt(numFree);
+        out.putInt(freeTop);
+        out.putInts(ids, used);
+        out.putLong(lastId);
+        out.putDoubles(testResults, used);
+        out.putInts(lives, used);
+        out.putInts(arrived, used);
+        out.putBoolean(queued != null);
+        if (queued != null) {
+            out.putInts(queued, used);
+        }
+        out.putLong(lastTime);
+        out.putBoolean(timeLeft != null);
+        if (timeLeft != null) {
+            out.putInts(timeLeft, used);
+        }
+    }
+
+    /**
+     * Replaces the contents of this store with those written by
+     * {@link #writeTo}. Handles are kept, so lines of handles saved with
+     * the store stay valid.
+     *
+     * @param in where to read from
+     * @throws IllegalArgumentException if the store was saved in the other mode
+     */
+    void readFrom(Checkpoint.Reader in) {
+        int capacity = in.getCount();
+        used = in.getCount();
+        numFree = in.getCount();
+        if (used > capacity || numFree > used) {
+            throw new IllegalArgumentException("Bad store sizes " + capacity + "/" + used + "/" + numFree);
+        }
+        freeTop = in.getInt();
+        if (freeTop < -1 || freeTop >= used || (freeTop < 0) != (numFree == 0)) {
+            throw new IllegalArgumentException("Bad free row " + freeTop);
+        }
+        ids = new int[capacity];
+        testResults = new double[capacity];
+        lives = new int[capacity];
+        arrived = new int[capacity];
+        shared = false;
+        in.getInts(ids, used);
+        lastId = in.getLong();
+        in.getDoubles(testResults, used);
+        in.getInts(lives, used);
+        in.getInts(arrived, used);
+        queued = null;
+        if (in.getBoolean()) {
+            queued = new int[capacity];
+            in.getInts(queued, used);
+        }
+        lastTime = in.getLong();
+        if (in.getBoolean() != (timeLeft != null)) {
+            throw new IllegalArgumentException("Store saved in the other mode");
+        }
+        if (timeLeft != null) {
+            timeLeft = new int[capacity];
+            in.getInts(timeLeft, used);
+            java.util.Arrays.fill(timeLeft, used, capacity, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Replaces the contents of this store with another store's, sharing its
+     * arrays until either store next changes them. Handles are kept, so
+     * lines of handles copied from the other store stay valid.
+     *
+     * @param other the store to share, which must not be in use on another thread
+     * @throws IllegalArgumentException if the other store is in the other mode
+     */
+    void shareFrom(PersonStore other) {
+        if ((other.timeLeft != null) != (timeLeft != null)) {
+            throw new IllegalArgumentException("Store in the other mode");
+        }
+        ids = other.ids;
+        lastId = other.lastId;
+        testResults = other.testResults;
+        lives = other.lives;
+        arrived = other.arrived;
+        queued = other.queued;
+        lastTime = other.lastTime;
+        timeLeft = other.timeLeft;
+        freeTop = other.freeTop;
+        numFree = other.numFree;
+        used = other.used;
+        shared = true;
+        other.shared = true;
+    }
+
+    /**
+     * Gives this store its own copy of the arrays it shares with another.
+     */
+    private void unshare() {
+        ids = ids.clone();
+        testResults = testResults.clone();
+        lives = lives.clone();
+        arrived = arrived.clone();
+        if (queued != null) {
+            queued = queued.clone();
+        }
+        if (timeLeft != null) {
+            timeLeft = timeLeft.clone();
+        }
+        shared = false;
+    }
+
+    /**
+     * Builds a {@link Person} object for a row, e.g. for the GUI or an event
+     * sink. The person's time left is what remains at the given time.
+     *
+     * @param h the person's handle
+     * @param now the current scenario time
+     * @return a new person with the row's values
+     */
+    public Person toPerson(int h, long now) {
+        long deadline = getDeadline(h);
+        int timeLeft = (deadline == NO_DEADLINE) ? Integer.MAX_VALUE
+                     : (deadline == DEAD) ? 0 : (int) (deadline - now);
+        return new Person(testResults[h], timeLeft, getId(h));
+    }
+}
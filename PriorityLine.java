@@ -0,0 +1,351 @@
+/**
+ * An array-based binary min-heap used as a priority line. The item that
+ * compares lowest (per {@link Comparable#compareTo}) is at the front.
+ * Adding an item and removing the front are O(log n).
+ *
+ * <p>Every item remembers its own slot in the heap (see {@link Indexed}),
+ * so the item itself acts as a handle: any item can be removed from the
+ * middle of the line in O(log n) without searching for it.
+ *
+ * @param <T> the type of elements in this line
+ */
+class PriorityLine<T extends PriorityLine.Indexed & Comparable<? super T>> {
+    /**
+     * An item that can track its own position inside a {@code PriorityLine}.
+     * An item may only be in one priority line at a time.
+     */
+    interface Indexed {
+        /**
+         * Returns the slot this item occupies in its priority line.
+         *
+         * @return the slot, or -1 if the item is not in a line
+         */
+        int getLineIndex();
+
+        /**
+         * Records the slot this item occupies in its priority line.
+         *
+         * @param index the slot, or -1 if the item was removed
+         */
+        void setLineIndex(int index);
+    }
+
+    /**
+     * The array that stores the heap.
+     */
+    private T[] heap;
+
+    /**
+     * The current number of elements in the line.
+     */
+    private int size;
+
+    /**
+     * Constructs a new PriorityLine with an initial capacity of 1.
+     */
+    @SuppressWarnings("unchecked")
+    public PriorityLine() {
+        heap = (T[]) new Indexed[1];
+        size = 0;
+    }
+
+    /**
+     * Returns the number of elements in the line.
+     *
+     * @return the number of elements in the line
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the current capacity of the line.
+     *
+     * @return the current capacity of the line
+     */
+    public int getCapacity() {
+        return heap.length;
+    }
+
+    /**
+     * Returns the element at the front of the line without removing it.
+     *
+     * @return the highest priority element
+     * @throws IndexOutOfBoundsException if the line is empty
+     */
+    public T peek() {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("Line is empty");
+        }
+        return heap[0];
+    }
+
+    /**
+     * Returns the element in the given heap slot. Slots are in heap order,
+     * not priority order; this is meant for visiting every element.
+     *
+     * @param index the heap slot
+     * @return the element in that slot
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     */
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+        return heap[index];
+    }
+
+    /**
+     * Adds an element to the line in priority order. If the line reaches
+     * its capacity, it is doubled.
+     *
+     * @param item the element to add
+     */
+    @SuppressWarnings("unchecked")
+    public void add(T item) {
+        if (size == heap.length) {
+            T[] newHeap = (T[]) new Indexed[heap.length * 2];
+            System.arraycopy(heap, 0, newHeap, 0, size);
+            heap = newHeap;
+        }
+        heap[size] = item;
+        item.setLineIndex(size);
+        size++;
+        siftUp(size - 1);
+    }
+
+    /**
+     * Removes and returns the element at the front of the line.
+     *
+     * @return the highest priority element
+     * @throws IndexOutOfBoundsException if the line is empty
+     */
+    public T poll() {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("Line is empty");
+        }
+        return removeAt(0);
+    }
+
+    /**
+     * Removes the given element from wherever it is in the line.
+     *
+     * @param item the element to remove
+     * @return {@code true} if the element was in this line
+     */
+    public boolean remove(T item) {
+        int index = item.getLineIndex();
+        if (index < 0 || index >= size || heap[index] != item) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    /**
+     * Removes every element matching the given filter. The filter is called
+     * exactly once per element, so it may also update the element as it goes.
+     * Survivors are compacted in one pass and the heap is then rebuilt in
+     * linear time if anything was removed.
+     *
+     * @param filter returns {@code true} for elements to remove
+     * @return the number of elements removed
+     */
+    public int removeIf(java.util.function.Predicate<? super T> filter) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            T item = heap[i];
+            if (filter.test(item)) {
+                item.setLineIndex(-1);
+            } else {
+                heap[kept] = item;
+                item.setLineIndex(kept);
+                kept++;
+            }
+        }
+        int removed = size - kept;
+        if (removed > 0) {
+            for (int i = kept; i < size; i++) {
+                heap[i] = null;
+            }
+            size = kept;
+            for (int i = (size >>> 1) - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Builds a {@link Line} holding the elements in priority order. The
+     * line is a copy; changing it does not change this priority line.
+     *
+     * @return the elements from front to back
+     */
+    @SuppressWarnings("unchecked")
+    public Line<T> toLine() {
+        T[] sorted = (T[]) new Indexed[size];
+        System.arraycopy(heap, 0, sorted, 0, size);
+        java.util.Arrays.sort(sorted, 0, size);
+        Line<T> line = new Line<>();
+        for (int i = 0; i < size; i++) {
+            line.add(sorted[i], i);
+        }
+        return line;
+    }
+
+    /**
+     * Builds a {@link Line} holding the first elements in priority order,
+     * without sorting the whole line. The heap is walked from the root,
+     * keeping the slots that could come next in a small heap of their own,
+     * so this takes O(limit log limit) however long the line is.
+     *
+     * @param limit the most elements to return
+     * @return up to {@code limit} elements from the front, front first
+     */
+    public Line<T> firstInOrder(int limit) {
+        Line<T> line = new Line<>();
+        int n = Math.min(limit, size);
+        if (n <= 0) {
+            return line;
+        }
+        int[] next = new int[n + 1];
+        int count = 1;
+        next[0] = 0;
+        while (count > 0 && line.getSize() < n) {
+            int slot = next[0];
+            next[0] = next[--count];
+            siftDownSlot(next, count, 0);
+            line.add(heap[slot], line.getSize());
+            for (int child = 2 * slot + 1; child <= 2 * slot + 2 && child < size; child++) {
+                next[count] = child;
+                siftUpSlot(next, count++);
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Moves a slot towards the root of a heap of slots, ordered by the
+     * elements in them, as used by {@link #firstInOrder}.
+     *
+     * @param slots the heap of slots
+     * @param index the position of the slot to move
+     */
+    private void siftUpSlot(int[] slots, int index) {
+        int slot = slots[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[slot].compareTo(heap[slots[parent]]) >= 0) {
+                break;
+            }
+            slots[index] = slots[parent];
+            index = parent;
+        }
+        slots[index] = slot;
+    }
+
+    /**
+     * Moves a slot away from the root of a heap of slots, ordered by the
+     * elements in them, as used by {@link #firstInOrder}.
+     *
+     * @param slots the heap of slots
+     * @param count the number of slots in the heap
+     * @param index the position of the slot to move
+     */
+    private void siftDownSlot(int[] slots, int count, int index) {
+        if (count == 0) {
+            return;
+        }
+        int slot = slots[index];
+        int half = count >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < count && heap[slots[right]].compareTo(heap[slots[child]]) < 0) {
+                child = right;
+            }
+            if (heap[slot].compareTo(heap[slots[child]]) <= 0) {
+                break;
+            }
+            slots[index] = slots[child];
+            index = child;
+        }
+        slots[index] = slot;
+    }
+
+    /**
+     * Removes the element in the given slot and restores the heap.
+     *
+     * @param index the heap slot
+     * @return the removed element
+     */
+    private T removeAt(int index) {
+        T removedItem = heap[index];
+        size--;
+        if (index != size) {
+            T last = heap[size];
+            heap[index] = last;
+            last.setLineIndex(index);
+            heap[size] = null;
+            siftDown(index);
+            if (heap[index] == last) {
+                siftUp(index);
+            }
+        } else {
+            heap[size] = null;
+        }
+        removedItem.setLineIndex(-1);
+        return removedItem;
+    }
+
+    /**
+     * Moves the element in the given slot towards the root until its
+     * parent is not greater than it.
+     *
+     * @param index the heap slot
+     */
+    private void siftUp(int index) {
+        T item = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            T p = heap[parent];
+            if (item.compareTo(p) >= 0) {
+                break;
+            }
+            heap[index] = p;
+            p.setLineIndex(index);
+            index = parent;
+        }
+        heap[index] = item;
+        item.setLineIndex(index);
+    }
+
+    /**
+     * Moves the element in the given slot away from the root until neither
+     * child is smaller than it.
+     *
+     * @param index the heap slot
+     */
+    private void siftDown(int index) {
+        T item = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            T c = heap[child];
+            int right = child + 1;
+            if (right < size && heap[right].compareTo(c) < 0) {
+                child = right;
+                c = heap[child];
+            }
+            if (item.compareTo(c) <= 0) {
+                break;
+            }
+            heap[index] = c;
+            c.setLineIndex(index);
+            index = child;
+        }
+        heap[index] = item;
+        item.setLineIndex(index);
+    }
+}
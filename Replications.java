@@ -0,0 +1,274 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.random.RandomGenerator;
+
+/**
+ *  Runs many independent replications of a simulation in parallel and
+ *  summarizes the safe, death and pending counts of each scenario with
+ *  means and 95% confidence intervals.
+ *
+ *  <p>Each replication gets its own seed, drawn in replication order from a
+ *  {@link SplittableRandom} seeded with the base seed, or, for a runner made
+ *  with a stream factory, its own substream split in replication order from
+ *  an {@link ArrivalGenerator#newStream(long) L64X128} root stream. Results
+ *  are combined in replication order once all of them are done. The summary
+ *  is therefore the same no matter how many threads run the replications.
+ */
+public final class Replications {
+
+	/**
+	 *  Names of the counters collected from each scenario.
+	 */
+	static final String[] METRICS = {"safe", "deaths", "pending"};
+
+	/**
+	 *  The number of scenarios in each simulation.
+	 */
+	static final int NUM_SCENARIOS = 2;
+
+	/**
+	 *  Builds the simulation for one replication from its seed, or null if
+	 *  replications get split streams.
+	 */
+	private final IntFunction<Simulation> factory;
+	
+	/**
+	 *  Builds the simulation for one replication from its random stream, or
+	 *  null if replications get seeds.
+	 */
+	private final Function<RandomGenerator.SplittableGenerator, Simulation> streamFactory;
+
+	/**
+	 *  The number of minutes each replication runs for.
+	 */
+	private final long minutes;
+
+	/**
+	 * Creates a replication runner.
+	 *
+	 * @param factory builds a simulation from a seed
+	 * @param minutes the number of minutes each replication runs for
+	 */
+	public Replications(IntFunction<Simulation> factory, long minutes) {
+		this.factory = factory;
+		this.streamFactory = null;
+		this.minutes = minutes;
+	}
+
+	/**
+	 * Creates a replication runner that gives each replication its own
+	 * random stream instead of a seed.
+	 *
+	 * @param streamFactory builds a simulation from a random stream
+	 * @param minutes the number of minutes each replication runs for
+	 */
+	public Replications(Function<RandomGenerator.SplittableGenerator, Simulation> streamFactory, long minutes) {
+		this.factory = null;
+		this.streamFactory = streamFactory;
+		this.minutes = minutes;
+	}
+
+	/**
+	 *  Runs the replications and summarizes them.
+	 *
+	 *  @param replications the number of replications
+	 *  @param baseSeed the seed the replication seeds are drawn from
+	 *  @param threads the number of threads to run them on
+	 *  @return the statistics, indexed by scenario (0 or 1) then by
+	 *          metric in the order of {@link #METRICS}
+	 */
+	public SampleStats[][] run(int replications, long baseSeed, int threads) {
+		int[] seeds = (factory != null) ? seeds(baseSeed, replications) : null;
+		RandomGenerator.SplittableGenerator[] streams = (streamFactory != null) ? streams(baseSeed, replications) : null;
+		int[][] results = new int[replications][];
+
+		String name = SimMonitor.uniqueName("replications");
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try(SimMonitor monitor = SimMonitor.publishReplications(name, replications, minutes)) {
+			ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[replications];
+			for(int i = 0; i < replications; i++) {
+				final int rep = i;
+				tasks[i] = pool.submit(() -> {
+					Simulation sim = (factory != null) ? factory.apply(seeds[rep]) : streamFactory.apply(streams[rep]);
+					results[rep] = runReplication(sim, minutes, name + " #" + rep, monitor);
+				});
+			}
+			for(ForkJoinTask<?> task : tasks) {
+				task.join();
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+
+		//combine in replication order so the sums don't depend on scheduling
+		SampleStats[][] stats = new SampleStats[NUM_SCENARIOS][METRICS.length];
+		for(int s = 0; s < NUM_SCENARIOS; s++) {
+			for(int m = 0; m < METRICS.length; m++) {
+				stats[s][m] = new SampleStats();
+				for(int[] result : results) {
+					stats[s][m].add(result[s * METRICS.length + m]);
+				}
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 *  Draws the seed for each replication.
+	 *
+	 *  @param baseSeed the seed the replication seeds are drawn from
+	 *  @param replications the number of replications
+	 *  @return one seed per replication
+	 */
+	static int[] seeds(long baseSeed, int replications) {
+		SplittableRandom seedStream = new SplittableRandom(baseSeed);
+		int[] seeds = new int[replications];
+		for(int i = 0; i < replications; i++) {
+			seeds[i] = seedStream.nextInt();
+		}
+		return seeds;
+	}
+
+	/**
+	 *  Splits a random stream for each replication off one root stream.
+	 *
+	 *  @param baseSeed the seed of the root stream
+	 *  @param replications the number of replications
+	 *  @return one stream per replication
+	 */
+	static RandomGenerator.SplittableGenerator[] streams(long baseSeed, int replications) {
+		RandomGenerator.SplittableGenerator root = ArrivalGenerator.newStream(baseSeed);
+		RandomGenerator.SplittableGenerator[] streams = new RandomGenerator.SplittableGenerator[replications];
+		for(int i = 0; i < replications; i++) {
+			streams[i] = root.split();
+		}
+		return streams;
+	}
+
+	/**
+	 *  Runs a simulation with events off and collects its counters.
+	 *
+	 *  @param sim the simulation to run
+	 *  @param minutes the number of minutes to run it for
+	 *  @return the safe, death and pending counts of each scenario in turn
+	 */
+	static int[] runReplication(Simulation sim, long minutes) {
+		sim.setEventSink(SimEventSink.NONE);
+		sim.runUntil(minutes);
+
+		Scenario[] scenarios = {sim.getScenario1(), sim.getScenario2()};
+		int[] result = new int[NUM_SCENARIOS * METRICS.length];
+		for(int s = 0; s < NUM_SCENARIOS; s++) {
+			result[s * METRICS.length] = scenarios[s].getSafe();
+			result[s * METRICS.length + 1] = scenarios[s].getDeaths();
+			result[s * METRICS.length + 2] = scenarios[s].getPending();
+		}
+		return result;
+	}
+
+	/**
+	 *  Runs a simulation like {@link #runReplication(Simulation, long)},
+	 *  publishing it with {@link SimMonitor} while it runs and counting it
+	 *  as done in the monitor of its batch.
+	 *
+	 *  @param sim the simulation to run
+	 *  @param minutes the number of minutes to run it for
+	 *  @param name the name to publish the simulation under
+	 *  @param batch the monitor of the batch it belongs to
+	 *  @return the safe, death and pending counts of each scenario in turn
+	 */
+	static int[] runReplication(Simulation sim, long minutes, String name, SimMonitor batch) {
+		int[] result;
+		SimMonitor running = SimMonitor.publish(sim, name);
+		try {
+			result = runReplication(sim, minutes);
+		}
+		finally {
+			running.close();
+		}
+		batch.replicationDone();
+		return result;
+	}
+
+	/**
+	 *  Formats the statistics as a table with one row per scenario.
+	 *
+	 *  @param stats the statistics from {@link #run}
+	 *  @return the table
+	 */
+	static String format(SampleStats[][] stats) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("scenario");
+		for(String metric : METRICS) {
+			sb.append('\t').append(metric).append(" (mean +/- 95% CI)");
+		}
+		sb.append('\n');
+		for(int s = 0; s < stats.length; s++) {
+			sb.append(s + 1);
+			for(SampleStats stat : stats[s]) {
+				sb.append('\t').append(stat);
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Main method that runs the replications from the command line.
+	 * @param args command line args for the simulation parameters, the number of
+	 *             minutes, the number of replications, the number of threads and
+	 *             the random numbers to use ("legacy" or "split")
+	 */
+	public static void main(String[] args) {
+		String usageMsg = "Usage: java Replications [arrivalProb] [infectedProb] [survivalTime] [survivalStd] [testingTime] [treatmentTime] [seed] [minutes] [replications] [threads] [legacy|split]";
+
+		//defaults
+		double arrivalProb = 0.4;
+		double infectedProb = 0.4;
+		int survivalTime = 10;
+		int survivalStd = 5;
+		int testingTime = 2;
+		int treatmentTime = 5;
+		int seed = 0;
+		long minutes = 100000;
+		int replications = 100;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean split = false;
+
+		try {
+			if(args.length >= 1) arrivalProb = Double.parseDouble(args[0]);
+			if(args.length >= 2) infectedProb = Double.parseDouble(args[1]);
+			if(args.length >= 3) survivalTime = Integer.parseInt(args[2]);
+			if(args.length >= 4) survivalStd = Integer.parseInt(args[3]);
+			if(args.length >= 5) testingTime = Integer.parseInt(args[4]);
+			if(args.length >= 6) treatmentTime = Integer.parseInt(args[5]);
+			if(args.length >= 7) seed = Integer.parseInt(args[6]);
+			if(args.length >= 8) minutes = Long.parseLong(args[7]);
+			if(args.length >= 9) replications = Integer.parseInt(args[8]);
+			if(args.length >= 10) threads = Integer.parseInt(args[9]);
+			if(args.length >= 11) {
+				if(!args[10].equals("legacy") && !args[10].equals("split")) throw new IllegalArgumentException("Unknown random numbers: " + args[10]);
+				split = args[10].equals("split");
+			}
+
+			if(args.length >= 12) {
+				System.out.println(usageMsg);
+				return;
+			}
+
+			SimParams params = new SimParams(arrivalProb, infectedProb, survivalTime, survivalStd, testingTime, treatmentTime, SimParams.DEFAULT_TRIAGE_THRESHOLD);
+			Replications runner = split
+					? new Replications((RandomGenerator.SplittableGenerator r) -> new Simulation(new ArrivalGenerator(r, params), params, true, true), minutes)
+					: new Replications((int s) -> new Simulation(s, params, true, true), minutes);
+			System.out.print(format(runner.run(replications, seed, threads)));
+		}
+		catch(RuntimeException e) {
+			e.printStackTrace();
+			System.err.println(usageMsg);
+		}
+	}
+}
@@ -0,0 +1,27 @@
+/**
+ * The management view of a running batch of replications, from
+ * {@link Replications} or {@link Sweep}, published by {@link SimMonitor}.
+ * The simulation each replication is running is published alongside it.
+ */
+public interface ReplicationsMXBean {
+    /**
+     * Returns the number of replications to run.
+     *
+     * @return the number of replications
+     */
+    int getReplications();
+
+    /**
+     * Returns the number of replications finished.
+     *
+     * @return the number done
+     */
+    int getReplicationsDone();
+
+    /**
+     * Returns the number of minutes each replication runs for.
+     *
+     * @return the minutes per replication
+     */
+    long getMinutesPerReplication();
+}
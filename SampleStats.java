@@ -0,0 +1,157 @@
+/**
+ * Running summary statistics (count, mean, variance) of a series of
+ * samples, with a 95% confidence interval for the mean. Uses Welford's
+ * method, so samples are not stored. Adding the same samples in the same
+ * order always gives bit-for-bit the same results.
+ */
+class SampleStats {
+    /**
+     * Two-sided 95% Student's t critical values for 1 to 30 degrees of freedom.
+     */
+    private static final double[] T_95 = {
+        12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+        2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+        2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+
+    /**
+     * Degrees of freedom above 30 at which the critical value is tabulated.
+     */
+    private static final int[] T_95_DF = {30, 40, 60, 120};
+
+    /**
+     * Two-sided 95% Student's t critical values for {@link #T_95_DF}.
+     */
+    private static final double[] T_95_TAIL = {2.042, 2.021, 2.000, 1.980};
+
+    /**
+     * The 95% critical value of the normal distribution, which t approaches
+     * as the degrees of freedom grow.
+     */
+    private static final double Z_95 = 1.960;
+
+    /**
+     * The number of samples.
+     */
+    private long count = 0;
+
+    /**
+     * The mean of the samples so far.
+     */
+    private double mean = 0;
+
+    /**
+     * The sum of squared differences from the mean so far.
+     */
+    private double sumSq = 0;
+
+    /**
+     * Adds a sample.
+     *
+     * @param x the sample
+     */
+    public void add(double x) {
+        count++;
+        double delta = x - mean;
+        mean += delta / count;
+        sumSq += delta * (x - mean);
+    }
+
+    /**
+     * Returns the number of samples.
+     *
+     * @return the number of samples
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean of the samples.
+     *
+     * @return the mean, or 0 if there are no samples
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Returns the sample variance (with n - 1 in the denominator).
+     *
+     * @return the variance, or 0 with fewer than two samples
+     */
+    public double getVariance() {
+        return (count > 1) ? sumSq / (count - 1) : 0;
+    }
+
+    /**
+     * Returns the half-width of the 95% confidence interval for the mean,
+     * using Student's t distribution.
+     *
+     * @return the half-width, or NaN with fewer than two samples, when the
+     *         interval is undefined
+     */
+    public double getHalfWidth() {
+        if (count < 2) {
+            return Double.NaN;
+        }
+        return t95(count - 1) * Math.sqrt(getVariance() / count);
+    }
+
+    /**
+     * Returns the two-sided 95% Student's t critical value. Above 30
+     * degrees of freedom it is interpolated linearly in 1/df between the
+     * tabulated values and, above 120, the normal value, which is accurate
+     * to about 0.001.
+     *
+     * @param df the degrees of freedom, at least 1
+     * @return the critical value
+     */
+    static double t95(long df) {
+        if (df <= T_95.length) {
+            return T_95[(int) df - 1];
+        }
+        // Find the tabulated values on either side, with infinite df past the end
+        int i = 1;
+        while (i < T_95_DF.length && df > T_95_DF[i]) {
+            i++;
+        }
+        double x0 = 1.0 / T_95_DF[i - 1];
+        double y0 = T_95_TAIL[i - 1];
+        double x1 = (i < T_95_DF.length) ? 1.0 / T_95_DF[i] : 0;
+        double y1 = (i < T_95_DF.length) ? T_95_TAIL[i] : Z_95;
+        return y1 + (y0 - y1) * (1.0 / df - x1) / (x0 - x1);
+    }
+
+    /**
+     * Returns the lower end of the 95% confidence interval for the mean.
+     *
+     * @return the lower bound, or NaN with fewer than two samples
+     */
+    public double getLow() {
+        return mean - getHalfWidth();
+    }
+
+    /**
+     * Returns the upper end of the 95% confidence interval for the mean.
+     *
+     * @return the upper bound, or NaN with fewer than two samples
+     */
+    public double getHigh() {
+        return mean + getHalfWidth();
+    }
+
+    /**
+     * Returns the mean and confidence interval as text.
+     *
+     * @return a string like {@code "12.50 +/- 0.31"}, or
+     *         {@code "12.50 +/- n/a"} with fewer than two samples
+     */
+    @Override
+    public String toString() {
+        if (count < 2) {
+            return String.format(java.util.Locale.ROOT, "%.2f +/- n/a", mean);
+        }
+        return String.format(java.util.Locale.ROOT, "%.2f +/- %.2f", mean, getHalfWidth());
+    }
+}
@@ -19,6 +19,26 @@ abstract class Scenario {
      */
     protected int numDeaths = 0;
 
+    /**
+     * Where this scenario reports its events.
+     */
+    protected SimEventSink events = SimEventSink.NONE;
+
+    /**
+     * The events {@code events} wants, cached from {@link SimEventSink#getEvents()}.
+     */
+    protected int eventMask = 0;
+
+    /**
+     * The number this scenario reports its events under.
+     */
+    protected int scenarioNum = 0;
+
+    /**
+     * Where this scenario records its state each minute, or {@code null}.
+     */
+    protected Timeline timeline;
+
     /**
      * Returns the number of safe people in the scenario.
      * 
@@ -37,6 +57,66 @@ abstract class Scenario {
         return numDeaths;
     }
 
+    /**
+     * Sets where this scenario reports its events.
+     * 
+     * @param sink the event sink
+     * @param num the number to report events under
+     */
+    public void setEventSink(SimEventSink sink, int num) {
+        this.events = sink;
+        this.eventMask = sink.getEvents();
+        this.scenarioNum = num;
+    }
+
+    /**
+     * Returns whether the event sink wants the given event.
+     * 
+     * @param event one of the {@link SimEventSink} event bits
+     * @return {@code true} if the event should be reported
+     */
+    protected boolean wants(int event) {
+        return (eventMask & event) != 0;
+    }
+
+    /**
+     * Attaches a timeline that this scenario records its state into at the
+     * end of every minute from now on. Like the event sink, the timeline is
+     * not checkpointed or carried over to forks.
+     * 
+     * @param timeline the timeline, which must not be attached to another
+     *                 scenario, or {@code null} to stop recording
+     * @throws IllegalStateException if the timeline is already attached
+     */
+    public void setTimeline(Timeline timeline) {
+        if (timeline != null) {
+            timeline.attach(this);
+        }
+        this.timeline = timeline;
+    }
+
+    /**
+     * Returns the timeline this scenario records into.
+     * 
+     * @return the timeline, or {@code null} if none
+     */
+    public Timeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * Puts this scenario's state into the {@link Timeline} channels: the
+     * lines as they are now and the running totals so far. Subclasses with
+     * more to report add it after this.
+     * 
+     * @param values where to put each channel's value
+     */
+    protected void sampleMetrics(long[] values) {
+        values[Timeline.PENDING] = getPending();
+        values[Timeline.SAFE] = numSafe;
+        values[Timeline.DEATHS] = numDeaths;
+    }
+
     /**
      * Returns the number of people still being processed in this scenario.
      * 
@@ -51,8 +131,106 @@ abstract class Scenario {
      */
     public abstract void addPerson(Person p);
 
+    /**
+     * Adds a person to the scenario from their values. Scenarios that do not
+     * keep {@link Person} objects override this to avoid creating one.
+     * 
+     * @param id the person's ID
+     * @param testResult the person's test result
+     * @param timeLeft the time the person has left, or {@code Integer.MAX_VALUE} if not infected
+     */
+    public void addArrival(long id, double testResult, int timeLeft) {
+        addPerson(new Person(testResult, timeLeft, id));
+    }
+
     /**
      * Moves time forward by one minute, updating the state of the scenario.
      */
     public abstract void tick();
+
+    /**
+     * Returns how many of the upcoming minutes are quiet, i.e. how many times
+     * {@link #tick()} could be called before anyone is tested, treated or dies
+     * (assuming no one new arrives). Scenarios that cannot tell return 0.
+     * 
+     * @return the number of quiet minutes ahead
+     */
+    public long getQuietMinutes() {
+        return 0;
+    }
+
+    /**
+     * Moves time forward over quiet minutes in one go. The result is the same
+     * as calling {@link #tick()} that many times.
+     * 
+     * @param minutes the number of minutes to skip, at most {@link #getQuietMinutes()}
+     */
+    public void skip(long minutes) {
+        for (long i = 0; i < minutes; i++) {
+            tick();
+        }
+    }
+
+    /**
+     * Writes the state of this scenario (not its settings) to a checkpoint.
+     * Subclasses that can be checkpointed add their own state after this.
+     *
+     * @param out where to write
+     * @throws java.io.IOException if the checkpoint cannot be written
+     */
+    protected void writeState(Checkpoint.Writer out) throws java.io.IOException {
+        out.putInt(numSafe);
+        out.putInt(numDeaths);
+    }
+
+    /**
+     * Reads the state written by {@link #writeState} into a new scenario
+     * with the same settings.
+     *
+     * @param in where to read from
+     */
+    protected void readState(Checkpoint.Reader in) {
+        numSafe = in.getInt();
+        numDeaths = in.getInt();
+    }
+
+    /**
+     * Creates a branch of this scenario: a new scenario with the same
+     * settings and everyone where they are now, which then carries on on
+     * its own. The branch reports no events until it is given a sink.
+     * Scenarios that cannot be forked throw.
+     *
+     * @return the branch
+     * @throws UnsupportedOperationException if this type of scenario cannot be forked
+     */
+    public Scenario fork() {
+        throw new UnsupportedOperationException(getClass().getName() + " cannot be forked");
+    }
+
+    /**
+     * Throws unless this scenario is exactly of the given type, so that a
+     * subclass that does not fork itself is not forked as its parent.
+     *
+     * @param type the type whose {@code fork} is being called
+     * @throws UnsupportedOperationException if this scenario is a subclass of {@code type}
+     */
+    protected final void requireForkable(Class<? extends Scenario> type) {
+        if (getClass() != type) {
+            throw new UnsupportedOperationException(getClass().getName() + " cannot be forked");
+        }
+    }
+
+    /**
+     * Copies the state of another scenario of the same type (not its
+     * settings) into this new one. Subclasses that can be forked copy their
+     * own state after this.
+     *
+     * @param from the scenario to copy
+     * @param copies the copy made so far of each {@link Person}, so someone
+     *               in more than one line is copied once
+     */
+    protected void copyState(Scenario from, java.util.Map<Person, Person> copies) {
+        numSafe = from.numSafe;
+        numDeaths = from.numDeaths;
+    }
 }
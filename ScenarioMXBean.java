@@ -0,0 +1,56 @@
+/**
+ * The management view of one {@link Scenario} of a running simulation,
+ * published by {@link SimMonitor}. Values are read while the simulation
+ * runs on its own thread, so they can be a moment out of date.
+ */
+public interface ScenarioMXBean {
+    /**
+     * Returns the kind of scenario.
+     *
+     * @return the scenario's class name
+     */
+    String getType();
+
+    /**
+     * Returns the number of people pending, as {@link Scenario#getPending()}
+     * counts them.
+     *
+     * @return the number of pending people
+     */
+    int getPending();
+
+    /**
+     * Returns the number of people waiting to be tested.
+     *
+     * @return the length of the testing line, 0 if the scenario does not test
+     */
+    int getTestingLine();
+
+    /**
+     * Returns the number of people made safe.
+     *
+     * @return the number of safe people
+     */
+    int getSafe();
+
+    /**
+     * Returns the number of deaths.
+     *
+     * @return the number of deaths
+     */
+    int getDeaths();
+
+    /**
+     * Returns the number of minutes someone was being treated.
+     *
+     * @return the minutes spent treating
+     */
+    long getTreatingMinutes();
+
+    /**
+     * Returns the number of minutes someone was being tested.
+     *
+     * @return the minutes spent testing
+     */
+    long getTestingMinutes();
+}
@@ -0,0 +1,294 @@
+/**
+ *  Runs the simulation from the command line without the GUI, as fast as
+ *  possible, and prints summaries of both scenarios as it goes.
+ */
+public final class SimBatch {
+
+	/**
+	 *  The number of periodic summaries printed over a run.
+	 */
+	private static final int NUM_REPORTS = 10;
+
+	/**
+	 *  The simulation being run.
+	 */
+	private final Simulation sim;
+
+	/**
+	 *  The wall-clock time the run started, in nanoseconds.
+	 */
+	private long startTime;
+
+	/**
+	 *  The minute the run started at.
+	 */
+	private long startMinute;
+
+	/**
+	 *  Where the simulation is checkpointed after each summary, or null.
+	 */
+	private java.nio.file.Path checkpoint;
+
+	/**
+	 *  The minute of the last summary.
+	 */
+	private long lastMinute;
+
+	/**
+	 *  Each scenario's deaths at the last summary.
+	 */
+	private final long[] lastDeaths = new long[2];
+
+	/**
+	 *  Each scenario's minutes spent treating at the last summary.
+	 */
+	private final long[] lastTreating = new long[2];
+
+	/**
+	 * Creates a batch runner for the given simulation. Summaries give deaths
+	 * per 1,000 minutes and the share of time spent treating since the last
+	 * summary, or over the last 1,000 minutes for scenarios with a
+	 * {@link Timeline} attached.
+	 *
+	 * @param sim the simulation to run
+	 */
+	public SimBatch(Simulation sim) {
+		this.sim = sim;
+		this.sim.setEventSink(SimEventSink.NONE);
+	}
+
+	/**
+	 *  Attaches a {@link Timeline} to each scenario that does not have one.
+	 *  Recording costs time every minute, so timelines are off by default.
+	 */
+	public void attachTimelines() {
+		for(Scenario s : sim.getScenarios()) {
+			if(s.getTimeline() == null) {
+				s.setTimeline(new Timeline());
+			}
+		}
+	}
+
+	/**
+	 *  Sets a file to checkpoint the simulation to after each summary, so an
+	 *  interrupted run can be resumed with {@link Simulation#restore}.
+	 *
+	 *  @param file the checkpoint file, or null for none
+	 */
+	public void setCheckpoint(java.nio.file.Path file) {
+		this.checkpoint = file;
+	}
+
+	/**
+	 *  Runs the simulation for the given number of minutes, printing a
+	 *  summary periodically and once at the end. The simulation is
+	 *  published with {@link SimMonitor} while it runs.
+	 *
+	 *  @param steps the number of minutes to simulate
+	 *  @throws java.io.UncheckedIOException if a checkpoint cannot be written
+	 */
+	public void run(long steps) {
+		long reportEvery = Math.max(steps / NUM_REPORTS, 1);
+
+		System.out.println("minute\tscenario\tpending\tsafe\tdeaths\tdeaths/1k\ttreating%\tminutes/sec");
+		startTime = System.nanoTime();
+		startMinute = sim.getMinute();
+		lastMinute = startMinute;
+		TreatAll[] scenarios = {sim.getScenario1(), sim.getScenario2()};
+		for(int i = 0; i < scenarios.length; i++) {
+			lastDeaths[i] = scenarios[i].getDeaths();
+			lastTreating[i] = scenarios[i].getTreatingMinutes();
+		}
+
+		long target = sim.getMinute();
+		long end = target + steps;
+		SimMonitor monitor = SimMonitor.publish(sim, SimMonitor.uniqueName("batch"));
+		try {
+			while(target < end) {
+				target = Math.min(target + reportEvery, end);
+				sim.runUntil(target);
+				printSummary();
+				if(checkpoint != null) {
+					try {
+						sim.checkpoint(checkpoint);
+					}
+					catch(java.io.IOException e) {
+						throw new java.io.UncheckedIOException(e);
+					}
+				}
+			}
+		}
+		finally {
+			monitor.close();
+		}
+		printTimes();
+	}
+
+	/**
+	 *  Prints the distribution of the times recorded by each scenario, in
+	 *  minutes, once the run is over.
+	 */
+	private void printTimes() {
+		TreatAll s1 = sim.getScenario1();
+		TestAndTreat s2 = sim.getScenario2();
+		System.out.println();
+		System.out.println("scenario	times (minutes)	count	mean	p50	p99	p999	max");
+		StringBuilder sb = new StringBuilder();
+		appendTimes(sb, 1, "treatment line", s1.getTreatmentWaits());
+		appendTimes(sb, 1, "time to death", s1.getDeathTimes());
+		appendTimes(sb, 1, "between treatments", s1.getTreatmentGaps());
+		appendTimes(sb, 2, "testing line", s2.getTestingWaits());
+		appendTimes(sb, 2, "treatment line", s2.getTreatmentWaits());
+		appendTimes(sb, 2, "time to death", s2.getDeathTimes());
+		appendTimes(sb, 2, "between treatments", s2.getTreatmentGaps());
+		System.out.print(sb);
+	}
+
+	/**
+	 *  Appends one line of times for a scenario.
+	 *
+	 *  @param sb the builder to append to
+	 *  @param num the scenario number
+	 *  @param name what the times are
+	 *  @param times the recorded times
+	 */
+	private void appendTimes(StringBuilder sb, int num, String name, LogHistogram times) {
+		sb.append(num).append('\t');
+		sb.append(name).append('\t');
+		sb.append(times.getCount()).append('\t');
+		sb.append(String.format(java.util.Locale.ROOT, "%.1f", times.getMean())).append('\t');
+		sb.append(times.getP50()).append('\t');
+		sb.append(times.getP99()).append('\t');
+		sb.append(times.getP999()).append('\t');
+		sb.append(times.getMax()).append('\n');
+	}
+
+	/**
+	 *  Prints one line per scenario with the current counters and the
+	 *  simulation speed so far.
+	 */
+	private void printSummary() {
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		long rate = (seconds > 0) ? (long)((sim.getMinute() - startMinute) / seconds) : 0;
+
+		StringBuilder sb = new StringBuilder();
+		appendScenario(sb, 1, sim.getScenario1(), rate);
+		appendScenario(sb, 2, sim.getScenario2(), rate);
+		System.out.print(sb);
+		lastMinute = sim.getMinute();
+	}
+
+	/**
+	 *  Appends one summary line for a scenario, with its deaths per 1,000
+	 *  minutes and how busy treatment was, over the last 1,000 minutes if it
+	 *  has a timeline and since the last summary if not.
+	 *
+	 *  @param sb the builder to append to
+	 *  @param num the scenario number
+	 *  @param scenario the scenario
+	 *  @param rate the simulated minutes per second so far
+	 */
+	private void appendScenario(StringBuilder sb, int num, TreatAll scenario, long rate) {
+		sb.append(sim.getMinute()).append('\t');
+		sb.append(num).append('\t');
+		sb.append(scenario.getPending()).append('\t');
+		sb.append(scenario.getSafe()).append('\t');
+		sb.append(scenario.getDeaths()).append('\t');
+
+		double deathRate;
+		double treating;
+		Timeline timeline = scenario.getTimeline();
+		if(timeline != null) {
+			deathRate = timeline.getWindowRate(Timeline.DEATHS, 1000);
+			treating = timeline.getWindowMean(Timeline.TREATING);
+		}
+		else {
+			long minutes = Math.max(sim.getMinute() - lastMinute, 1);
+			deathRate = 1000.0 * (scenario.getDeaths() - lastDeaths[num - 1]) / minutes;
+			treating = (double)(scenario.getTreatingMinutes() - lastTreating[num - 1]) / minutes;
+		}
+		lastDeaths[num - 1] = scenario.getDeaths();
+		lastTreating[num - 1] = scenario.getTreatingMinutes();
+		sb.append(String.format(java.util.Locale.ROOT, "%.1f", deathRate)).append('\t');
+		sb.append(String.format(java.util.Locale.ROOT, "%.1f", 100 * treating)).append('\t');
+		sb.append(rate).append('\n');
+	}
+
+	/**
+	 * Main method that runs the simulator headless.
+	 * @param args command line args for the simulation parameters, the number of
+	 *             steps and a checkpoint file, and the options {@code --legacy}
+	 *             to draw arrivals as the GUI does and {@code --timelines} to
+	 *             report over the last 1,000 minutes
+	 */
+	public static void main(String[] args) {
+		String usageMsg = "Usage: java SimBatch [--legacy] [--timelines] [arrivalProb] [infectedProb] [survivalTime] [survivalStd] [testingTime] [treatmentTime] [seed] [steps] [checkpointFile]";
+
+		//defaults
+		double arrivalProb = 0.4;
+		double infectedProb = 0.4;
+		int survivalTime = 10;
+		int survivalStd = 5;
+		int testingTime = 2;
+		int treatmentTime = 5;
+		int seed = 0;
+		long steps = 1000000;
+		boolean legacy = false;
+		boolean timelines = false;
+
+		//options can go anywhere; the rest are taken in order
+		java.util.List<String> rest = new java.util.ArrayList<>();
+		for(String arg : args) {
+			if(arg.equals("--legacy")) legacy = true;
+			else if(arg.equals("--timelines")) timelines = true;
+			else rest.add(arg);
+		}
+		args = rest.toArray(new String[0]);
+
+		try {
+			if(args.length >= 1) arrivalProb = Double.parseDouble(args[0]);
+			if(args.length >= 2) infectedProb = Double.parseDouble(args[1]);
+			if(args.length >= 3) survivalTime = Integer.parseInt(args[2]);
+			if(args.length >= 4) survivalStd = Integer.parseInt(args[3]);
+			if(args.length >= 5) testingTime = Integer.parseInt(args[4]);
+			if(args.length >= 6) treatmentTime = Integer.parseInt(args[5]);
+			if(args.length >= 7) seed = Integer.parseInt(args[6]);
+			if(args.length >= 8) steps = Long.parseLong(args[7]);
+			java.nio.file.Path checkpoint = (args.length >= 9) ? java.nio.file.Paths.get(args[8]) : null;
+
+			if(args.length >= 10) {
+				System.out.println(usageMsg);
+				return;
+			}
+
+			//compact scenarios expire by deadline, so runUntil() can skip quiet
+			//minutes, and keep long lines in primitive arrays; results are the same.
+			//Split streams draw the gaps between arrivals rather than a number a
+			//minute, so they are faster but give a different run for a seed
+			SimParams params = new SimParams(arrivalProb, infectedProb, survivalTime, survivalStd, testingTime, treatmentTime, SimParams.DEFAULT_TRIAGE_THRESHOLD);
+
+			//resume from the checkpoint if there is one, and finish the same run
+			Simulation sim;
+			if(checkpoint != null && java.nio.file.Files.exists(checkpoint)) {
+				sim = Simulation.restore(checkpoint);
+				System.out.println("Resuming from minute " + sim.getMinute());
+			}
+			else {
+				ArrivalGenerator arrivals = legacy
+						? new ArrivalGenerator(seed, params)
+						: new ArrivalGenerator(ArrivalGenerator.newStream(seed), params);
+				sim = new Simulation(arrivals, params, true, true);
+			}
+			SimBatch batch = new SimBatch(sim);
+			if(timelines) {
+				batch.attachTimelines();
+			}
+			batch.setCheckpoint(checkpoint);
+			batch.run(Math.max(steps - sim.getMinute(), 0));
+		}
+		catch(java.io.IOException | RuntimeException e) {
+			e.printStackTrace();
+			System.err.println(usageMsg);
+		}
+	}
+}
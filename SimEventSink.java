@@ -0,0 +1,132 @@
+/**
+ * Receives events from a running {@link Simulation} and its scenarios.
+ *
+ * <p>Events are plain method calls with the people involved passed as-is,
+ * so nothing is built per event unless the sink itself builds it. A sink
+ * also says which events it wants through {@link #getEvents()}; callers
+ * skip the call (and any work to prepare it) for events that are not in
+ * that mask.
+ *
+ * <p>Every event is stamped with the minute it happened in, counting from
+ * 1 for the first call to {@link Simulation#step()}. Scenario events carry
+ * the number of the scenario they came from.
+ */
+interface SimEventSink {
+    /**
+     * Event mask bit for {@link #step}.
+     */
+    int STEP = 1;
+
+    /**
+     * Event mask bit for {@link #arrival}.
+     */
+    int ARRIVAL = 1 << 1;
+
+    /**
+     * Event mask bit for {@link #testResult}.
+     */
+    int TEST_RESULT = 1 << 2;
+
+    /**
+     * Event mask bit for {@link #treatmentStart}.
+     */
+    int TREATMENT_START = 1 << 3;
+
+    /**
+     * Event mask bit for {@link #treatmentFinish}.
+     */
+    int TREATMENT_FINISH = 1 << 4;
+
+    /**
+     * Event mask bit for {@link #death}.
+     */
+    int DEATH = 1 << 5;
+
+    /**
+     * Event mask with every event.
+     */
+    int ALL = STEP | ARRIVAL | TEST_RESULT | TREATMENT_START | TREATMENT_FINISH | DEATH;
+
+    /**
+     * A sink that wants no events.
+     */
+    SimEventSink NONE = new SimEventSink() {
+        @Override
+        public int getEvents() {
+            return 0;
+        }
+    };
+
+    /**
+     * Returns the events this sink wants, as a mask of the event bits.
+     *
+     * @return the event mask
+     */
+    int getEvents();
+
+    /**
+     * Called at the start of every simulated minute.
+     *
+     * @param minute the minute starting
+     */
+    default void step(long minute) {
+    }
+
+    /**
+     * Called when a person arrives from Mars, before they are handed to
+     * the scenarios.
+     *
+     * @param minute the current minute
+     * @param p the person who arrived
+     */
+    default void arrival(long minute, Person p) {
+    }
+
+    /**
+     * Called when a person's test is complete.
+     *
+     * @param scenario the scenario number
+     * @param minute the current minute
+     * @param p the person tested
+     * @param needsTreatment whether they were sent on to treatment
+     */
+    default void testResult(int scenario, long minute, Person p, boolean needsTreatment) {
+    }
+
+    /**
+     * Called when the doctor starts a treatment for the person at the front
+     * of the treatment line.
+     *
+     * @param scenario the scenario number
+     * @param minute the current minute
+     * @param p the person at the front of the line
+     */
+    default void treatmentStart(int scenario, long minute, Person p) {
+    }
+
+    /**
+     * Called when a person's treatment is complete.
+     *
+     * @param scenario the scenario number
+     * @param minute the current minute
+     * @param p the person treated
+     */
+    default void treatmentFinish(int scenario, long minute, Person p) {
+    }
+
+    /**
+     * Called when a person dies while waiting.
+     *
+     * @param scenario the scenario number
+     * @param minute the current minute
+     * @param p the person who died
+     */
+    default void death(int scenario, long minute, Person p) {
+    }
+
+    /**
+     * Writes out anything still buffered and releases the sink's resources.
+     */
+    default void close() {
+    }
+}
@@ -19,6 +19,9 @@ import java.awt.Component;
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
 
+import javax.swing.event.ChangeListener;
+import javax.swing.event.ChangeEvent;
+
 import java.awt.image.BufferedImage;
 
 import javax.swing.JFrame;
@@ -29,6 +32,7 @@ import javax.swing.JLabel;
 import javax.swing.JRadioButton;
 import javax.swing.ButtonGroup;
 import javax.swing.JTextField;
+import javax.swing.JSlider;
 import javax.swing.JOptionPane;
 import javax.swing.JScrollPane;
 import javax.swing.ScrollPaneConstants;
@@ -43,9 +47,9 @@ import javax.swing.ScrollPaneConstants;
 public final class SimGUI {
 	
 	/**
-	 *  The simulation controlled by this GUI.
+	 *  Runs the simulation controlled by this GUI on its own thread.
 	 */
-	private final Simulation sim;
+	private final SimRunner runner;
 	
 	/**
 	 *  The frame that holds everything.
@@ -68,6 +72,18 @@ public final class SimGUI {
 	 */
 	private boolean playing = false;
 	
+	/**
+	 *  Whether or not a simulation is currently running to a
+	 *  minute or number of pending people with the run button.
+	 */
+	private boolean running = false;
+	
+	/**
+	 *  The speeds the play button can play at, in steps per second,
+	 *  from slowest to as fast as possible.
+	 */
+	private static final double[] SPEEDS = {1, 2, 5, 10, 30, 100, 1000, 10000, 100000, Double.POSITIVE_INFINITY};
+	
 	/**
 	 *  The height of one row.
 	 */
@@ -90,7 +106,13 @@ public final class SimGUI {
 	 * @param title the title of the window
 	 */
 	public SimGUI(Simulation sim) {
-		this.sim = sim;
+		//timelines give the recent death rate and treatment load shown under the picture
+		for(Scenario s : sim.getScenarios()) {
+			if(s.getTimeline() == null) {
+				s.setTimeline(new Timeline());
+			}
+		}
+		this.runner = new SimRunner(sim, SIM_WIDTH, this::show);
 		
 		frame = new JFrame("MARS Simulation");
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -131,13 +153,11 @@ public final class SimGUI {
 		
 		image = new BufferedImage(SIM_WIDTH, SIM_HEIGHT, BufferedImage.TYPE_INT_RGB);
 		middlePanel.add(new ImagePanel(image));
-		drawScenarioImage();
 		
 		scenarioOutput = new JLabel();
 		scenarioOutput.setVerticalAlignment(JLabel.TOP);
 		scenarioOutput.setAlignmentY(Component.TOP_ALIGNMENT);
 		scenarioOutput.setPreferredSize(new Dimension(300, image.getHeight()));
-		setOutputText();
 		
 		//JScrollPane sp = new JScrollPane(scenarioOutput);
 		//sp.setAlignmentY(Component.TOP_ALIGNMENT);
@@ -162,6 +182,10 @@ public final class SimGUI {
 		});
 		actionsPanel.add(stepButton);
 		
+		JSlider speedSlider = new JSlider(0, SPEEDS.length - 1, 0);
+		JLabel speedLabel = new JLabel(speedText(SPEEDS[0]));
+		JButton runButton = new JButton("Run");
+		
 		JButton playButton = new JButton("Play");
 		playButton.setActionCommand("Play");
 		playButton.addActionListener(new ActionListener() {
@@ -170,31 +194,95 @@ public final class SimGUI {
 				playing = !playing;
 				actionsPanel.getComponent(0).setEnabled(!playing);
 				((JButton)actionsPanel.getComponent(1)).setText((playing ? "Stop" : "Play"));
+				runButton.setEnabled(!playing);
 			}
 			
 			public void actionPerformed(ActionEvent event) {
 				toggle();
 				
-				//if playing, kick off a timer
+				//play at the chosen speed until someone hits the stop button
 				if(playing) {
-					new javax.swing.Timer(1000, new ActionListener() {
-						public void actionPerformed(ActionEvent event) {
-							//someone hit the stop button
-							if(!playing) {
-								((javax.swing.Timer)event.getSource()).stop();
-								return;
-							}
-							else {
-								step();
-							}
-						}
-					}).start();
+					runner.play(SPEEDS[speedSlider.getValue()]);
+				}
+				else {
+					runner.pause();
 				}
 			}
 		});
 		actionsPanel.add(playButton);
 		
+		speedSlider.setSnapToTicks(true);
+		speedSlider.setMajorTickSpacing(1);
+		speedSlider.setPaintTicks(true);
+		speedSlider.addChangeListener(new ChangeListener() {
+			public void stateChanged(ChangeEvent event) {
+				double speed = SPEEDS[speedSlider.getValue()];
+				speedLabel.setText(speedText(speed));
+				
+				//change speed without stopping
+				if(playing) {
+					runner.play(speed);
+				}
+			}
+		});
+		actionsPanel.add(speedSlider);
+		actionsPanel.add(speedLabel);
+		
 		contentPane.add(actionsPanel);
+		
+		JPanel runPanel = new JPanel();
+		runPanel.setLayout(new BoxLayout(runPanel, BoxLayout.X_AXIS));
+		
+		JRadioButton toMinute = new JRadioButton("Run to minute", true);
+		JRadioButton toPending = new JRadioButton("Run until pending >");
+		ButtonGroup runChoice = new ButtonGroup();
+		runChoice.add(toMinute);
+		runChoice.add(toPending);
+		JTextField runValue = new JTextField(10);
+		
+		runButton.setActionCommand("Run");
+		runButton.addActionListener(new ActionListener() {
+			private void setRunning(boolean on) {
+				//nothing else can be done while running, apart from cancelling
+				running = on;
+				stepButton.setEnabled(!on);
+				playButton.setEnabled(!on);
+				runButton.setText((on ? "Cancel" : "Run"));
+			}
+			
+			public void actionPerformed(ActionEvent event) {
+				//someone hit the cancel button
+				if(running) {
+					runner.pause();
+					return;
+				}
+				
+				long value;
+				try {
+					value = Long.parseLong(runValue.getText().trim());
+				}
+				catch(NumberFormatException e) {
+					JOptionPane.showMessageDialog(frame, "Enter a whole number to run to.", "Run", JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				
+				//run without drawing until there, then show where it stopped
+				setRunning(true);
+				if(toMinute.isSelected()) {
+					runner.runUntil(s -> s.getMinute() >= value, () -> setRunning(false));
+				}
+				else {
+					runner.runUntil(s -> s.getScenario1().getPending() > value || s.getScenario2().getPending() > value, () -> setRunning(false));
+				}
+			}
+		});
+		
+		runPanel.add(toMinute);
+		runPanel.add(toPending);
+		runPanel.add(runValue);
+		runPanel.add(runButton);
+		
+		contentPane.add(runPanel);
 
 
 		//pack everything up
@@ -202,6 +290,9 @@ public final class SimGUI {
 		frame.setContentPane(contentPane);
 		frame.pack();
 		frame.setVisible(true);
+		
+		//show the simulation as it is and wait for the buttons
+		runner.start();
 	}
 	
 	/**
@@ -212,26 +303,45 @@ public final class SimGUI {
 	}
 	
 	/**
-	 *  Calls the step button on the simulation and updates
-	 *  the GUI to display the result.
-	 *  
-	 *  @return whether or not the simulation was able to step
+	 *  Calls the step button on the simulation. The simulation steps
+	 *  on its own thread and the GUI displays the result when it is done.
 	 */
 	public void step() {
-		//step the simulation itself
-		this.sim.step();
-		
+		runner.step();
+	}
+	
+	/**
+	 *  Describes a speed for the speed slider.
+	 *  
+	 *  @param stepsPerSecond the speed in steps per second
+	 *  @return the description
+	 */
+	private static String speedText(double stepsPerSecond) {
+		if(stepsPerSecond == Double.POSITIVE_INFINITY) {
+			return "Max speed";
+		}
+		return String.format("%,d steps/sec", (long) stepsPerSecond);
+	}
+	
+	/**
+	 *  Displays a snapshot of the simulation, on the event dispatch thread.
+	 *  
+	 *  @param snapshot the snapshot to display
+	 */
+	private void show(SimSnapshot snapshot) {
 		//update output
-		setOutputText();
+		setOutputText(snapshot);
 		
 		//draw it out!
-		drawScenarioImage();
+		drawScenarioImage(snapshot);
 	}
 	
 	/**
 	 *  Draws a visualization of both scenarios on the image.
+	 *  
+	 *  @param snapshot the snapshot of the simulation to draw
 	 */
-	public void drawScenarioImage() {
+	public void drawScenarioImage(SimSnapshot snapshot) {
 		//setup graphics for drawing
 		Graphics2D g = image.createGraphics();
 		
@@ -265,23 +375,24 @@ public final class SimGUI {
 		g.drawRect(0, rowLine2b, SIM_WIDTH, ROW_HEIGHT);
 		
 		//label them
-		g.drawString(sim.getScenario1().toString(), 4, rowLine1 - 16);
-		g.drawString(sim.getScenario2().toString(), 4, rowLine2a - 16);
+		g.drawString(snapshot.getLabel(1), 4, rowLine1 - 16);
+		g.drawString(snapshot.getLabel(2), 4, rowLine2a - 16);
 		
-		//get the lines from the simulation
-		Line<Person> scenario1treatment = this.sim.getScenario1().getTreatmentLine();
-		Line<Person> scenario2testing = this.sim.getScenario2().getTestingLine();
-		Line<Person> scenario2treatment = this.sim.getScenario2().getTreatmentLine();
+		//get the lines from the snapshot (only the front of long lines is copied)
+		SimSnapshot.People scenario1treatment = snapshot.getTreatmentLine1();
+		SimSnapshot.People scenario2testing = snapshot.getTestingLine2();
+		SimSnapshot.People scenario2treatment = snapshot.getTreatmentLine2();
 		
 		//determine the longest line (drawing squeezes for long lines)
 		int maxLineLength = 0;
-		if(scenario1treatment != null && scenario1treatment.getSize() > maxLineLength) maxLineLength = scenario1treatment.getSize();
-		if(scenario2testing != null && scenario2testing.getSize() > maxLineLength) maxLineLength = scenario2testing.getSize();
-		if(scenario2treatment != null && scenario2treatment.getSize() > maxLineLength) maxLineLength = scenario2treatment.getSize();
+		if(scenario1treatment.getSize() > maxLineLength) maxLineLength = scenario1treatment.getSize();
+		if(scenario2testing.getSize() > maxLineLength) maxLineLength = scenario2testing.getSize();
+		if(scenario2treatment.getSize() > maxLineLength) maxLineLength = scenario2treatment.getSize();
 		
 		//stop if there is no one in any line
 		if(maxLineLength == 0) {
 			g.setStroke(oldStroke);
+			repaint();
 			return;
 		}
 		
@@ -289,35 +400,37 @@ public final class SimGUI {
 		int colWidth = SIM_WIDTH / maxLineLength;
 		if(colWidth > ROW_HEIGHT) colWidth = ROW_HEIGHT; //max = a square
 		
-		for(int currCol = 0; currCol < maxLineLength; currCol++) {
+		//only the people copied into the snapshot can be drawn
+		int maxShown = Math.max(scenario1treatment.getShown(), Math.max(scenario2testing.getShown(), scenario2treatment.getShown()));
+		
+		for(int currCol = 0; currCol < maxShown; currCol++) {
 			//draw scenario 1 line
-			if(scenario1treatment.getSize() > currCol) {
+			if(scenario1treatment.getShown() > currCol) {
 				g.setColor(Color.WHITE);
 				g.fillRect(currCol * colWidth, rowLine1, colWidth, ROW_HEIGHT);
 				g.setColor(Color.BLACK);
 				g.drawRect(currCol * colWidth, rowLine1, colWidth, ROW_HEIGHT);
-				g.drawString(""+scenario1treatment.get(currCol).getId(), currCol * colWidth + 4, rowLine1 + (ROW_HEIGHT/2) + 6);
+				g.drawString(""+scenario1treatment.getId(currCol), currCol * colWidth + 4, rowLine1 + (ROW_HEIGHT/2) + 6);
 			}
 			
 			//draw scenario 2 testing line
-			if(scenario2testing.getSize() > currCol) {
+			if(scenario2testing.getShown() > currCol) {
 				g.setColor(Color.WHITE);
 				g.fillRect(currCol * colWidth, rowLine2a, colWidth, ROW_HEIGHT);
 				g.setColor(Color.BLACK);
 				g.drawRect(currCol * colWidth, rowLine2a, colWidth, ROW_HEIGHT);
-				g.drawString(""+scenario2testing.get(currCol).getId(), currCol * colWidth + 4, rowLine2a + (ROW_HEIGHT/2) + 6);
+				g.drawString(""+scenario2testing.getId(currCol), currCol * colWidth + 4, rowLine2a + (ROW_HEIGHT/2) + 6);
 			}
 			
 			//draw scenario 2 treatment line
-			if(scenario2treatment.getSize() > currCol) {
-				Person p = scenario2treatment.get(currCol);
+			if(scenario2treatment.getShown() > currCol) {
 				g.setColor(Color.WHITE);
 				g.fillRect(currCol * colWidth, rowLine2b, colWidth, ROW_HEIGHT);
-				g.setColor(new Color(1f, 0f, 0f, (float) ((p.getTestResult()-.4)/.6)));
+				g.setColor(new Color(1f, 0f, 0f, (float) ((scenario2treatment.getTestResult(currCol)-.4)/.6)));
 				g.fillRect(currCol * colWidth, rowLine2b, colWidth, ROW_HEIGHT);
 				g.setColor(Color.BLACK);
 				g.drawRect(currCol * colWidth, rowLine2b, colWidth, ROW_HEIGHT);
-				g.drawString(""+p.getId(), currCol * colWidth + 4, rowLine2b + (ROW_HEIGHT/2) + 6);
+				g.drawString(""+scenario2treatment.getId(currCol), currCol * colWidth + 4, rowLine2b + (ROW_HEIGHT/2) + 6);
 			}
 		}
 		
@@ -328,34 +441,39 @@ public final class SimGUI {
 	/**
 	 * Sets the variables to display all the program variables
 	 * and their current settings.
+	 * 
+	 * @param snapshot the snapshot of the simulation to display
 	 */
-	public void setOutputText() {
+	public void setOutputText(SimSnapshot snapshot) {
 		StringBuilder sb = new StringBuilder();
 		
 		sb.append("<html>");
 		sb.append("<br />");
 		sb.append("<center>Simulation Outcome");
 		sb.append("<br />");
+		sb.append("Minute ");
+		sb.append(snapshot.getMinute());
+		sb.append("<br />");
 		sb.append("--------------------------------------------------------------------------");
 		sb.append("</center>");
 		sb.append("<table border=\"0\">");
-		sb.append("<tr><td>Scenario</td><td>Pending</td><td>Safe</td><td>Deaths</td></tr>");
+		sb.append("<tr><td>Scenario</td><td>Pending</td><td>Safe</td><td>Deaths</td><td>Deaths/1000 min</td><td>Treating</td></tr>");
 		
-		Scenario senario1 = sim.getScenario1();
 		sb.append("<tr><td>1:</td><td>");
-		sb.append(senario1.getPending());
+		sb.append(snapshot.getPending(1));
 		sb.append("</td><td>");
-		sb.append(senario1.getSafe());
+		sb.append(snapshot.getSafe(1));
 		sb.append("</td><td>");
-		sb.append(senario1.getDeaths());
+		sb.append(snapshot.getDeaths(1));
+		appendRates(sb, snapshot, 1);
 		
-		Scenario senario2 = sim.getScenario2();
 		sb.append("</td></tr><td>2:</td><td>");
-		sb.append(senario2.getPending());
+		sb.append(snapshot.getPending(2));
 		sb.append("</td><td>");
-		sb.append(senario2.getSafe());
+		sb.append(snapshot.getSafe(2));
 		sb.append("</td><td>");
-		sb.append(senario2.getDeaths());
+		sb.append(snapshot.getDeaths(2));
+		appendRates(sb, snapshot, 2);
 		
 		sb.append("</td></tr>");
 		sb.append("</table>");
@@ -364,6 +482,23 @@ public final class SimGUI {
 		scenarioOutput.setText(sb.toString());
 	}
 	
+	/**
+	 *  Appends a scenario's deaths per 1,000 minutes and share of time spent
+	 *  treating over the last 1,000 minutes as two more table cells.
+	 *  
+	 *  @param sb the builder to append to
+	 *  @param snapshot the snapshot of the simulation
+	 *  @param scenario the scenario, 1 or 2
+	 */
+	private void appendRates(StringBuilder sb, SimSnapshot snapshot, int scenario) {
+		double deathRate = snapshot.getDeathRate(scenario);
+		double treating = snapshot.getTreating(scenario);
+		sb.append("</td><td>");
+		sb.append(Double.isNaN(deathRate) ? "-" : String.format("%.1f", deathRate));
+		sb.append("</td><td>");
+		sb.append(Double.isNaN(treating) ? "-" : String.format("%.0f%%", 100 * treating));
+	}
+	
 	/**
 	 * Main method that kicks off the simulator.
 	 * @param args command line args for number of rows, columns, and an optional program file
@@ -0,0 +1,354 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Publishes running simulations on the platform MBean server, so a long
+ * batch run or sweep can be watched from JConsole or JDK Mission Control.
+ * Everything is published under the {@value #DOMAIN} domain:
+ * <ul>
+ * <li>{@code mars:type=Simulation,name=...}, a {@link SimulationMXBean};</li>
+ * <li>{@code mars:type=Scenario,name=...,scenario=n}, a
+ *     {@link ScenarioMXBean} for each scenario, numbered from 1;</li>
+ * <li>{@code mars:type=Replications,name=...}, a {@link ReplicationsMXBean}
+ *     for a batch of replications.</li>
+ * </ul>
+ * The beans only read the simulation when a client asks, so a published
+ * simulation runs as fast as any other. Closing the monitor takes its beans
+ * down again.
+ */
+final class SimMonitor implements AutoCloseable {
+    /**
+     * The JMX domain everything is published under.
+     */
+    static final String DOMAIN = "mars";
+
+    /**
+     * The number of names handed out by {@link #uniqueName}.
+     */
+    private static final AtomicInteger NAMES = new AtomicInteger();
+
+    /**
+     * The names of the beans this monitor published.
+     */
+    private final List<ObjectName> published = new ArrayList<>();
+
+    /**
+     * The number of replications finished, for a monitor of replications.
+     */
+    private final AtomicInteger done = new AtomicInteger();
+
+    /**
+     * Creates a monitor with nothing published yet.
+     */
+    private SimMonitor() {
+    }
+
+    /**
+     * Publishes a simulation and each of its scenarios.
+     *
+     * @param sim the simulation
+     * @param name the name to publish it under, which may be any text
+     * @return the monitor, to close when the simulation is finished
+     * @throws IllegalArgumentException if something is already published under the name
+     * @throws IllegalStateException if the MBean server refuses the beans
+     */
+    static SimMonitor publish(Simulation sim, String name) {
+        SimMonitor monitor = new SimMonitor();
+        try {
+            monitor.register("type=Simulation,name=" + ObjectName.quote(name), new SimulationView(sim));
+            List<Scenario> scenarios = sim.getScenarios();
+            for (int i = 0; i < scenarios.size(); i++) {
+                monitor.register("type=Scenario,name=" + ObjectName.quote(name) + ",scenario=" + (i + 1),
+                                 new ScenarioView(scenarios.get(i)));
+            }
+        } catch (RuntimeException e) {
+            monitor.close();
+            throw e;
+        }
+        return monitor;
+    }
+
+    /**
+     * Publishes the progress of a batch of replications. Each replication
+     * finished is counted with {@link #replicationDone()}.
+     *
+     * @param name the name to publish it under, which may be any text
+     * @param replications the number of replications to run
+     * @param minutes the number of minutes each replication runs for
+     * @return the monitor, to close when the batch is finished
+     * @throws IllegalArgumentException if something is already published under the name
+     * @throws IllegalStateException if the MBean server refuses the bean
+     */
+    static SimMonitor publishReplications(String name, int replications, long minutes) {
+        SimMonitor monitor = new SimMonitor();
+        monitor.register("type=Replications,name=" + ObjectName.quote(name),
+                         new ReplicationsView(monitor.done, replications, minutes));
+        return monitor;
+    }
+
+    /**
+     * Returns a name no other call has returned, for publishing runs that
+     * have no name of their own.
+     *
+     * @param prefix what kind of run it is, e.g. "sweep"
+     * @return the prefix followed by a number
+     */
+    static String uniqueName(String prefix) {
+        return prefix + "-" + NAMES.incrementAndGet();
+    }
+
+    /**
+     * Counts a finished replication in a monitor of replications.
+     */
+    void replicationDone() {
+        done.incrementAndGet();
+    }
+
+    /**
+     * Takes down every bean this monitor published.
+     */
+    @Override
+    public void close() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : published) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // Already taken down by someone else
+            }
+        }
+        published.clear();
+    }
+
+    /**
+     * Registers one bean.
+     *
+     * @param properties the key properties of its name
+     * @param bean the bean
+     * @throws IllegalArgumentException if something is already registered under the name
+     * @throws IllegalStateException if the MBean server refuses the bean
+     */
+    private void register(String properties, Object bean) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, name);
+            published.add(name);
+        } catch (InstanceAlreadyExistsException e) {
+            throw new IllegalArgumentException("Already published: " + properties, e);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot publish " + properties, e);
+        }
+    }
+
+    /**
+     * The bean for a simulation.
+     */
+    private static final class SimulationView implements SimulationMXBean {
+        /**
+         * The simulation.
+         */
+        private final Simulation sim;
+
+        /**
+         * The minute when the speed was last read.
+         */
+        private long lastMinute;
+
+        /**
+         * The wall-clock time the speed was last read, in nanoseconds.
+         */
+        private long lastTime;
+
+        /**
+         * Creates the bean for a simulation.
+         *
+         * @param sim the simulation
+         */
+        SimulationView(Simulation sim) {
+            this.sim = sim;
+            this.lastMinute = sim.getMinute();
+            this.lastTime = System.nanoTime();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getMinute() {
+            return sim.getMinute();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized double getMinutesPerSecond() {
+            long minute = sim.getMinute();
+            long time = System.nanoTime();
+            double seconds = (time - lastTime) / 1e9;
+            double rate = (seconds > 0) ? (minute - lastMinute) / seconds : 0;
+            lastMinute = minute;
+            lastTime = time;
+            return rate;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getScenarioCount() {
+            return sim.getScenarios().size();
+        }
+    }
+
+    /**
+     * The bean for a scenario, which reads the same state the scenario
+     * records in a {@link Timeline}.
+     */
+    private static final class ScenarioView implements ScenarioMXBean {
+        /**
+         * The scenario.
+         */
+        private final Scenario scenario;
+
+        /**
+         * Creates the bean for a scenario.
+         *
+         * @param scenario the scenario
+         */
+        ScenarioView(Scenario scenario) {
+            this.scenario = scenario;
+        }
+
+        /**
+         * Reads one of the scenario's {@link Timeline} channels as it is now.
+         *
+         * @param channel the channel
+         * @return its value, a running total for the totals
+         */
+        private long read(int channel) {
+            long[] values = new long[Timeline.CHANNELS];
+            scenario.sampleMetrics(values);
+            return values[channel];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getType() {
+            return scenario.getClass().getSimpleName();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getPending() {
+            return (int) read(Timeline.PENDING);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getTestingLine() {
+            return (int) read(Timeline.TESTING_LINE);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getSafe() {
+            return scenario.getSafe();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getDeaths() {
+            return scenario.getDeaths();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getTreatingMinutes() {
+            return read(Timeline.TREATING);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getTestingMinutes() {
+            return read(Timeline.TESTING);
+        }
+    }
+
+    /**
+     * The bean for a batch of replications.
+     */
+    private static final class ReplicationsView implements ReplicationsMXBean {
+        /**
+         * The number of replications finished.
+         */
+        private final AtomicInteger done;
+
+        /**
+         * The number of replications to run.
+         */
+        private final int replications;
+
+        /**
+         * The number of minutes each replication runs for.
+         */
+        private final long minutes;
+
+        /**
+         * Creates the bean for a batch of replications.
+         *
+         * @param done the number of replications finished, counted by the monitor
+         * @param replications the number of replications to run
+         * @param minutes the number of minutes each replication runs for
+         */
+        ReplicationsView(AtomicInteger done, int replications, long minutes) {
+            this.done = done;
+            this.replications = replications;
+            this.minutes = minutes;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getReplications() {
+            return replications;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getReplicationsDone() {
+            return done.get();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getMinutesPerReplication() {
+            return minutes;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * The parameters of a simulation (everything except the seed). Instances
+ * are immutable; {@link #with(String, double)} makes a copy with one
+ * parameter changed, which is how parameter sweeps walk a grid.
+ */
+final class SimParams {
+    /**
+     * The names of the parameters, in the order they are listed everywhere.
+     */
+    static final String[] NAMES = {
+        "arrivalProb", "infectedProb", "survivalTime", "survivalStd",
+        "testingTime", "treatmentTime", "triageThreshold"
+    };
+
+    /**
+     * The test result at or above which Test-and-Treat sends someone to treatment.
+     */
+    static final double DEFAULT_TRIAGE_THRESHOLD = 0.4;
+
+    /**
+     * The arrival probability.
+     */
+    private final double arrivalProb;
+
+    /**
+     * The infected probability.
+     */
+    private final double infectedProb;
+
+    /**
+     * The average survival time.
+     */
+    private final int survivalTime;
+
+    /**
+     * The survival time standard deviation.
+     */
+    private final int survivalStd;
+
+    /**
+     * The time to administer a test.
+     */
+    private final int testingTime;
+
+    /**
+     * The time to administer a treatment regimen.
+     */
+    private final int treatmentTime;
+
+    /**
+     * The test result at or above which Test-and-Treat sends someone to treatment.
+     */
+    private final double triageThreshold;
+
+    /**
+     * Creates a set of parameters.
+     *
+     * @param arrivalProb the arrival probability
+     * @param infectedProb the infected probability
+     * @param survivalTime the average survival time
+     * @param survivalStd the survival time standard deviation
+     * @param testingTime the time to administer a test
+     * @param treatmentTime the time to administer a treatment regimen
+     * @param triageThreshold the test result at or above which someone needs treatment
+     */
+    public SimParams(double arrivalProb, double infectedProb, int survivalTime, int survivalStd,
+                     int testingTime, int treatmentTime, double triageThreshold) {
+        this.arrivalProb = arrivalProb;
+        this.infectedProb = infectedProb;
+        this.survivalTime = survivalTime;
+        this.survivalStd = survivalStd;
+        this.testingTime = testingTime;
+        this.treatmentTime = treatmentTime;
+        this.triageThreshold = triageThreshold;
+    }
+
+    /**
+     * Returns the default parameters, the same defaults as the GUI.
+     *
+     * @return the default parameters
+     */
+    public static SimParams defaults() {
+        return new SimParams(0.4, 0.4, 10, 5, 2, 5, DEFAULT_TRIAGE_THRESHOLD);
+    }
+
+    /**
+     * Returns the arrival probability.
+     *
+     * @return the arrival probability
+     */
+    public double getArrivalProb() {
+        return arrivalProb;
+    }
+
+    /**
+     * Returns the infected probability.
+     *
+     * @return the infected probability
+     */
+    public double getInfectedProb() {
+        return infectedProb;
+    }
+
+    /**
+     * Returns the average survival time.
+     *
+     * @return the average survival time
+     */
+    public int getSurvivalTime() {
+        return survivalTime;
+    }
+
+    /**
+     * Returns the survival time standard deviation.
+     *
+     * @return the survival time standard deviation
+     */
+    public int getSurvivalStd() {
+        return survivalStd;
+    }
+
+    /**
+     * Returns the time to administer a test.
+     *
+     * @return the testing time
+     */
+    public int getTestingTime() {
+        return testingTime;
+    }
+
+    /**
+     * Returns the time to administer a treatment regimen.
+     *
+     * @return the treatment time
+     */
+    public int getTreatmentTime() {
+        return treatmentTime;
+    }
+
+    /**
+     * Returns the test result at or above which Test-and-Treat sends someone
+     * to treatment.
+     *
+     * @return the triage threshold
+     */
+    public double getTriageThreshold() {
+        return triageThreshold;
+    }
+
+    /**
+     * Returns a parameter by name.
+     *
+     * @param name one of {@link #NAMES}
+     * @return the parameter's value
+     * @throws IllegalArgumentException if there is no such parameter
+     */
+    public double get(String name) {
+        switch (name) {
+            case "arrivalProb": return arrivalProb;
+            case "infectedProb": return infectedProb;
+            case "survivalTime": return survivalTime;
+            case "survivalStd": return survivalStd;
+            case "testingTime": return testingTime;
+            case "treatmentTime": return treatmentTime;
+            case "triageThreshold": return triageThreshold;
+            default: throw new IllegalArgumentException("Unknown parameter: " + name);
+        }
+    }
+
+    /**
+     * Returns a copy of these parameters with one of them changed. Integer
+     * parameters are rounded.
+     *
+     * @param name one of {@link #NAMES}
+     * @param value the new value
+     * @return the changed copy
+     * @throws IllegalArgumentException if there is no such parameter
+     */
+    public SimParams with(String name, double value) {
+        int n = (int) Math.round(value);
+        switch (name) {
+            case "arrivalProb":
+                return new SimParams(value, infectedProb, survivalTime, survivalStd, testingTime, treatmentTime, triageThreshold);
+            case "infectedProb":
+                return new SimParams(arrivalProb, value, survivalTime, survivalStd, testingTime, treatmentTime, triageThreshold);
+            case "survivalTime":
+                return new SimParams(arrivalProb, infectedProb, n, survivalStd, testingTime, treatmentTime, triageThreshold);
+            case "survivalStd":
+                return new SimParams(arrivalProb, infectedProb, survivalTime, n, testingTime, treatmentTime, triageThreshold);
+            case "testingTime":
+                return new SimParams(arrivalProb, infectedProb, survivalTime, survivalStd, n, treatmentTime, triageThreshold);
+            case "treatmentTime":
+                return new SimParams(arrivalProb, infectedProb, survivalTime, survivalStd, testingTime, n, triageThreshold);
+            case "triageThreshold":
+                return new SimParams(arrivalProb, infectedProb, survivalTime, survivalStd, testingTime, treatmentTime, value);
+            default:
+                throw new IllegalArgumentException("Unknown parameter: " + name);
+        }
+    }
+
+    /**
+     * Returns the parameters as comma-separated values in the order of
+     * {@link #NAMES}.
+     *
+     * @return the parameters as a CSV fragment
+     */
+    @Override
+    public String toString() {
+        return arrivalProb + "," + infectedProb + "," + survivalTime + "," + survivalStd + ","
+               + testingTime + "," + treatmentTime + "," + triageThreshold;
+    }
+}
@@ -0,0 +1,425 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import javax.swing.SwingUtilities;
+
+/**
+ *  Runs a simulation on its own thread for the GUI, so the window stays
+ *  responsive however long each minute takes to simulate. Only the runner's
+ *  thread touches the simulation. It hands the GUI a {@link SimSnapshot}
+ *  at most {@value #FRAMES_PER_SECOND} times a second while playing, and
+ *  whenever it stops, on the event dispatch thread. If the GUI falls behind,
+ *  the snapshots it has not shown yet are dropped in favour of the newest.
+ *  It can also run the simulation as fast as possible without showing it
+ *  until a condition is met, see {@link #runUntil(Predicate, Runnable)}.
+ *  While playing faster than {@value #QUIET_STEPS_PER_SECOND} steps a
+ *  second, or running to a condition, the simulation reports its events to
+ *  {@link SimEventSink#NONE}, since nobody can read a line a minute at that
+ *  speed; the sink it had is put back for single steps and slower play.
+ */
+final class SimRunner {
+
+	/**
+	 *  The most snapshots handed to the GUI each second while playing.
+	 */
+	static final int FRAMES_PER_SECOND = 30;
+
+	/**
+	 *  The time between snapshots while playing, in nanoseconds.
+	 */
+	private static final long FRAME_NANOS = 1_000_000_000L / FRAMES_PER_SECOND;
+
+	/**
+	 *  The longest a batch of steps should take, in nanoseconds, so that
+	 *  commands and frames are not held up behind it.
+	 */
+	private static final long BATCH_NANOS = FRAME_NANOS / 4;
+
+	/**
+	 *  The most steps run in one batch.
+	 */
+	private static final long MAX_BATCH = 1 << 20;
+
+	/**
+	 *  The fastest speed, in steps a second, the simulation still reports its
+	 *  events at while playing.
+	 */
+	static final double QUIET_STEPS_PER_SECOND = 10;
+
+	/**
+	 *  The simulation, touched only by the runner's thread once it starts.
+	 */
+	private final Simulation sim;
+
+	/**
+	 *  Where the simulation reported its events before the runner took it,
+	 *  used whenever the runner is not running it quietly.
+	 */
+	private final SimEventSink sink;
+
+	/**
+	 *  Whether the simulation is reporting its events to
+	 *  {@link SimEventSink#NONE}, touched only by the runner's thread.
+	 */
+	private boolean quiet = false;
+
+	/**
+	 *  The most people copied from each line into a snapshot.
+	 */
+	private final int limit;
+
+	/**
+	 *  Shows a snapshot, called on the event dispatch thread.
+	 */
+	private final Consumer<SimSnapshot> view;
+
+	/**
+	 *  The thread running the simulation.
+	 */
+	private final Thread thread;
+
+	/**
+	 *  The newest snapshot, waiting to be shown.
+	 */
+	private final AtomicReference<SimSnapshot> latest = new AtomicReference<>();
+
+	/**
+	 *  Whether showing the newest snapshot is already queued on the event
+	 *  dispatch thread.
+	 */
+	private final AtomicBoolean showQueued = new AtomicBoolean();
+
+	/**
+	 *  The number of single steps asked for and not yet run.
+	 */
+	private int steps = 0;
+
+	/**
+	 *  Whether the simulation is playing.
+	 */
+	private boolean playing = false;
+
+	/**
+	 *  The number of steps to play each second, or infinity for as many as
+	 *  the simulation can run.
+	 */
+	private double stepsPerSecond = 1;
+
+	/**
+	 *  The condition a run started with {@link #runUntil} stops at, or null
+	 *  if there is no such run.
+	 */
+	private Predicate<Simulation> until = null;
+
+	/**
+	 *  What to do when the current run to a condition finishes, or null if
+	 *  there is nothing to do.
+	 */
+	private Runnable untilDone = null;
+
+	/**
+	 *  Whether the runner has been closed.
+	 */
+	private boolean closed = false;
+
+	/**
+	 *  The time playing started at, in nanoseconds, or -1 if it has not
+	 *  started since the last change of play or speed.
+	 */
+	private long playStart = -1;
+
+	/**
+	 *  The number of steps played since playing started.
+	 */
+	private long played = 0;
+
+	/**
+	 *  Whether steps have run since the last snapshot.
+	 */
+	private boolean changed = false;
+
+	/**
+	 *  The number of steps to run in the next batch while playing as fast as
+	 *  possible, sized to take about {@link #BATCH_NANOS}.
+	 */
+	private long batch = 1;
+
+	/**
+	 *  The time the next snapshot is due while playing, in nanoseconds.
+	 */
+	private long frameDue = 0;
+
+	/**
+	 *  Creates a runner for a simulation. Nothing runs until
+	 *  {@link #start()} is called.
+	 *
+	 *  @param sim the simulation, which nothing else may touch from now on
+	 *  @param limit the most people to copy from each line into a snapshot
+	 *  @param view shows a snapshot, called on the event dispatch thread
+	 */
+	SimRunner(Simulation sim, int limit, Consumer<SimSnapshot> view) {
+		this.sim = sim;
+		this.sink = sim.getEventSink();
+		this.limit = limit;
+		this.view = view;
+		this.thread = new Thread(this::run, "simulation");
+		this.thread.setDaemon(true);
+	}
+
+	/**
+	 *  Starts the runner's thread, which first shows the simulation as it is.
+	 */
+	void start() {
+		thread.start();
+	}
+
+	/**
+	 *  Asks for the simulation to move forward one step and be shown.
+	 */
+	synchronized void step() {
+		steps++;
+		notifyAll();
+	}
+
+	/**
+	 *  Starts playing the simulation at the given speed, or changes the
+	 *  speed if it is already playing.
+	 *
+	 *  @param stepsPerSecond the number of steps to play each second, or
+	 *         {@link Double#POSITIVE_INFINITY} for as fast as possible
+	 *  @throws IllegalArgumentException if the speed is not positive
+	 */
+	synchronized void play(double stepsPerSecond) {
+		if(!(stepsPerSecond > 0)) {
+			throw new IllegalArgumentException("Speed must be positive: " + stepsPerSecond);
+		}
+		this.stepsPerSecond = stepsPerSecond;
+		this.playing = true;
+		this.playStart = -1;
+		this.until = null;
+		notifyAll();
+	}
+
+	/**
+	 *  Runs the simulation as fast as possible, without showing it, until
+	 *  the condition holds, then shows it. The condition is checked before
+	 *  every step, on the runner's thread. Calling {@link #pause()} or
+	 *  {@link #play(double)} ends the run early.
+	 *
+	 *  @param condition says whether the simulation has gone far enough
+	 *  @param done called on the event dispatch thread once the simulation
+	 *         is shown at the end of the run
+	 */
+	synchronized void runUntil(Predicate<Simulation> condition, Runnable done) {
+		playing = false;
+		until = condition;
+		untilDone = done;
+		notifyAll();
+	}
+
+	/**
+	 *  Stops playing the simulation, or running it to a condition, and
+	 *  shows where it stopped.
+	 */
+	synchronized void pause() {
+		playing = false;
+		until = null;
+		notifyAll();
+	}
+
+	/**
+	 *  Stops the runner's thread. The simulation is left as it is.
+	 */
+	synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 *  Runs the simulation as asked until the runner is closed, then puts
+	 *  back the event sink it had.
+	 */
+	private void run() {
+		try {
+			publish();
+			while(true) {
+				long count;
+				Predicate<Simulation> condition;
+				boolean fast;
+				synchronized(this) {
+					count = next();
+					condition = until;
+					fast = condition != null || (playing && stepsPerSecond > QUIET_STEPS_PER_SECOND);
+				}
+				if(count < 0) {
+					return;
+				}
+				if(count == 0) {
+					publish();
+					Runnable done = takeDone();
+					if(done != null) {
+						SwingUtilities.invokeLater(done);
+					}
+					continue;
+				}
+
+				setQuiet(fast);
+				long start = System.nanoTime();
+				if(condition != null) {
+					runUntil(condition, count);
+				}
+				else if(count == 1) {
+					sim.step();
+				}
+				else {
+					sim.runUntil(sim.getMinute() + count);
+				}
+				long end = System.nanoTime();
+
+				if(end - start < BATCH_NANOS / 2 && count == batch && batch < MAX_BATCH) {
+					batch *= 2;
+				}
+				else if(end - start > BATCH_NANOS && batch > 1) {
+					batch /= 2;
+				}
+				if(end >= frameDue && condition == null) {
+					publish();
+				}
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			setQuiet(false);
+		}
+	}
+
+	/**
+	 *  Has the simulation report its events to {@link SimEventSink#NONE},
+	 *  or to the sink it had before, unless it already does.
+	 *
+	 *  @param quiet whether to stop reporting events
+	 */
+	private void setQuiet(boolean quiet) {
+		if(quiet != this.quiet) {
+			sim.setEventSink(quiet ? SimEventSink.NONE : sink);
+			this.quiet = quiet;
+		}
+	}
+
+	/**
+	 *  Runs up to the given number of steps of a run to a condition, ending
+	 *  the run if the condition holds.
+	 *
+	 *  @param condition the condition the run stops at
+	 *  @param count the most steps to run
+	 */
+	private void runUntil(Predicate<Simulation> condition, long count) {
+		for(long i = 0; i < count; i++) {
+			if(condition.test(sim)) {
+				synchronized(this) {
+					if(until == condition) {
+						until = null;
+					}
+				}
+				return;
+			}
+			sim.step();
+		}
+	}
+
+	/**
+	 *  Hands over what to do now that a run to a condition has finished.
+	 *
+	 *  @return what to do, or null if no run has finished
+	 */
+	private synchronized Runnable takeDone() {
+		if(until != null) {
+			return null;
+		}
+		Runnable done = untilDone;
+		untilDone = null;
+		return done;
+	}
+
+	/**
+	 *  Waits until there is something to do and says what it is.
+	 *
+	 *  @return the number of steps to run next, 0 to show the simulation
+	 *          before waiting for more, or -1 if the runner is closed
+	 *  @throws InterruptedException if the thread is interrupted
+	 */
+	private long next() throws InterruptedException {
+		while(true) {
+			if(closed) {
+				return -1;
+			}
+			if(steps > 0) {
+				int count = steps;
+				steps = 0;
+				changed = true;
+				frameDue = 0;
+				return count;
+			}
+			if(until != null) {
+				changed = true;
+				return batch;
+			}
+			if(untilDone != null) {
+				return 0;
+			}
+			if(!playing) {
+				if(changed) {
+					return 0;
+				}
+				wait();
+				continue;
+			}
+
+			long now = System.nanoTime();
+			if(playStart < 0) {
+				playStart = now;
+				played = 0;
+			}
+			long count = batch;
+			if(stepsPerSecond != Double.POSITIVE_INFINITY) {
+				long due = (long) ((now - playStart) / 1e9 * stepsPerSecond);
+				count = Math.min(due - played, batch);
+				if(count <= 0) {
+					if(changed && now >= frameDue) {
+						return 0;
+					}
+					long nextStep = playStart + (long) Math.ceil((played + 1) / stepsPerSecond * 1e9);
+					long wake = changed ? Math.min(nextStep, frameDue) : nextStep;
+					TimeUnit.NANOSECONDS.timedWait(this, Math.max(wake - now, 1));
+					continue;
+				}
+			}
+			played += count;
+			changed = true;
+			return count;
+		}
+	}
+
+	/**
+	 *  Takes a snapshot of the simulation and has the GUI show it, unless it
+	 *  is still to show an earlier one, which this one then replaces.
+	 */
+	private void publish() {
+		latest.set(new SimSnapshot(sim, limit));
+		synchronized(this) {
+			changed = false;
+			frameDue = System.nanoTime() + FRAME_NANOS;
+		}
+		if(showQueued.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(() -> {
+				showQueued.set(false);
+				view.accept(latest.get());
+			});
+		}
+	}
+}
@@ -0,0 +1,287 @@
+/**
+ *  An immutable copy of what the GUI shows of a simulation at one minute:
+ *  each scenario's counters, its recent rates if it has a {@link Timeline},
+ *  and the people at the front of each line.
+ *  Snapshots are taken on the thread running the simulation and can then
+ *  be read from any thread.
+ */
+final class SimSnapshot {
+
+	/**
+	 *  The minute the snapshot was taken at.
+	 */
+	private final long minute;
+
+	/**
+	 *  The description of each scenario.
+	 */
+	private final String[] labels;
+
+	/**
+	 *  The number of people pending in each scenario.
+	 */
+	private final int[] pending;
+
+	/**
+	 *  The number of people made safe in each scenario.
+	 */
+	private final int[] safe;
+
+	/**
+	 *  The number of deaths in each scenario.
+	 */
+	private final int[] deaths;
+
+	/**
+	 *  The deaths per 1,000 minutes in each scenario over the last 1,000
+	 *  minutes, or NaN if it has no timeline.
+	 */
+	private final double[] deathRate;
+
+	/**
+	 *  The share of the last 1,000 minutes each scenario spent treating, or
+	 *  NaN if it has no timeline.
+	 */
+	private final double[] treating;
+
+	/**
+	 *  The treatment line of the first scenario.
+	 */
+	private final People treatment1;
+
+	/**
+	 *  The testing line of the second scenario.
+	 */
+	private final People testing2;
+
+	/**
+	 *  The treatment line of the second scenario.
+	 */
+	private final People treatment2;
+
+	/**
+	 *  Takes a snapshot of a simulation. Only the first {@code limit}
+	 *  people of each line are copied, and only they are put in order, so a
+	 *  snapshot of long lines costs no more than one of lines the width of
+	 *  the window.
+	 *
+	 *  @param sim the simulation, which must not be running
+	 *  @param limit the most people to copy from each line
+	 */
+	SimSnapshot(Simulation sim, int limit) {
+		TreatAll s1 = sim.getScenario1();
+		TestAndTreat s2 = sim.getScenario2();
+		this.minute = sim.getMinute();
+		this.labels = new String[] {s1.toString(), s2.toString()};
+		this.pending = new int[] {s1.getPending(), s2.getPending()};
+		this.safe = new int[] {s1.getSafe(), s2.getSafe()};
+		this.deaths = new int[] {s1.getDeaths(), s2.getDeaths()};
+		this.deathRate = new double[] {windowRate(s1, Timeline.DEATHS), windowRate(s2, Timeline.DEATHS)};
+		this.treating = new double[] {windowMean(s1, Timeline.TREATING), windowMean(s2, Timeline.TREATING)};
+		long[] metrics = new long[Timeline.CHANNELS];
+		s2.sampleMetrics(metrics);
+		this.treatment1 = new People(s1.getTreatmentLine(limit), s1.getPending());
+		this.testing2 = new People(s2.getTestingLine(limit), (int) metrics[Timeline.TESTING_LINE]);
+		this.treatment2 = new People(s2.getTreatmentLine(limit), s2.getPending());
+	}
+
+	/**
+	 *  Returns a channel's rate per 1,000 minutes over the last 1,000 minutes
+	 *  of a scenario's timeline.
+	 *
+	 *  @param scenario the scenario
+	 *  @param channel the {@link Timeline} channel
+	 *  @return the rate, or NaN if the scenario has no timeline
+	 */
+	private static double windowRate(Scenario scenario, int channel) {
+		Timeline timeline = scenario.getTimeline();
+		return (timeline != null) ? timeline.getWindowRate(channel, 1000) : Double.NaN;
+	}
+
+	/**
+	 *  Returns a channel's mean per minute over the last 1,000 minutes of a
+	 *  scenario's timeline.
+	 *
+	 *  @param scenario the scenario
+	 *  @param channel the {@link Timeline} channel
+	 *  @return the mean, or NaN if the scenario has no timeline
+	 */
+	private static double windowMean(Scenario scenario, int channel) {
+		Timeline timeline = scenario.getTimeline();
+		return (timeline != null) ? timeline.getWindowMean(channel) : Double.NaN;
+	}
+
+	/**
+	 *  Returns the minute the snapshot was taken at.
+	 *
+	 *  @return the minute
+	 */
+	public long getMinute() {
+		return minute;
+	}
+
+	/**
+	 *  Returns the description of a scenario.
+	 *
+	 *  @param scenario the scenario, 1 or 2
+	 *  @return its description
+	 */
+	public String getLabel(int scenario) {
+		return labels[scenario - 1];
+	}
+
+	/**
+	 *  Returns the number of people pending in a scenario.
+	 *
+	 *  @param scenario the scenario, 1 or 2
+	 *  @return the number of people pending
+	 */
+	public int getPending(int scenario) {
+		return pending[scenario - 1];
+	}
+
+	/**
+	 *  Returns the number of people made safe in a scenario.
+	 *
+	 *  @param scenario the scenario, 1 or 2
+	 *  @return the number of people made safe
+	 */
+	public int getSafe(int scenario) {
+		return safe[scenario - 1];
+	}
+
+	/**
+	 *  Returns the number of deaths in a scenario.
+	 *
+	 *  @param scenario the scenario, 1 or 2
+	 *  @return the number of deaths
+	 */
+	public int getDeaths(int scenario) {
+		return deaths[scenario - 1];
+	}
+
+	/**
+	 *  Returns the deaths per 1,000 minutes in a scenario over the last 1,000
+	 *  minutes.
+	 *
+	 *  @param scenario the scenario, 1 or 2
+	 *  @return the death rate, or NaN if the scenario has no timeline
+	 */
+	public double getDeathRate(int scenario) {
+		return deathRate[scenario - 1];
+	}
+
+	/**
+	 *  Returns the share of the last 1,000 minutes a scenario spent treating.
+	 *
+	 *  @param scenario the scenario, 1 or 2
+	 *  @return the share, from 0 to 1, or NaN if the scenario has no timeline
+	 */
+	public double getTreating(int scenario) {
+		return treating[scenario - 1];
+	}
+
+	/**
+	 *  Returns the treatment line of the first scenario.
+	 *
+	 *  @return the people in line
+	 */
+	public People getTreatmentLine1() {
+		return treatment1;
+	}
+
+	/**
+	 *  Returns the testing line of the second scenario.
+	 *
+	 *  @return the people in line
+	 */
+	public People getTestingLine2() {
+		return testing2;
+	}
+
+	/**
+	 *  Returns the treatment line of the second scenario.
+	 *
+	 *  @return the people in line
+	 */
+	public People getTreatmentLine2() {
+		return treatment2;
+	}
+
+	/**
+	 *  A copy of the front of one line.
+	 */
+	static final class People {
+
+		/**
+		 *  The number of people in the whole line.
+		 */
+		private final int size;
+
+		/**
+		 *  The ID of each person copied.
+		 */
+		private final long[] ids;
+
+		/**
+		 *  The test result of each person copied.
+		 */
+		private final double[] testResults;
+
+		/**
+		 *  Copies the front of a line.
+		 *
+		 *  @param front the people at the front of the line
+		 *  @param size the number of people in the whole line
+		 */
+		People(Line<Person> front, int size) {
+			this.size = size;
+			int shown = front.getSize();
+			this.ids = new long[shown];
+			this.testResults = new double[shown];
+			for(int i = 0; i < shown; i++) {
+				Person p = front.get(i);
+				ids[i] = p.getId();
+				testResults[i] = p.getTestResult();
+			}
+		}
+
+		/**
+		 *  Returns the number of people in the whole line.
+		 *
+		 *  @return the size of the line
+		 */
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 *  Returns the number of people copied from the front of the line.
+		 *
+		 *  @return the number of people that can be read
+		 */
+		public int getShown() {
+			return ids.length;
+		}
+
+		/**
+		 *  Returns the ID of a person.
+		 *
+		 *  @param index their place in line, less than {@link #getShown()}
+		 *  @return their ID
+		 */
+		public long getId(int index) {
+			return ids[index];
+		}
+
+		/**
+		 *  Returns the test result of a person.
+		 *
+		 *  @param index their place in line, less than {@link #getShown()}
+		 *  @return their test result
+		 */
+		public double getTestResult(int index) {
+			return testResults[index];
+		}
+	}
+}
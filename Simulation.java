@@ -5,8 +5,6 @@
 //******* EXCEPT TO ADD CONSOLE OUTPUT IF NEEDED *******
 //******************************************************
 
-import java.util.Random;
-
 /**
  *  The actual simulation.
  *  
@@ -14,39 +12,55 @@ import java.util.Random;
  */
 public final class Simulation {
 	/**
-	 *  The random number generator.
+	 *  Draws the arrivals a block of minutes at a time.
 	 */
-	private Random rng;
+	private final ArrivalBlocks arrivals;
 	
 	/**
-	 *  The arrival probability.
+	 *  The block of arrivals covering the current minute, or null before the first.
 	 */
-	private double arrivalProb;
+	private ArrivalTrace block;
 	
 	/**
-	 *  The infected probability.
+	 *  The next arrival in {@code block} not yet handed to the scenarios.
 	 */
-	private double infectedProb;
+	private int blockNext;
 	
 	/**
-	 *  The average survival time.
+	 *  The scenarios being compared, all given the same arrivals.
 	 */
-	private int survivalTime;
+	private final Scenario[] scenarios;
 	
 	/**
-	 *  The survival time standard deviation.
+	 *  The current treatment scenario, if this simulation has the standard pair.
 	 */
-	private int survivalStd;
+	private TreatAll scenario1;
 	
 	/**
-	 *  The current treatment scenario.
+	 *  The test-and-treat scenario, if this simulation has the standard pair.
 	 */
-	private TreatAll scenario1;
+	private TestAndTreat scenario2;
 	
 	/**
-	 *  The test-and-treat scenario.
+	 *  The workers that run the scenarios in parallel, or null to run them
+	 *  one after another.
 	 */
-	private TestAndTreat scenario2;
+	private java.util.concurrent.ForkJoinPool pool;
+	
+	/**
+	 *  The number of minutes simulated so far.
+	 */
+	private long minute = 0;
+	
+	/**
+	 *  Where events are reported; logs steps and arrivals to the console by default.
+	 */
+	private SimEventSink events;
+	
+	/**
+	 *  The events {@code events} wants, cached from {@link SimEventSink#getEvents()}.
+	 */
+	private int eventMask;
 	
 	/**
 	 * Creates a simulation of the proper size and optionally runs some number
@@ -61,44 +75,538 @@ public final class Simulation {
 	 * @param treatmentTime the time to administer a treatment regimen
 	 */
 	public Simulation(int seed, double arrivalProb, double infectedProb, int survivalTime, int survivalStd, int testingTime, int treatmentTime) {
-		this.rng = new Random(seed);
-		this.arrivalProb = arrivalProb;
-		this.infectedProb = infectedProb;
-		this.survivalTime = survivalTime;
-		this.survivalStd = survivalStd;
+		this(seed, arrivalProb, infectedProb, survivalTime, survivalStd, testingTime, treatmentTime, false);
+	}
+	
+	/**
+	 * Creates a simulation, optionally having both scenarios expire people by
+	 * absolute deadline instead of ticking everyone in line every minute. Both
+	 * modes give the same results for the same seed.
+	 * 
+	 * @param seed the random number generator seed
+	 * @param arrivalProb the arrival probability
+	 * @param infectedProb the infected probability
+	 * @param survivalTime the average survival time
+	 * @param survivalStd the survival time standard deviation
+	 * @param testingTime the time to administer a test
+	 * @param treatmentTime the time to administer a treatment regimen
+	 * @param expireByDeadline whether the scenarios expire people by deadline
+	 */
+	public Simulation(int seed, double arrivalProb, double infectedProb, int survivalTime, int survivalStd, int testingTime, int treatmentTime, boolean expireByDeadline) {
+		this(seed, new SimParams(arrivalProb, infectedProb, survivalTime, survivalStd, testingTime, treatmentTime, SimParams.DEFAULT_TRIAGE_THRESHOLD), expireByDeadline);
+	}
+	
+	/**
+	 * Creates a simulation from a set of parameters, which also allows
+	 * changing the Test-and-Treat triage threshold.
+	 * 
+	 * @param seed the random number generator seed
+	 * @param params the simulation parameters
+	 * @param expireByDeadline whether the scenarios expire people by deadline
+	 */
+	public Simulation(int seed, SimParams params, boolean expireByDeadline) {
+		this(seed, params, expireByDeadline, false);
+	}
+	
+	/**
+	 * Creates a simulation from a set of parameters, optionally keeping the
+	 * people in each scenario in a compact {@link PersonStore} instead of as
+	 * {@link Person} objects. All four combinations give the same results.
+	 * 
+	 * @param seed the random number generator seed
+	 * @param params the simulation parameters
+	 * @param expireByDeadline whether the scenarios expire people by deadline
+	 * @param compact whether to use {@link CompactTreatAll} and {@link CompactTestAndTreat}
+	 */
+	public Simulation(int seed, SimParams params, boolean expireByDeadline, boolean compact) {
+		this(new ArrivalGenerator(seed, params), params, expireByDeadline, compact);
+	}
+	
+	/**
+	 * Creates the standard pair of scenarios with arrivals from the given
+	 * generator, e.g. one using split random streams.
+	 * 
+	 * @param arrivals draws each minute's arrival
+	 * @param params the simulation parameters
+	 * @param expireByDeadline whether the scenarios expire people by deadline
+	 * @param compact whether to use {@link CompactTreatAll} and {@link CompactTestAndTreat}
+	 */
+	public Simulation(ArrivalGenerator arrivals, SimParams params, boolean expireByDeadline, boolean compact) {
+		this(arrivals, compact
+				? java.util.List.of(new CompactTreatAll(params.getTreatmentTime(), expireByDeadline),
+						new CompactTestAndTreat(params.getTestingTime(), params.getTreatmentTime(), params.getTriageThreshold(), expireByDeadline))
+				: java.util.List.of(new TreatAll(params.getTreatmentTime(), expireByDeadline),
+						new TestAndTreat(params.getTestingTime(), params.getTreatmentTime(), params.getTriageThreshold(), expireByDeadline)));
+		this.scenario1 = (TreatAll) scenarios[0];
+		this.scenario2 = (TestAndTreat) scenarios[1];
+	}
+	
+	/**
+	 * Creates a simulation that gives the same arrivals to any number of
+	 * scenarios. The scenarios report their events under their position in
+	 * the list, starting from 1. Only the arrival parameters are used from
+	 * {@code params}; each scenario has its own times.
+	 * 
+	 * @param seed the random number generator seed
+	 * @param params the simulation parameters
+	 * @param scenarios the scenarios to compare, which must be new
+	 */
+	public Simulation(int seed, SimParams params, java.util.List<? extends Scenario> scenarios) {
+		this(new ArrivalGenerator(seed, params), scenarios);
+	}
+	
+	/**
+	 * Creates a simulation that gives any number of scenarios the arrivals
+	 * from the given generator.
+	 * 
+	 * @param arrivals draws each minute's arrival
+	 * @param scenarios the scenarios to compare, which must be new
+	 */
+	public Simulation(ArrivalGenerator arrivals, java.util.List<? extends Scenario> scenarios) {
+		this(new ArrivalBlocks(arrivals), scenarios);
+	}
+	
+	/**
+	 * Creates a simulation that gives any number of scenarios the arrivals
+	 * handed out by the given blocks.
+	 * 
+	 * @param arrivals hands out the arrivals
+	 * @param scenarios the scenarios to compare
+	 */
+	private Simulation(ArrivalBlocks arrivals, java.util.List<? extends Scenario> scenarios) {
+		this.arrivals = arrivals;
+		this.scenarios = scenarios.toArray(new Scenario[0]);
 		
-		this.scenario1 = new TreatAll(treatmentTime);
-		this.scenario2 = new TestAndTreat(testingTime, treatmentTime);
+		setEventSink(TextEventSink.console());
 	}
 	
 	/**
 	 *  Moves the simulation forward one step (1 step = 1 minute).
 	 */
 	public void step() {
-		System.out.println("Step");
+		FlightEvents.Step event = FlightEvents.isStarted() ? new FlightEvents.Step() : null;
+		if(event != null) event.begin();
+		minute++;
+		if((eventMask & SimEventSink.STEP) != 0) events.step(minute);
 		
-		getScenario1().tick();
-		getScenario2().tick();
+		for(Scenario s : scenarios) {
+			s.tick();
+		}
 		
-		double arrival = rng.nextDouble();
-		if(arrival < arrivalProb) {
-			boolean infected = (rng.nextDouble() < infectedProb);
-			double test = rng.nextDouble();
-			double testResult =  (infected) ? ((0.6*test)+.4) : (0.8*test);
-			int timeLeft = (infected) ? (int)((rng.nextGaussian()*survivalStd)+survivalTime) : Integer.MAX_VALUE;
+		if(nextArrival()) {
+			addArrival();
+		}
+		if(event != null) {
+			event.minute = minute;
+			event.commit();
+		}
+	}
+	
+	/**
+	 *  Runs the simulation until the given minute, jumping straight from one
+	 *  event to the next instead of stepping through the minutes in between:
+	 *  to the next arrival, which is known ahead from the drawn block of
+	 *  arrivals, or to the next minute a scenario has something to do, if
+	 *  sooner. Gives the same results as calling {@link #step()} the same
+	 *  number of times, including the events reported.
+	 *  
+	 *  <p>The scenarios say how long they will stay quiet (see
+	 *  {@link Scenario#getQuietMinutes()}). When the simulation was created
+	 *  with {@code expireByDeadline} set, that is until the next death, test
+	 *  result or end of a treatment; in tick mode, everyone waiting has to be
+	 *  ticked every minute, so only minutes with nobody waiting are jumped.
+	 *  
+	 *  <p>If worker threads have been set with {@link #setThreads(int)} and
+	 *  the event sink wants no per-scenario events, the arrivals are drawn
+	 *  {@link ArrivalBlocks#BLOCK_MINUTES} at a time and each scenario runs through the
+	 *  block on its own worker, waiting for the others only at the end of
+	 *  the block. The results are the same.
+	 *  
+	 *  @param target the minute to stop at
+	 */
+	public void runUntil(long target) {
+		FlightEvents.Run event = FlightEvents.isStarted() ? new FlightEvents.Run() : null;
+		if(event != null) event.begin();
+		long from = minute;
+		int scenarioEvents = SimEventSink.ALL & ~(SimEventSink.STEP | SimEventSink.ARRIVAL);
+		boolean parallel = pool != null && scenarios.length > 1 && (eventMask & scenarioEvents) == 0;
+		if(parallel) {
+			runBlocks(target);
+		}
+		else {
+			runSerial(target);
+		}
+		if(event != null) {
+			event.from = from;
+			event.to = minute;
+			event.parallel = parallel;
+			event.commit();
+		}
+	}
+	
+	/**
+	 *  Runs the scenarios one after another up to the given minute, jumping
+	 *  over the quiet minutes before each arrival or scenario event.
+	 *  
+	 *  @param target the minute to stop at
+	 */
+	private void runSerial(long target) {
+		while(minute < target) {
+			if(block == null || minute >= block.getLastMinute()) {
+				block = arrivals.next();
+				blockNext = 0;
+			}
+			
+			//jump to just before the next arrival, the end of the block or
+			//the target, unless a scenario has something to do sooner
+			long nextArrival = (blockNext < block.getSize()) ? block.getMinute(blockNext) : block.getLastMinute() + 1;
+			long quiet = Math.min(getQuietMinutes(), Math.min(nextArrival, target + 1) - minute - 1);
+			if(quiet > 0) {
+				if((eventMask & SimEventSink.STEP) != 0) {
+					for(long m = minute + 1; m <= minute + quiet; m++) {
+						events.step(m);
+					}
+				}
+				skip(quiet);
+				minute += quiet;
+				continue;
+			}
 			
-			Person p = new Person(testResult, timeLeft);
-			System.out.println("Person arrived: " + p);
+			minute++;
+			if((eventMask & SimEventSink.STEP) != 0) events.step(minute);
+			for(Scenario s : scenarios) {
+				s.tick();
+			}
+			if(nextArrival()) {
+				addArrival();
+			}
+		}
+	}
+	
+	/**
+	 *  Runs the scenarios in parallel up to the given minute, a block of
+	 *  arrivals at a time.
+	 *  
+	 *  @param target the minute to stop at
+	 */
+	private void runBlocks(long target) {
+		java.util.concurrent.ForkJoinTask<?>[] tasks = new java.util.concurrent.ForkJoinTask<?>[scenarios.length];
+		while(minute < target) {
+			if(block == null || minute >= block.getLastMinute()) {
+				block = arrivals.next();
+				blockNext = 0;
+			}
+			ArrivalTrace current = block;
+			long from = minute;
+			long end = Math.min(current.getLastMinute(), target);
 			
-			getScenario1().addPerson(p);
-			getScenario2().addPerson(p.clone());
+			for(int i = 0; i < scenarios.length; i++) {
+				Scenario s = scenarios[i];
+				tasks[i] = pool.submit(() -> current.view(from).runUntil(s, end));
+			}
+			reportBlock(current, from, end);
+			for(java.util.concurrent.ForkJoinTask<?> task : tasks) {
+				task.join();
+			}
+			blockNext = current.indexAfter(end);
+			minute = end;
 		}
 	}
 	
+	/**
+	 *  Reports the step and arrival events of part of a block in the order
+	 *  {@link #step()} would, and emits its arrivals to the flight recorder
+	 *  if a recording wants them.
+	 *  
+	 *  @param block the block of arrivals
+	 *  @param from the minute before the first one to report
+	 *  @param end the last minute to report
+	 */
+	private void reportBlock(ArrivalTrace block, long from, long end) {
+		boolean flight = FlightEvents.isArrivalEnabled();
+		if((eventMask & (SimEventSink.STEP | SimEventSink.ARRIVAL)) == 0 && !flight) {
+			return;
+		}
+		int next = block.indexAfter(from);
+		for(long m = from + 1; m <= end; m++) {
+			if((eventMask & SimEventSink.STEP) != 0) events.step(m);
+			if(next < block.getSize() && block.getMinute(next) == m) {
+				if((eventMask & SimEventSink.ARRIVAL) != 0) events.arrival(m, new Person(block.getTestResult(next), block.getTimeLeft(next), block.getId(next)));
+				if(flight) FlightEvents.arrival(m, block.getId(next), block.getTimeLeft(next) != Integer.MAX_VALUE);
+				next++;
+			}
+		}
+	}
+	
+	/**
+	 *  Sets how many worker threads {@link #runUntil(long)} may use to run
+	 *  the scenarios at the same time. With 1 (the default) the scenarios
+	 *  are run one after another.
+	 *  
+	 *  @param threads the number of worker threads
+	 */
+	public void setThreads(int threads) {
+		if(pool != null) {
+			pool.shutdown();
+		}
+		pool = (threads > 1) ? new java.util.concurrent.ForkJoinPool(threads) : null;
+		arrivals.setPrefetch(pool);
+	}
+	
+	/**
+	 *  Returns where the simulation and its scenarios report their events.
+	 *  
+	 *  @return the event sink
+	 */
+	public SimEventSink getEventSink() {
+		return events;
+	}
+	
+	/**
+	 *  Sets where the simulation and all scenarios report their events.
+	 *  Use {@link SimEventSink#NONE} to turn off all logging.
+	 *  
+	 *  @param sink the event sink
+	 */
+	public void setEventSink(SimEventSink sink) {
+		this.events = sink;
+		this.eventMask = sink.getEvents();
+		for(int i = 0; i < scenarios.length; i++) {
+			scenarios[i].setEventSink(sink, i + 1);
+		}
+	}
+	
+	/**
+	 *  Returns the number of minutes simulated so far.
+	 *  
+	 *  @return the current minute
+	 */
+	public long getMinute() {
+		return minute;
+	}
+	
+	/**
+	 *  Saves the complete state of the simulation to a file, so that
+	 *  {@link #restore(java.nio.file.Path)} can carry on from this minute
+	 *  with exactly the same results. The file is replaced in one go, so a
+	 *  crash while saving leaves an existing checkpoint intact.
+	 *  
+	 *  @param file the checkpoint file
+	 *  @throws java.io.IOException if the file cannot be written
+	 *  @throws IllegalArgumentException if a scenario is of a type that cannot be saved
+	 *  @see Checkpoint
+	 */
+	public void checkpoint(java.nio.file.Path file) throws java.io.IOException {
+		Checkpoint.save(this, file);
+	}
+	
+	/**
+	 *  Loads a simulation saved by {@link #checkpoint(java.nio.file.Path)}.
+	 *  It logs to the console and runs on one thread, like a new simulation.
+	 *  
+	 *  @param file the checkpoint file
+	 *  @return the simulation, at the minute it was saved
+	 *  @throws java.io.IOException if the file cannot be read or is not a valid checkpoint
+	 */
+	public static Simulation restore(java.nio.file.Path file) throws java.io.IOException {
+		return Checkpoint.load(file);
+	}
+	
+	/**
+	 *  Creates a branch of this simulation for a what-if run: a new
+	 *  simulation at the same minute, with every scenario forked (see
+	 *  {@link Scenario#fork()}) and the same arrivals still to come. The
+	 *  branch and this simulation then run independently, so many branches
+	 *  can run in parallel from one warmed-up state. The compact scenarios
+	 *  share their arrays with the branch until one of them changes them.
+	 *  
+	 *  <p>Like a new simulation, the branch logs to the console and runs on
+	 *  one thread. This simulation must not be running while it is forked.
+	 *  
+	 *  @return the branch
+	 *  @throws UnsupportedOperationException if a scenario cannot be forked
+	 */
+	public Simulation fork() {
+		Scenario[] branches = new Scenario[scenarios.length];
+		for(int i = 0; i < scenarios.length; i++) {
+			branches[i] = scenarios[i].fork();
+		}
+		return fork(branches);
+	}
+	
+	/**
+	 *  Creates a branch of this simulation, like {@link #fork()}, whose
+	 *  standard pair of scenarios use the testing time, treatment time and
+	 *  triage threshold in {@code params} from now on. The arrival
+	 *  parameters in {@code params} are not used; the branch gets the same
+	 *  arrivals as this simulation.
+	 *  
+	 *  @param params the branch's settings
+	 *  @return the branch
+	 *  @throws IllegalStateException if this simulation was made from a list of scenarios
+	 */
+	public Simulation fork(SimParams params) {
+		if(scenario1 == null) {
+			throw new IllegalStateException("Only the standard pair of scenarios can be forked with new parameters");
+		}
+		return fork(new Scenario[] {
+			scenario1.fork(params.getTreatmentTime()),
+			scenario2.fork(params.getTestingTime(), params.getTreatmentTime(), params.getTriageThreshold())
+		});
+	}
+	
+	/**
+	 *  Creates a branch of this simulation with the given scenarios.
+	 *  
+	 *  @param branches the forked scenarios, in the same order
+	 *  @return the branch
+	 */
+	private Simulation fork(Scenario[] branches) {
+		Simulation sim = new Simulation(arrivals.fork(), java.util.List.of(branches));
+		sim.minute = minute;
+		sim.block = block;
+		sim.blockNext = blockNext;
+		if(scenario1 != null) {
+			sim.scenario1 = (TreatAll) branches[0];
+			sim.scenario2 = (TestAndTreat) branches[1];
+		}
+		return sim;
+	}
+	
+	/**
+	 *  Writes the simulation's state to a checkpoint.
+	 *  
+	 *  @param out where to write
+	 *  @throws java.io.IOException if the checkpoint cannot be written
+	 */
+	void writeTo(Checkpoint.Writer out) throws java.io.IOException {
+		out.putLong(minute);
+		arrivals.writeTo(out);
+		out.putBoolean(block != null);
+		if(block != null) {
+			block.writeTo(out);
+			out.putInt(blockNext);
+		}
+		out.putBoolean(scenario1 != null);
+		out.putInt(scenarios.length);
+		for(Scenario s : scenarios) {
+			Checkpoint.writeScenario(out, s);
+		}
+	}
+	
+	/**
+	 *  Reads a simulation written by {@link #writeTo}.
+	 *  
+	 *  @param in where to read from
+	 *  @return the simulation
+	 *  @throws java.io.IOException if the checkpoint is not valid
+	 */
+	static Simulation readFrom(Checkpoint.Reader in) throws java.io.IOException {
+		long minute = in.getLong();
+		ArrivalBlocks arrivals = ArrivalBlocks.readFrom(in);
+		ArrivalTrace block = null;
+		int blockNext = 0;
+		if(in.getBoolean()) {
+			block = ArrivalTrace.readFrom(in);
+			blockNext = in.getInt();
+		}
+		boolean pair = in.getBoolean();
+		Scenario[] scenarios = new Scenario[in.getCount()];
+		for(int i = 0; i < scenarios.length; i++) {
+			scenarios[i] = Checkpoint.readScenario(in);
+		}
+		
+		Simulation sim = new Simulation(arrivals, java.util.List.of(scenarios));
+		sim.minute = minute;
+		sim.block = block;
+		sim.blockNext = blockNext;
+		if(pair) {
+			sim.scenario1 = (TreatAll) scenarios[0];
+			sim.scenario2 = (TestAndTreat) scenarios[1];
+		}
+		return sim;
+	}
+	
+	/**
+	 *  Returns the number of people who have arrived so far. Everyone who
+	 *  arrived and is not yet safe or dead is waiting in each scenario.
+	 *  
+	 *  @return the number of arrivals
+	 */
+	public long getArrivals() {
+		return (block == null) ? 0 : block.getId(blockNext);
+	}
+	
+	/**
+	 *  Checks whether someone arrives in the current minute, moving on to the
+	 *  next block of arrivals when the current one is used up.
+	 *  
+	 *  @return whether someone arrived
+	 */
+	private boolean nextArrival() {
+		if(block == null || minute > block.getLastMinute()) {
+			block = arrivals.next();
+			blockNext = 0;
+		}
+		return blockNext < block.getSize() && block.getMinute(blockNext) == minute;
+	}
+	
+	/**
+	 *  Hands the person who just arrived to every scenario. A {@link Person}
+	 *  is only created here if the event sink wants arrivals; each scenario
+	 *  makes its own copy.
+	 */
+	private void addArrival() {
+		long id = block.getId(blockNext);
+		double testResult = block.getTestResult(blockNext);
+		int timeLeft = block.getTimeLeft(blockNext);
+		blockNext++;
+		if((eventMask & SimEventSink.ARRIVAL) != 0) events.arrival(minute, new Person(testResult, timeLeft, id));
+		FlightEvents.arrival(minute, id, timeLeft != Integer.MAX_VALUE);
+		for(Scenario s : scenarios) {
+			s.addArrival(id, testResult, timeLeft);
+		}
+	}
+	
+	/**
+	 *  Returns how many upcoming minutes all scenarios will stay quiet.
+	 *  
+	 *  @return the number of quiet minutes ahead
+	 */
+	private long getQuietMinutes() {
+		long quiet = Long.MAX_VALUE;
+		for(Scenario s : scenarios) {
+			quiet = Math.min(quiet, s.getQuietMinutes());
+		}
+		return quiet;
+	}
+	
+	/**
+	 *  Moves all scenarios over some quiet minutes.
+	 *  
+	 *  @param minutes the number of minutes to skip
+	 */
+	private void skip(long minutes) {
+		if(minutes > 0) {
+			for(Scenario s : scenarios) {
+				s.skip(minutes);
+			}
+		}
+	}
+	
+	/**
+	 *  Returns the scenarios being compared, in the order they were given.
+	 *  
+	 *  @return an unmodifiable list of the scenarios
+	 */
+	public java.util.List<Scenario> getScenarios() {
+		return java.util.List.of(scenarios);
+	}
+	
 	/**
 	 *  Allows the GUI access to scenario 1.
 	 *  
-	 *  @return scenario 1
+	 *  @return scenario 1, or null if the simulation was made from a list of scenarios
 	 */
 	public TreatAll getScenario1() {
 		return scenario1;
@@ -107,7 +615,7 @@ public final class Simulation {
 	/**
 	 *  Allows the GUI access to scenario 2.
 	 *  
-	 *  @return scenario 2
+	 *  @return scenario 2, or null if the simulation was made from a list of scenarios
 	 */
 	public TestAndTreat getScenario2() {
 		return scenario2;
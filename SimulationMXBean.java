@@ -0,0 +1,29 @@
+/**
+ * The management view of a running {@link Simulation}, published by
+ * {@link SimMonitor} for JConsole, JDK Mission Control or any other JMX
+ * client. Values are read while the simulation runs on its own thread, so
+ * they can be a moment out of date.
+ */
+public interface SimulationMXBean {
+    /**
+     * Returns the number of minutes simulated so far.
+     *
+     * @return the current minute
+     */
+    long getMinute();
+
+    /**
+     * Returns the number of minutes simulated per second of wall-clock time
+     * since this was last read, or since the simulation was published.
+     *
+     * @return the simulated minutes per second
+     */
+    double getMinutesPerSecond();
+
+    /**
+     * Returns the number of scenarios being compared.
+     *
+     * @return the number of scenarios
+     */
+    int getScenarioCount();
+}
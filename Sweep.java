@@ -0,0 +1,453 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ *  Runs replications of the simulation over many parameter points in
+ *  parallel, e.g. to find the testing time at which Test-and-Treat stops
+ *  beating Treat-All.
+ *
+ *  <p>Every (point, replication) pair is one job. Jobs are split up
+ *  recursively on a fork-join pool, so idle threads steal work from busy
+ *  ones. Each job's counters are appended to a CSV file as soon as it
+ *  finishes. When a sweep is restarted on the same file, jobs already in the
+ *  file are skipped. A row cut short by a crash is dropped from the file and
+ *  its job is run again. Replication {@code r} uses the same seed at every point,
+ *  so points are compared on the same random arrivals.
+ */
+public final class Sweep {
+
+	/**
+	 *  The parameter points to run.
+	 */
+	private final List<SimParams> points;
+
+	/**
+	 *  The number of minutes each replication runs for.
+	 */
+	private final long minutes;
+
+	/**
+	 *  The number of replications per point.
+	 */
+	private final int replications;
+
+	/**
+	 *  The seed the replication seeds are drawn from.
+	 */
+	private final long baseSeed;
+
+	/**
+	 *  The results, keyed by point, then by replication.
+	 */
+	private final Map<String, int[][]> results = new HashMap<>();
+
+	/**
+	 * Creates a sweep.
+	 *
+	 * @param points the parameter points to run
+	 * @param minutes the number of minutes each replication runs for
+	 * @param replications the number of replications per point
+	 * @param baseSeed the seed the replication seeds are drawn from
+	 */
+	public Sweep(List<SimParams> points, long minutes, int replications, long baseSeed) {
+		this.points = points;
+		this.minutes = minutes;
+		this.replications = replications;
+		this.baseSeed = baseSeed;
+	}
+
+	/**
+	 *  Builds every combination of the given values on top of a base point.
+	 *  The first axis changes slowest.
+	 *
+	 *  @param base the values of parameters not being swept
+	 *  @param axes the values to try for each swept parameter, by name
+	 *  @return the grid points
+	 */
+	public static List<SimParams> grid(SimParams base, Map<String, double[]> axes) {
+		List<SimParams> grid = new ArrayList<>();
+		grid.add(base);
+		for(Map.Entry<String, double[]> axis : axes.entrySet()) {
+			List<SimParams> next = new ArrayList<>();
+			for(SimParams p : grid) {
+				for(double value : axis.getValue()) {
+					next.add(p.with(axis.getKey(), value));
+				}
+			}
+			grid = next;
+		}
+		return grid;
+	}
+
+	/**
+	 *  Runs every job not already in the CSV file, appending each result to
+	 *  the file as it finishes.
+	 *
+	 *  @param csv the results file; created if it does not exist
+	 *  @param threads the number of threads to run jobs on
+	 *  @throws IOException if the file cannot be read or written
+	 *  @throws IllegalArgumentException if the file is from a sweep with a
+	 *          different run length or seed
+	 */
+	public void run(Path csv, int threads) throws IOException {
+		String settings = "# minutes=" + minutes + ",seed=" + baseSeed;
+		boolean exists = Files.exists(csv);
+		Set<String> done = exists ? load(csv, settings) : new HashSet<>();
+		if(exists) {
+			dropPartialLine(csv);
+		}
+
+		int[] seeds = Replications.seeds(baseSeed, replications);
+		List<long[]> jobs = new ArrayList<>();
+		for(int p = 0; p < points.size(); p++) {
+			for(int r = 0; r < replications; r++) {
+				if(!done.contains(points.get(p) + "," + r)) {
+					jobs.add(new long[] {p, r});
+				}
+			}
+		}
+
+		boolean fresh = !exists || Files.size(csv) == 0;
+		try(BufferedWriter out = Files.newBufferedWriter(csv, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+			if(fresh) {
+				out.write(settings);
+				out.newLine();
+				out.write(header());
+				out.newLine();
+				out.flush();
+			}
+			if(!jobs.isEmpty()) {
+				String name = SimMonitor.uniqueName("sweep");
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				try(SimMonitor monitor = SimMonitor.publishReplications(name, jobs.size(), minutes)) {
+					pool.invoke(new Jobs(jobs, 0, jobs.size(), seeds, out, name, monitor));
+				}
+				finally {
+					pool.shutdown();
+				}
+			}
+		}
+	}
+
+	/**
+	 *  Summarizes the results of every point run so far.
+	 *
+	 *  @return one line per point: the parameters, then the mean and 95%
+	 *          confidence interval of each counter
+	 */
+	public String summary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.join(",", SimParams.NAMES));
+		for(int s = 1; s <= Replications.NUM_SCENARIOS; s++) {
+			for(String metric : Replications.METRICS) {
+				sb.append(',').append(metric).append(s);
+			}
+		}
+		sb.append('\n');
+		for(SimParams point : points) {
+			int[][] reps = results.get(point.toString());
+			sb.append(point);
+			for(int m = 0; m < Replications.NUM_SCENARIOS * Replications.METRICS.length; m++) {
+				SampleStats stats = new SampleStats();
+				for(int r = 0; reps != null && r < reps.length; r++) {
+					if(reps[r] != null) stats.add(reps[r][m]);
+				}
+				sb.append(',').append(stats);
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 *  Returns the CSV header line.
+	 *
+	 *  @return the header
+	 */
+	private static String header() {
+		StringBuilder sb = new StringBuilder(String.join(",", SimParams.NAMES));
+		sb.append(",replication,seed");
+		for(int s = 1; s <= Replications.NUM_SCENARIOS; s++) {
+			for(String metric : Replications.METRICS) {
+				sb.append(',').append(metric).append(s);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 *  Reads the results of an earlier run of this sweep. Only lines ending
+	 *  in a newline are read, since a crash can leave the last one unfinished.
+	 *
+	 *  @param csv the results file
+	 *  @param settings the settings line this sweep writes
+	 *  @return the point and replication of every job already done
+	 *  @throws IOException if the file cannot be read
+	 */
+	private Set<String> load(Path csv, String settings) throws IOException {
+		Set<String> done = new HashSet<>();
+		int numParams = SimParams.NAMES.length;
+		String text = new String(Files.readAllBytes(csv), StandardCharsets.UTF_8);
+		text = text.substring(0, text.lastIndexOf('\n') + 1);
+		try(BufferedReader in = new BufferedReader(new StringReader(text))) {
+			String first = in.readLine();
+			if(first != null && !first.equals(settings)) {
+				throw new IllegalArgumentException(csv + " is from a different sweep: " + first);
+			}
+			in.readLine(); //header
+			for(String line = in.readLine(); line != null; line = in.readLine()) {
+				String[] cols = line.split(",");
+				if(cols.length != numParams + 2 + Replications.NUM_SCENARIOS * Replications.METRICS.length) {
+					continue; //not a row of this sweep
+				}
+				String point = String.join(",", java.util.Arrays.copyOf(cols, numParams));
+				int rep = Integer.parseInt(cols[numParams]);
+				int[] counters = new int[cols.length - numParams - 2];
+				for(int i = 0; i < counters.length; i++) {
+					counters[i] = Integer.parseInt(cols[numParams + 2 + i]);
+				}
+				if(rep < replications) {
+					record(point, rep, counters);
+					done.add(point + "," + rep);
+				}
+			}
+		}
+		return done;
+	}
+
+	/**
+	 *  Cuts the results file back to the end of its last complete line, so
+	 *  rows appended after a crash start on a line of their own. A file
+	 *  without both its settings and header lines is emptied, so they are
+	 *  written again.
+	 *
+	 *  @param csv the results file
+	 *  @throws IOException if the file cannot be read or written
+	 */
+	private static void dropPartialLine(Path csv) throws IOException {
+		try(FileChannel file = FileChannel.open(csv, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long size = file.size();
+			long end = 0;
+			int lines = 0;
+			ByteBuffer buf = ByteBuffer.allocate(8192);
+			for(long pos = 0; pos < size; ) {
+				buf.clear();
+				int n = file.read(buf, pos);
+				if(n < 0) {
+					break;
+				}
+				for(int i = 0; i < n; i++) {
+					if(buf.get(i) == '\n') {
+						lines++;
+						end = pos + i + 1;
+					}
+				}
+				pos += n;
+			}
+			if(lines < 2) {
+				end = 0;
+			}
+			if(end < size) {
+				file.truncate(end);
+			}
+		}
+	}
+
+	/**
+	 *  Keeps one job's result for the summary.
+	 *
+	 *  @param point the point, as text
+	 *  @param rep the replication
+	 *  @param counters the job's counters
+	 */
+	private synchronized void record(String point, int rep, int[] counters) {
+		results.computeIfAbsent(point, k -> new int[replications][])[rep] = counters;
+	}
+
+	/**
+	 *  A range of jobs, split in half until each piece is a single job.
+	 */
+	private final class Jobs extends RecursiveAction {
+		/**
+		 *  Serialization version.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 *  All jobs, as (point index, replication) pairs.
+		 */
+		private final List<long[]> jobs;
+
+		/**
+		 *  The first job in this range.
+		 */
+		private final int from;
+
+		/**
+		 *  One past the last job in this range.
+		 */
+		private final int to;
+
+		/**
+		 *  The seed of each replication.
+		 */
+		private final int[] seeds;
+
+		/**
+		 *  Where results are written.
+		 */
+		private final BufferedWriter out;
+
+		/**
+		 *  The name the sweep is published under.
+		 */
+		private final String name;
+
+		/**
+		 *  The monitor counting finished jobs.
+		 */
+		private final SimMonitor monitor;
+
+		/**
+		 * Creates a range of jobs.
+		 *
+		 * @param jobs all jobs
+		 * @param from the first job in this range
+		 * @param to one past the last job in this range
+		 * @param seeds the seed of each replication
+		 * @param out where results are written
+		 * @param name the name the sweep is published under
+		 * @param monitor the monitor counting finished jobs
+		 */
+		Jobs(List<long[]> jobs, int from, int to, int[] seeds, BufferedWriter out, String name, SimMonitor monitor) {
+			this.jobs = jobs;
+			this.from = from;
+			this.to = to;
+			this.seeds = seeds;
+			this.out = out;
+			this.name = name;
+			this.monitor = monitor;
+		}
+
+		/**
+		 *  Runs the job, or splits the range and runs both halves.
+		 */
+		@Override
+		protected void compute() {
+			if(to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Jobs(jobs, from, mid, seeds, out, name, monitor), new Jobs(jobs, mid, to, seeds, out, name, monitor));
+				return;
+			}
+
+			SimParams point = points.get((int) jobs.get(from)[0]);
+			int rep = (int) jobs.get(from)[1];
+			Simulation sim = new Simulation(seeds[rep], point, true, true);
+			int[] counters = Replications.runReplication(sim, minutes, name + " " + point + " #" + rep, monitor);
+			record(point.toString(), rep, counters);
+
+			StringBuilder row = new StringBuilder();
+			row.append(point).append(',').append(rep).append(',').append(seeds[rep]);
+			for(int c : counters) {
+				row.append(',').append(c);
+			}
+			synchronized(out) {
+				try {
+					out.write(row.toString());
+					out.newLine();
+					out.flush();
+				}
+				catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 *  Parses the values of one grid axis, either a comma-separated list or
+	 *  an inclusive range written {@code from:to:step}. Ranges are worked out
+	 *  in decimal, so {@code 0.1:0.5:0.1} gives 0.3 rather than
+	 *  0.30000000000000004 and the points match when a sweep is resumed.
+	 *
+	 *  @param spec the values
+	 *  @return the values
+	 */
+	static double[] parseAxis(String spec) {
+		if(spec.contains(":")) {
+			String[] r = spec.split(":");
+			BigDecimal from = new BigDecimal(r[0]), to = new BigDecimal(r[1]), step = new BigDecimal(r[2]);
+			int n = to.subtract(from).divide(step, 0, RoundingMode.FLOOR).intValueExact() + 1;
+			double[] values = new double[n];
+			for(int i = 0; i < n; i++) {
+				values[i] = from.add(step.multiply(BigDecimal.valueOf(i))).doubleValue();
+			}
+			return values;
+		}
+		String[] parts = spec.split(",");
+		double[] values = new double[parts.length];
+		for(int i = 0; i < parts.length; i++) {
+			values[i] = Double.parseDouble(parts[i]);
+		}
+		return values;
+	}
+
+	/**
+	 * Main method that runs a sweep from the command line.
+	 * @param args the output file, run settings, then one {@code name=values} per swept parameter
+	 */
+	public static void main(String[] args) {
+		String usageMsg = "Usage: java Sweep [out.csv] [minutes] [replications] [seed] [threads] [name=v1,v2,...|name=from:to:step]...";
+
+		try {
+			if(args.length < 5) {
+				System.out.println(usageMsg);
+				return;
+			}
+			Path csv = Paths.get(args[0]);
+			long minutes = Long.parseLong(args[1]);
+			int replications = Integer.parseInt(args[2]);
+			long seed = Long.parseLong(args[3]);
+			int threads = Integer.parseInt(args[4]);
+
+			Map<String, double[]> axes = new LinkedHashMap<>();
+			for(int i = 5; i < args.length; i++) {
+				String[] nameValues = args[i].split("=", 2);
+				SimParams.defaults().get(nameValues[0]); //check the name
+				axes.put(nameValues[0], parseAxis(nameValues[1]));
+			}
+
+			Sweep sweep = new Sweep(grid(SimParams.defaults(), axes), minutes, replications, seed);
+			sweep.run(csv, threads);
+			System.out.print(sweep.summary());
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+		}
+		catch(RuntimeException e) {
+			e.printStackTrace();
+			System.err.println(usageMsg);
+		}
+	}
+}
@@ -4,12 +4,20 @@
  * for how likely they are being infected with the microbe. Based on the test result, they are 
  * either placed into a priority treatment line or marked as safe. This class extends the 
  * `TreatAll` class.
+ *
+ * <p>The priority treatment line is kept in a {@link PriorityLine} ordered by
+ * {@link Person#compareTo}, rather than in the inherited {@code treatmentLine}.
  */
 class TestAndTreat extends TreatAll {
     /**
      * The time required to administer a test.
      */
-    private final int testingTime;
+    protected final int testingTime;
+
+    /**
+     * The test result at or above which a person is sent to treatment.
+     */
+    protected final double triageThreshold;
 
     /**
      * The line for testing, where people wait to be tested.
@@ -19,7 +27,35 @@ class TestAndTreat extends TreatAll {
     /**
      * The time remaining for the current test in minutes.
      */
-    private int currentTestingTime = 0;
+    protected int currentTestingTime = 0;
+
+    /**
+     * The priority line for treatment, highest test result at the front.
+     */
+    private PriorityLine<Person> treatmentQueue = new PriorityLine<>();
+
+    /**
+     * Whether {@code treatmentLine} needs rebuilding from {@code treatmentQueue}
+     * before it is handed to the GUI.
+     */
+    private boolean treatmentLineStale = false;
+
+    /**
+     * The number of people who have died but are still physically in
+     * {@code testingLine} (deadline mode only).
+     */
+    private int deadInTestingLine = 0;
+
+    /**
+     * How long each person tested was in the testing line, from arriving
+     * until their test result.
+     */
+    private final LogHistogram testingWaits = new LogHistogram();
+
+    /**
+     * The number of minutes someone was being tested.
+     */
+    protected long testingMinutes = 0;
 
     /**
      * Constructs a TestAndTreat scenario with the specified testing and treatment times.
@@ -28,8 +64,36 @@ class TestAndTreat extends TreatAll {
      * @param treatmentTime the time required to administer a treatment regimen
      */
     public TestAndTreat(int testingTime, int treatmentTime) {
-        super(treatmentTime);
+        this(testingTime, treatmentTime, false);
+    }
+
+    /**
+     * Constructs a TestAndTreat scenario with the specified testing and treatment
+     * times, optionally expiring people by absolute deadline.
+     * 
+     * @param testingTime the time required to administer a test
+     * @param treatmentTime the time required to administer a treatment regimen
+     * @param expireByDeadline whether to expire people by deadline instead of
+     *                         ticking everyone in line every minute
+     */
+    public TestAndTreat(int testingTime, int treatmentTime, boolean expireByDeadline) {
+        this(testingTime, treatmentTime, SimParams.DEFAULT_TRIAGE_THRESHOLD, expireByDeadline);
+    }
+
+    /**
+     * Constructs a TestAndTreat scenario with the specified testing and treatment
+     * times and triage threshold, optionally expiring people by absolute deadline.
+     * 
+     * @param testingTime the time required to administer a test
+     * @param treatmentTime the time required to administer a treatment regimen
+     * @param triageThreshold the test result at or above which a person is sent to treatment
+     * @param expireByDeadline whether to expire people by deadline instead of
+     *                         ticking everyone in line every minute
+     */
+    public TestAndTreat(int testingTime, int treatmentTime, double triageThreshold, boolean expireByDeadline) {
+        super(treatmentTime, expireByDeadline);
         this.testingTime = testingTime;
+        this.triageThreshold = triageThreshold;
     }
 
     /**
@@ -38,9 +102,77 @@ class TestAndTreat extends TreatAll {
      * @return the line of people waiting for testing
      */
     public Line<Person> getTestingLine() {
+        if (deadInTestingLine > 0) {
+            testingLine.removeIf(Person::isDead);
+            deadInTestingLine = 0;
+        }
         return testingLine;
     }
 
+    /**
+     * Returns the front of the testing line for the GUI, without clearing
+     * the dead out of the rest of it.
+     *
+     * @param limit the most people to return
+     * @return the first living people waiting for testing, front first
+     */
+    public Line<Person> getTestingLine(int limit) {
+        Line<Person> front = new Line<>();
+        for (int i = 0; i < testingLine.getSize() && front.getSize() < limit; i++) {
+            Person p = testingLine.get(i);
+            if (!p.isDead()) {
+                front.add(p, front.getSize());
+            }
+        }
+        return front;
+    }
+
+    /**
+     * Returns the number of living people in the testing line.
+     *
+     * @return the number of people waiting to be tested
+     */
+    private int getTestingPending() {
+        return testingLine.getSize() - deadInTestingLine;
+    }
+
+    /**
+     * Returns the treatment line, in priority order, for the GUI. The ordered
+     * view is only rebuilt from the priority line when it is asked for.
+     *
+     * @return the line of people waiting for treatment
+     */
+    @Override
+    public Line<Person> getTreatmentLine() {
+        if (treatmentLineStale) {
+            treatmentLine = treatmentQueue.toLine();
+            treatmentLineStale = false;
+        }
+        return treatmentLine;
+    }
+
+    /**
+     * Returns the front of the treatment line, in priority order, for the
+     * GUI. Only the people returned are put in order, not the whole line.
+     *
+     * @param limit the most people to return
+     * @return the first people waiting for treatment, front first
+     */
+    @Override
+    public Line<Person> getTreatmentLine(int limit) {
+        return treatmentQueue.firstInOrder(limit);
+    }
+
+    /**
+     * Returns the number of people currently waiting in the treatment line.
+     *
+     * @return the number of people in the treatment line
+     */
+    @Override
+    public int getPending() {
+        return treatmentQueue.getSize();
+    }
+
     /**
      * Adds a person to the testing line. If they are the only person in line,
      * they will start being tested immediately.
@@ -50,56 +182,96 @@ class TestAndTreat extends TreatAll {
     @Override
     public void addPerson(Person p) {
         // Add a person to the back of the testing line
+        p.arrive(clock);
         testingLine.add(p, testingLine.getSize());
+        startDeadline(p);
 
         // If they are the only person in the testing line, start testing
-        if (testingLine.getSize() == 1) {
+        if (getTestingPending() == 1) {
             currentTestingTime = testingTime;
         }
     }
 
     /**
-     * Advances the simulation by one minute. This method handles the testing process,
+     * Does the work of one minute. This method handles the testing process,
      * moves people to the treatment line based on their test results, and manages 
      * the treatment process inherited from TreatAll.
      */
     @Override
-    public void tick() {
+    protected void processMinute() {
         
-        if (testingLine.getSize() > 0) {
+        if (getTestingPending() > 0) {
+            testingMinutes++;
             currentTestingTime--;
 
             
-            if (currentTestingTime <= 0 && testingLine.getSize() > 0) {
+            if (currentTestingTime <= 0 && getTestingPending() > 0) {
+                // Dead people are left in line in deadline mode; skip past them
+                while (testingLine.get(0).isDead()) {
+                    testingLine.remove(0);
+                    deadInTestingLine--;
+                }
                 Person testedPerson = testingLine.remove(0);
+                boolean needsTreatment = testedPerson.getTestResult() >= triageThreshold;
+                recordTest(testedPerson.getId(), testedPerson.getArrived(), needsTreatment);
+                if (wants(SimEventSink.TEST_RESULT)) {
+                    events.testResult(scenarioNum, clock, testedPerson, needsTreatment);
+                }
 
                 // Determine if they need treatment
-                if (testedPerson.getTestResult() >= 0.4) {
+                if (needsTreatment) {
                     // Add them to the treatment line based on priority
                     addToTreatmentLine(testedPerson);
                 } else {
+                    testedPerson.clearDeadline();
                     numSafe++;
                 }
 
                 // If there are more people in the testing line, start testing the next person
-                if (testingLine.getSize() > 0) {
+                if (getTestingPending() > 0) {
                     currentTestingTime = testingTime;
                 }
             }
         }
 
-        for (int i = 0; i < testingLine.getSize(); i++) {
-            Person person = testingLine.get(i);
-            person.tick(); // Reduce their time left
-            if (person.isDead()) {
-                // Remove the person if they die while in the testing line
-                testingLine.remove(i);
-                numDeaths++;
-                i--;
-            }
+        // Reduce everyone's time left and remove anyone who died while in the testing line
+        // (in deadline mode, both lines are expired together by super.processMinute())
+        if (deadlines == null) {
+            numDeaths += testingLine.removeIf(deathSweep());
         }
 
-        super.tick();
+        super.processMinute();
+    }
+
+    /**
+     * Returns how many upcoming minutes are quiet, also accounting for the
+     * test currently being administered.
+     * 
+     * @return the number of quiet minutes ahead
+     */
+    @Override
+    public long getQuietMinutes() {
+        long quiet = super.getQuietMinutes();
+        if (quiet > 0 && getTestingPending() > 0) {
+            // In tick mode, the people waiting to be tested are ticked every minute
+            quiet = (deadlines == null) ? 0 : Math.max(Math.min(quiet, currentTestingTime - 1), 0);
+        }
+        return quiet;
+    }
+
+    /**
+     * Moves time forward over quiet minutes, advancing the testing countdown
+     * as well as the treatment countdown.
+     * 
+     * @param minutes the number of minutes to skip, at most {@link #getQuietMinutes()}
+     */
+    @Override
+    public void skip(long minutes) {
+        if (getTestingPending() > 0) {
+            currentTestingTime -= (int) minutes;
+            testingMinutes += minutes;
+        }
+        super.skip(minutes);
     }
 
     /**
@@ -109,24 +281,258 @@ class TestAndTreat extends TreatAll {
      * @param person the person to add to the treatment line
      */
     private void addToTreatmentLine(Person person) {
-        int insertIndex = 0;
-        // Find the correct position to insert based on the test result (priority queue)
-        for (int i = 0; i < treatmentLine.getSize(); i++) {
-            if (treatmentLine.get(i).getTestResult() < person.getTestResult()) {
-                break;
-            } else {
-                insertIndex++;
-            }
-        }
-        // Insert the person into the treatment line at the calculated position
-        treatmentLine.add(person, insertIndex);
+        // Insert the person into the priority line
+        person.joinLine(clock);
+        treatmentQueue.add(person);
+        treatmentLineStale = true;
         
-        // If this person is the only one in the treatment line or moves to the front of the line, start treatment
-        if (insertIndex == 0 && treatmentLine.getSize() == 1) {
+        // If this person is the only one in the treatment line, start treatment
+        if (treatmentQueue.getSize() == 1) {
             currentTreatmentTime = treatmentTime;
+            if (wants(SimEventSink.TREATMENT_START)) {
+                events.treatmentStart(scenarioNum, clock, person);
+            }
+        }
+    }
+
+    /**
+     * Records a test whose result just came in, and emits it to the flight
+     * recorder if a recording wants it.
+     *
+     * @param id the ID of the person tested
+     * @param arrived the time the person tested arrived
+     * @param needsTreatment whether the result sends them on for treatment
+     */
+    protected void recordTest(long id, long arrived, boolean needsTreatment) {
+        testingWaits.record(clock - arrived);
+        FlightEvents.testResult(scenarioNum, clock, id, clock - arrived, needsTreatment);
+    }
+
+    /**
+     * Returns how long the people tested were in the testing line, from
+     * arriving until their test result, in minutes. The histogram keeps
+     * being updated as the scenario runs.
+     *
+     * @return the testing line times
+     */
+    public LogHistogram getTestingWaits() {
+        return testingWaits;
+    }
+
+    /**
+     * Returns the number of minutes someone was being tested, which over
+     * the minutes run is how busy testing was.
+     *
+     * @return the minutes spent testing
+     */
+    public long getTestingMinutes() {
+        return testingMinutes;
+    }
+
+    /**
+     * Adds the testing line and the time spent testing to the state
+     * {@code TreatAll} reports.
+     *
+     * @param values where to put each channel's value
+     */
+    @Override
+    protected void sampleMetrics(long[] values) {
+        super.sampleMetrics(values);
+        values[Timeline.TESTING_LINE] = getTestingPending();
+        values[Timeline.TESTING] = testingMinutes;
+    }
+
+    /**
+     * Ticks everyone waiting for treatment and removes anyone who has died
+     * from the priority line, counting them in {@code numDeaths}. In deadline
+     * mode, this expires people from both the testing and treatment lines.
+     */
+    @Override
+    protected void removeDeadFromTreatment() {
+        if (deadlines != null) {
+            expireDeadlines();
+            return;
+        }
+
+        // Reduce everyone's time left and drop the dead in one pass
+        int died = treatmentQueue.removeIf(deathSweep());
+        if (died > 0) {
+            numDeaths += died;
+            treatmentLineStale = true;
         }
     }
 
+    /**
+     * Returns the highest priority person in the treatment line.
+     *
+     * @return the person being treated
+     */
+    @Override
+    protected Person peekTreatment() {
+        return treatmentQueue.peek();
+    }
+
+    /**
+     * Removes the highest priority person from the treatment line once
+     * their treatment is complete.
+     *
+     * @return the person treated
+     */
+    @Override
+    protected Person finishTreatment() {
+        Person treated = treatmentQueue.poll();
+        treated.clearDeadline();
+        treatmentLineStale = true;
+        return treated;
+    }
+
+    /**
+     * Takes a person who just died by deadline out of their line. People in
+     * the priority line are removed right away using their heap slot; the
+     * testing line is only cleaned up lazily, unless everyone in it is dead.
+     *
+     * @param p the person who died
+     */
+    @Override
+    protected void removeExpired(Person p) {
+        if (treatmentQueue.remove(p)) {
+            treatmentLineStale = true;
+            return;
+        }
+        deadInTestingLine++;
+        if (deadInTestingLine == testingLine.getSize()) {
+            testingLine.removeIf(Person::isDead);
+            deadInTestingLine = 0;
+        }
+    }
+
+    /**
+     * Writes the testing countdown, the testing histogram and both lines to
+     * a checkpoint after the state kept by {@code TreatAll}. The priority
+     * line is written in heap order, so it is rebuilt exactly as it was.
+     *
+     * @param out where to write
+     * @throws java.io.IOException if the checkpoint cannot be written
+     */
+    @Override
+    protected void writeState(Checkpoint.Writer out) throws java.io.IOException {
+        super.writeState(out);
+        out.putInt(currentTestingTime);
+        out.putInt(deadInTestingLine);
+        out.putLong(testingMinutes);
+        testingWaits.writeTo(out);
+        out.putInt(testingLine.getSize());
+        for (int i = 0; i < testingLine.getSize(); i++) {
+            out.putPerson(testingLine.get(i));
+        }
+        out.putInt(treatmentQueue.getSize());
+        for (int i = 0; i < treatmentQueue.getSize(); i++) {
+            out.putPerson(treatmentQueue.get(i));
+        }
+    }
+
+    /**
+     * Reads the state written by {@link #writeState}.
+     *
+     * @param in where to read from
+     */
+    @Override
+    protected void readState(Checkpoint.Reader in) {
+        super.readState(in);
+        currentTestingTime = in.getInt();
+        deadInTestingLine = in.getInt();
+        testingMinutes = in.getLong();
+        testingWaits.readFrom(in);
+        testingLine = new Line<>();
+        for (int i = in.getCount(); i > 0; i--) {
+            testingLine.add(in.getPerson(), testingLine.getSize());
+        }
+        // Adding in heap order never moves anyone, so the heap comes back as it was
+        treatmentQueue = new PriorityLine<>();
+        for (int i = in.getCount(); i > 0; i--) {
+            treatmentQueue.add(in.getPerson());
+        }
+        treatmentLineStale = true;
+    }
+
+    /**
+     * Creates a branch of this scenario with the same settings.
+     *
+     * @return the branch
+     * @see Scenario#fork()
+     */
+    @Override
+    public TestAndTreat fork() {
+        return fork(testingTime, treatmentTime, triageThreshold);
+    }
+
+    /**
+     * Creates a branch of this scenario with a different treatment time.
+     *
+     * @param treatmentTime the branch's treatment time
+     * @return the branch
+     */
+    @Override
+    public TestAndTreat fork(int treatmentTime) {
+        return fork(testingTime, treatmentTime, triageThreshold);
+    }
+
+    /**
+     * Creates a branch of this scenario that uses the given settings from now
+     * on. A test or treatment already under way keeps its countdown, and the
+     * new threshold applies to people tested after the fork. Every
+     * {@link Person} is copied, since people change as they wait.
+     *
+     * @param testingTime the branch's testing time
+     * @param treatmentTime the branch's treatment time
+     * @param triageThreshold the branch's triage threshold
+     * @return the branch
+     * @throws UnsupportedOperationException if this is a subclass that cannot be forked
+     */
+    public TestAndTreat fork(int testingTime, int treatmentTime, double triageThreshold) {
+        requireForkable(TestAndTreat.class);
+        TestAndTreat branch = new TestAndTreat(testingTime, treatmentTime, triageThreshold, deadlines != null);
+        branch.copyState(this, new java.util.IdentityHashMap<>(countEntries()));
+        return branch;
+    }
+
+    /**
+     * Copies the testing countdown, the testing histogram and both lines of
+     * another scenario into this one after the state kept by {@code TreatAll}.
+     *
+     * @param from the scenario to copy
+     * @param copies the copy made so far of each person
+     */
+    @Override
+    protected void copyState(Scenario from, java.util.Map<Person, Person> copies) {
+        super.copyState(from, copies);
+        TestAndTreat other = (TestAndTreat) from;
+        currentTestingTime = other.currentTestingTime;
+        deadInTestingLine = other.deadInTestingLine;
+        testingMinutes = other.testingMinutes;
+        testingWaits.copyFrom(other.testingWaits);
+        testingLine = new Line<>();
+        for (int i = 0; i < other.testingLine.getSize(); i++) {
+            testingLine.add(copyOf(other.testingLine.get(i), copies), testingLine.getSize());
+        }
+        // Adding in heap order never moves anyone, so the heap is copied as it is
+        treatmentQueue = new PriorityLine<>();
+        for (int i = 0; i < other.treatmentQueue.getSize(); i++) {
+            treatmentQueue.add(copyOf(other.treatmentQueue.get(i), copies));
+        }
+        treatmentLineStale = true;
+    }
+
+    /**
+     * Returns the number of places people are kept in, including both lines.
+     *
+     * @return the number of line and deadline entries
+     */
+    @Override
+    protected int countEntries() {
+        return super.countEntries() + testingLine.getSize() + treatmentQueue.getSize();
+    }
+
     /**
      * Returns a string representation of the scenario, indicating the time until the 
      * next test is available and the number of minutes until the doctor is free.
@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An event sink that writes one line of text per event.
+ *
+ * <p>In synchronous mode each line is written and flushed as it happens,
+ * like the console output the simulation has always had. In asynchronous
+ * mode lines are collected into large chunks and a background thread does
+ * the writing, so the simulation only pays for formatting the text.
+ * {@link #close()} must be called to write out the last chunk.
+ */
+class TextEventSink implements SimEventSink {
+    /**
+     * The size, in characters, at which a chunk is handed to the writer thread.
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /**
+     * The number of chunks that may wait for the writer thread before the
+     * simulation has to wait for it.
+     */
+    private static final int MAX_PENDING_CHUNKS = 16;
+
+    /**
+     * A chunk that tells the writer thread to stop.
+     */
+    private static final String END = new String("END");
+
+    /**
+     * Where the text goes.
+     */
+    private final Writer out;
+
+    /**
+     * The events this sink writes.
+     */
+    private final int events;
+
+    /**
+     * The text not yet written.
+     */
+    private final StringBuilder buffer = new StringBuilder();
+
+    /**
+     * Chunks waiting for the writer thread, or {@code null} in synchronous mode.
+     */
+    private final BlockingQueue<String> chunks;
+
+    /**
+     * The background writer thread, or {@code null} in synchronous mode.
+     */
+    private final Thread writer;
+
+    /**
+     * The first error the writer thread hit, reported on the next event.
+     */
+    private volatile IOException error;
+
+    /**
+     * Creates a text sink.
+     *
+     * @param out where to write the text
+     * @param events the events to write, as a mask of the {@link SimEventSink} bits
+     * @param async whether to write on a background thread
+     */
+    public TextEventSink(Writer out, int events, boolean async) {
+        this.out = out;
+        this.events = events;
+        if (async) {
+            chunks = new ArrayBlockingQueue<>(MAX_PENDING_CHUNKS);
+            writer = new Thread(this::writeChunks, "TextEventSink writer");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            chunks = null;
+            writer = null;
+        }
+    }
+
+    /**
+     * Creates a synchronous sink that writes the steps and arrivals to
+     * standard output, which is what the simulation logs by default.
+     *
+     * @return the console sink
+     */
+    public static TextEventSink console() {
+        return new TextEventSink(new java.io.OutputStreamWriter(System.out), STEP | ARRIVAL, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEvents() {
+        return events;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void step(long minute) {
+        buffer.append("Step");
+        endLine();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void arrival(long minute, Person p) {
+        buffer.append("Person arrived: ").append(p);
+        endLine();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void testResult(int scenario, long minute, Person p, boolean needsTreatment) {
+        buffer.append("Scenario ").append(scenario).append(": Person tested: ").append(p)
+              .append(needsTreatment ? ", needs treatment" : ", safe");
+        endLine();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void treatmentStart(int scenario, long minute, Person p) {
+        buffer.append("Scenario ").append(scenario).append(": Treatment started: ").append(p);
+        endLine();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void treatmentFinish(int scenario, long minute, Person p) {
+        buffer.append("Scenario ").append(scenario).append(": Treatment finished: ").append(p);
+        endLine();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void death(int scenario, long minute, Person p) {
+        buffer.append("Scenario ").append(scenario).append(": Person died: ").append(p);
+        endLine();
+    }
+
+    /**
+     * Writes out anything still buffered, waits for the writer thread to
+     * finish and flushes the output. The output itself is not closed.
+     */
+    @Override
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        handOff();
+        try {
+            chunks.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkError();
+    }
+
+    /**
+     * Finishes the current line, writing it right away in synchronous mode
+     * or handing off the chunk once it is big enough in asynchronous mode.
+     */
+    private void endLine() {
+        buffer.append(System.lineSeparator());
+        if (writer == null) {
+            try {
+                out.append(buffer);
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.setLength(0);
+        } else if (buffer.length() >= CHUNK_SIZE) {
+            handOff();
+        }
+    }
+
+    /**
+     * Hands the buffered text to the writer thread, waiting if it has fallen
+     * too far behind.
+     */
+    private void handOff() {
+        checkError();
+        if (buffer.length() == 0) {
+            return;
+        }
+        try {
+            chunks.put(buffer.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        buffer.setLength(0);
+    }
+
+    /**
+     * Rethrows an error the writer thread hit.
+     */
+    private void checkError() {
+        if (error != null) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    /**
+     * The writer thread: writes chunks until told to stop.
+     */
+    private void writeChunks() {
+        try {
+            for (String chunk = chunks.take(); chunk != END; chunk = chunks.take()) {
+                if (error == null) {
+                    try {
+                        out.write(chunk);
+                    } catch (IOException e) {
+                        error = e;
+                    }
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,720 @@
+/**
+ * A scenario's state minute by minute, in fixed memory however long it
+ * runs: how many are pending and in the testing line, and how many were made
+ * safe, died, were being treated and were being tested each minute.
+ *
+ * <p>The history is kept at several levels, each a ring of the same number
+ * of buckets. Level 0 keeps one bucket per minute, and each level above keeps
+ * buckets {@code factor} times as long, holding the min, max and mean of
+ * every minute in them. Each level is fed the buckets the level below
+ * finishes, so most minutes touch only the first two levels, and once a
+ * level's ring is full its oldest bucket is dropped while the same minutes
+ * are still there, more coarsely, in the levels above. The defaults
+ * (256 buckets, factor 16, 6 levels) keep about 268 million minutes in all,
+ * in 230KB.
+ *
+ * <p>The sums of the last {@code window} minutes are also kept, updated as
+ * each minute comes in rather than added up when asked for, so rates such as
+ * deaths per 1,000 minutes cost nothing to read. Level 0 keeps at least the
+ * window's minutes, so the minute leaving the window is always there to be
+ * taken off.
+ *
+ * <p>A timeline is attached to one scenario with
+ * {@link Scenario#setTimeline}, which records into it at the end of every
+ * minute; minutes skipped in one go are recorded in one go as well.
+ */
+final class Timeline {
+    /**
+     * The channel for the number of people pending, as
+     * {@link Scenario#getPending()} reports them.
+     */
+    static final int PENDING = 0;
+
+    /**
+     * The channel for the number of people waiting to be tested.
+     */
+    static final int TESTING_LINE = 1;
+
+    /**
+     * The channel for the number of people made safe each minute.
+     */
+    static final int SAFE = 2;
+
+    /**
+     * The channel for the number of people who died each minute.
+     */
+    static final int DEATHS = 3;
+
+    /**
+     * The channel for whether someone was being treated each minute (1 or 0),
+     * whose mean is how busy treatment was.
+     */
+    static final int TREATING = 4;
+
+    /**
+     * The channel for whether someone was being tested each minute (1 or 0),
+     * whose mean is how busy testing was.
+     */
+    static final int TESTING = 5;
+
+    /**
+     * The number of channels.
+     */
+    static final int CHANNELS = 6;
+
+    /**
+     * The name of each channel, for reports.
+     */
+    private static final String[] NAMES = {
+        "pending", "testing line", "safe", "deaths", "treating", "testing"
+    };
+
+    /**
+     * Which channels the scenario reports as running totals, recorded here
+     * as the change each minute.
+     */
+    private static final boolean[] TOTALS = {false, false, true, true, true, true};
+
+    /**
+     * The number of buckets kept at each level above level 0.
+     */
+    private final int capacity;
+
+    /**
+     * The number of minutes kept at level 0: the capacity, or the window if
+     * that is longer.
+     */
+    private final int recent;
+
+    /**
+     * How many of a level's buckets make one bucket of the level above.
+     */
+    private final int factor;
+
+    /**
+     * The number of minutes in a bucket at each level.
+     */
+    private final long[] span;
+
+    /**
+     * The smallest value in each bucket at each level, indexed by
+     * {@code slot * CHANNELS + channel}. Level 0's buckets are single
+     * minutes, so its three arrays are the same array.
+     */
+    private final long[][] mins;
+
+    /**
+     * The largest value in each bucket at each level.
+     */
+    private final long[][] maxs;
+
+    /**
+     * The sum of the values in each bucket at each level.
+     */
+    private final long[][] sums;
+
+    /**
+     * The number of buckets finished at each level; bucket {@code b} is kept
+     * in slot {@code b % size(level)}, or would be if it were not dropped.
+     */
+    private final long[] finished;
+
+    /**
+     * The slot each level's next finished bucket goes in.
+     */
+    private final int[] next;
+
+    /**
+     * The number of the latest minutes at level 0 not yet added to the
+     * bucket being filled at level 1. Each minute only goes into level 0,
+     * and level 1 takes them all at once when its bucket is full or before
+     * minutes are recorded in bulk.
+     */
+    private int unmerged;
+
+    /**
+     * The number of the level below's buckets in the bucket being filled at
+     * each level.
+     */
+    private final int[] filled;
+
+    /**
+     * The smallest value in the bucket being filled, indexed by
+     * {@code level * CHANNELS + channel}.
+     */
+    private final long[] openMin;
+
+    /**
+     * The largest value in the bucket being filled.
+     */
+    private final long[] openMax;
+
+    /**
+     * The sum of the values in the bucket being filled.
+     */
+    private final long[] openSum;
+
+    /**
+     * The sum of each channel over the last {@code window} minutes.
+     */
+    private final long[] windowSums = new long[CHANNELS];
+
+    /**
+     * The number of minutes the sliding window covers.
+     */
+    private final int window;
+
+    /**
+     * The number of minutes recorded.
+     */
+    private long minutes;
+
+    /**
+     * The scenario's clock at the first minute recorded.
+     */
+    private long first;
+
+    /**
+     * The values of the last minute recorded.
+     */
+    private final long[] latest = new long[CHANNELS];
+
+    /**
+     * The scenario's running totals when it last recorded.
+     */
+    private final long[] totals = new long[CHANNELS];
+
+    /**
+     * Where the scenario puts its state each minute.
+     */
+    private final long[] sample = new long[CHANNELS];
+
+    /**
+     * Whether the timeline has been attached to a scenario.
+     */
+    private boolean attached;
+
+    /**
+     * Creates a timeline with 256 buckets at each of 6 levels, each level's
+     * buckets 16 times as long as the last, and a 1,000 minute window (so
+     * level 0 keeps the last 1,000 minutes).
+     */
+    Timeline() {
+        this(256, 16, 6, 1000);
+    }
+
+    /**
+     * Creates a timeline of the given shape.
+     *
+     * @param capacity the number of buckets kept at each level, though
+     *                 level 0 keeps at least {@code window}
+     * @param factor how many times as long each level's buckets are as the
+     *               level below's
+     * @param levels the number of levels, the first of which has one
+     *               bucket per minute
+     * @param window the number of minutes the sliding sums cover
+     * @throws IllegalArgumentException if any argument is less than 1, or
+     *                                  there is more than one level and the
+     *                                  factor is 1 or more than the capacity
+     */
+    Timeline(int capacity, int factor, int levels, int window) {
+        if (capacity < 1 || factor < 1 || levels < 1 || window < 1 || (levels > 1 && (factor == 1 || factor > capacity))) {
+            throw new IllegalArgumentException("Bad timeline shape " + capacity + " x " + factor
+                                               + "^" + levels + ", window " + window);
+        }
+        this.capacity = capacity;
+        this.factor = factor;
+        this.window = window;
+        recent = Math.max(capacity, window);
+        span = new long[levels];
+        mins = new long[levels][];
+        maxs = new long[levels][];
+        sums = new long[levels][];
+        mins[0] = new long[recent * CHANNELS];
+        maxs[0] = mins[0];
+        sums[0] = mins[0];
+        for (int level = 1; level < levels; level++) {
+            mins[level] = new long[capacity * CHANNELS];
+            maxs[level] = new long[capacity * CHANNELS];
+            sums[level] = new long[capacity * CHANNELS];
+        }
+        finished = new long[levels];
+        next = new int[levels];
+        filled = new int[levels];
+        openMin = new long[levels * CHANNELS];
+        openMax = new long[levels * CHANNELS];
+        openSum = new long[levels * CHANNELS];
+        long minutesPerBucket = 1;
+        for (int level = 0; level < levels; level++) {
+            span[level] = minutesPerBucket;
+            minutesPerBucket = Math.multiplyExact(minutesPerBucket, factor);
+        }
+    }
+
+    /**
+     * Takes the scenario's running totals as they are now, so its first
+     * minute is recorded as the change from here.
+     *
+     * @param scenario the scenario being attached to
+     * @throws IllegalStateException if the timeline is already attached
+     */
+    void attach(Scenario scenario) {
+        if (attached) {
+            throw new IllegalStateException("Timeline is already attached to a scenario");
+        }
+        attached = true;
+        scenario.sampleMetrics(sample);
+        System.arraycopy(sample, 0, totals, 0, CHANNELS);
+    }
+
+    /**
+     * Records the scenario's state over the minutes just simulated. When
+     * more than one minute went by, the minutes were quiet: the lines stayed
+     * the same and the running totals went up by the same amount each minute.
+     *
+     * @param scenario the scenario
+     * @param clock the scenario's clock at the last of the minutes
+     * @param count the number of minutes simulated
+     */
+    void record(Scenario scenario, long clock, long count) {
+        if (count <= 0) {
+            return;
+        }
+        if (minutes == 0) {
+            first = clock - count + 1;
+        }
+        scenario.sampleMetrics(sample);
+        for (int c = 0; c < CHANNELS; c++) {
+            long value = sample[c];
+            if (TOTALS[c]) {
+                value = sample[c] - totals[c];
+                if (count > 1) {
+                    value /= count;
+                }
+                totals[c] = sample[c];
+            }
+            latest[c] = value;
+        }
+        minutes += count;
+
+        if (count == 1) {
+            int slot = nextSlot(0);
+            slide(slot, minutes > window);
+            for (int c = 0; c < CHANNELS; c++) {
+                mins[0][slot + c] = latest[c];
+            }
+            if (span.length > 1 && filled[1] + ++unmerged == factor) {
+                mergeMinutes();
+            }
+        } else {
+            addMinutes(count);
+        }
+    }
+
+    /**
+     * Adds a number of quiet minutes of the latest values.
+     *
+     * @param count the number of minutes, more than 1
+     */
+    private void addMinutes(long count) {
+        // Level 1 must catch up before its minutes are overwritten
+        mergeMinutes();
+        if (count < window) {
+            long before = minutes - count;
+            for (long i = 1; i <= count; i++) {
+                int slot = nextSlot(0);
+                slide(slot, before + i > window);
+                for (int c = 0; c < CHANNELS; c++) {
+                    mins[0][slot + c] = latest[c];
+                }
+            }
+        } else {
+            // The whole window is these minutes, and only the last few are kept
+            passOver(0, count - recent);
+            for (long i = Math.min(count, recent); i > 0; i--) {
+                int slot = nextSlot(0);
+                for (int c = 0; c < CHANNELS; c++) {
+                    mins[0][slot + c] = latest[c];
+                }
+            }
+            for (int c = 0; c < CHANNELS; c++) {
+                windowSums[c] = latest[c] * window;
+            }
+        }
+        if (span.length > 1) {
+            addRepeats(1, count);
+        }
+    }
+
+    /**
+     * Moves the sliding window on to a minute of the latest values, before
+     * they are stored at level 0.
+     *
+     * @param slot where the minute is about to be stored at level 0
+     * @param full whether a minute leaves the window, i.e. more minutes than
+     *             the window have been recorded
+     */
+    private void slide(int slot, boolean full) {
+        if (!full) {
+            for (int c = 0; c < CHANNELS; c++) {
+                windowSums[c] += latest[c];
+            }
+            return;
+        }
+        int leaving = slot - window * CHANNELS;
+        if (leaving < 0) {
+            leaving += recent * CHANNELS;
+        }
+        for (int c = 0; c < CHANNELS; c++) {
+            windowSums[c] += latest[c] - mins[0][leaving + c];
+        }
+    }
+
+    /**
+     * Adds the minutes level 1 has not taken yet from level 0 to the bucket
+     * it is filling, finishing it if they fill it.
+     */
+    private void mergeMinutes() {
+        int slot = next[0] - unmerged;
+        if (slot < 0) {
+            slot += recent;
+        }
+        for (; unmerged > 0; unmerged--) {
+            addBucket(1, slot * CHANNELS);
+            slot = (slot + 1 == recent) ? 0 : slot + 1;
+        }
+    }
+
+    /**
+     * Adds buckets of the level below that hold nothing but the latest
+     * values to a level, finishing as many buckets as they fill and passing
+     * those on up.
+     *
+     * @param level the level, at least 1
+     * @param count the number of buckets
+     */
+    private void addRepeats(int level, long count) {
+        long below = span[level - 1];
+        int open = level * CHANNELS;
+        if (filled[level] > 0) {
+            long take = Math.min(count, factor - filled[level]);
+            for (int c = 0; c < CHANNELS; c++) {
+                long value = latest[c];
+                openMin[open + c] = Math.min(openMin[open + c], value);
+                openMax[open + c] = Math.max(openMax[open + c], value);
+                openSum[open + c] += value * below * take;
+            }
+            filled[level] += (int) take;
+            count -= take;
+            if (filled[level] < factor) {
+                return;
+            }
+            finish(level);
+        }
+
+        // Whole buckets of the latest values, of which only the last capacity are kept
+        long whole = count / factor;
+        passOver(level, whole - capacity);
+        for (long i = Math.min(whole, capacity); i > 0; i--) {
+            int slot = nextSlot(level);
+            for (int c = 0; c < CHANNELS; c++) {
+                mins[level][slot + c] = latest[c];
+                maxs[level][slot + c] = latest[c];
+                sums[level][slot + c] = latest[c] * span[level];
+            }
+        }
+        if (whole > 0 && level + 1 < span.length) {
+            addRepeats(level + 1, whole);
+        }
+
+        int left = (int) (count % factor);
+        filled[level] = left;
+        for (int c = 0; c < CHANNELS; c++) {
+            openMin[open + c] = latest[c];
+            openMax[open + c] = latest[c];
+            openSum[open + c] = latest[c] * below * left;
+        }
+    }
+
+    /**
+     * Adds one of the level below's buckets to a level.
+     *
+     * @param level the level, at least 1
+     * @param from where the bucket starts in the level below's arrays
+     */
+    private void addBucket(int level, int from) {
+        int open = level * CHANNELS;
+        if (filled[level] == 0) {
+            System.arraycopy(mins[level - 1], from, openMin, open, CHANNELS);
+            System.arraycopy(maxs[level - 1], from, openMax, open, CHANNELS);
+            System.arraycopy(sums[level - 1], from, openSum, open, CHANNELS);
+        } else {
+            for (int c = 0; c < CHANNELS; c++) {
+                openMin[open + c] = Math.min(openMin[open + c], mins[level - 1][from + c]);
+                openMax[open + c] = Math.max(openMax[open + c], maxs[level - 1][from + c]);
+                openSum[open + c] += sums[level - 1][from + c];
+            }
+        }
+        if (++filled[level] == factor) {
+            finish(level);
+        }
+    }
+
+    /**
+     * Moves the bucket being filled at a level into the level's next slot
+     * and adds it to the level above.
+     *
+     * @param level the level, at least 1
+     */
+    private void finish(int level) {
+        int slot = nextSlot(level);
+        int open = level * CHANNELS;
+        System.arraycopy(openMin, open, mins[level], slot, CHANNELS);
+        System.arraycopy(openMax, open, maxs[level], slot, CHANNELS);
+        System.arraycopy(openSum, open, sums[level], slot, CHANNELS);
+        filled[level] = 0;
+        if (level + 1 < span.length) {
+            addBucket(level + 1, slot);
+        }
+    }
+
+    /**
+     * Counts a finished bucket at a level and returns where it goes.
+     *
+     * @param level the level
+     * @return the index of its first channel in the level's arrays
+     */
+    private int nextSlot(int level) {
+        int slot = next[level];
+        next[level] = (slot + 1 == size(level)) ? 0 : slot + 1;
+        finished[level]++;
+        return slot * CHANNELS;
+    }
+
+    /**
+     * Counts finished buckets at a level that would be dropped before they
+     * could be read, without storing them.
+     *
+     * @param level the level
+     * @param count the number of buckets, or nothing if not positive
+     */
+    private void passOver(int level, long count) {
+        if (count > 0) {
+            finished[level] += count;
+            next[level] = (int) ((next[level] + count) % size(level));
+        }
+    }
+
+    /**
+     * Returns the number of buckets a level keeps.
+     *
+     * @param level the level
+     * @return the number of buckets
+     */
+    private int size(int level) {
+        return (level == 0) ? recent : capacity;
+    }
+
+    /**
+     * Returns the name of a channel.
+     *
+     * @param channel the channel
+     * @return its name
+     */
+    static String getName(int channel) {
+        return NAMES[channel];
+    }
+
+    /**
+     * Returns the number of minutes recorded.
+     *
+     * @return the number of minutes
+     */
+    public long getMinutes() {
+        return minutes;
+    }
+
+    /**
+     * Returns the scenario's clock at the first minute recorded.
+     *
+     * @return the first minute, or 0 if none has been recorded
+     */
+    public long getFirstMinute() {
+        return first;
+    }
+
+    /**
+     * Returns a channel's value in the last minute recorded.
+     *
+     * @param channel the channel
+     * @return the value, or 0 if nothing has been recorded
+     */
+    public long getLatest(int channel) {
+        return latest[channel];
+    }
+
+    /**
+     * Returns the number of levels.
+     *
+     * @return the number of levels
+     */
+    public int getLevels() {
+        return span.length;
+    }
+
+    /**
+     * Returns the number of minutes in each of a level's buckets.
+     *
+     * @param level the level
+     * @return the number of minutes in a bucket
+     */
+    public long getBucketMinutes(int level) {
+        return span[level];
+    }
+
+    /**
+     * Returns the number of finished buckets a level still has.
+     *
+     * @param level the level
+     * @return the number of buckets, at most the capacity
+     */
+    public int getBuckets(int level) {
+        return (int) Math.min(finished[level], size(level));
+    }
+
+    /**
+     * Returns the finest level that still has every finished bucket in the
+     * given number of minutes back from the last, so a chart of that span
+     * can be drawn from one level.
+     *
+     * @param minutes the number of minutes
+     * @return the level, or the top level if none goes back that far
+     */
+    public int getLevelFor(long minutes) {
+        for (int level = 0; level < span.length; level++) {
+            if (finished[level] <= size(level) || size(level) * span[level] >= minutes) {
+                return level;
+            }
+        }
+        return span.length - 1;
+    }
+
+    /**
+     * Returns the scenario's clock at the first minute of one of a level's
+     * buckets.
+     *
+     * @param level the level
+     * @param bucket the bucket, 0 being the oldest still kept
+     * @return the first minute in the bucket
+     */
+    public long getBucketStart(int level, int bucket) {
+        return first + index(level, bucket) * span[level];
+    }
+
+    /**
+     * Returns the smallest value of a channel in one of a level's buckets.
+     *
+     * @param level the level
+     * @param bucket the bucket, 0 being the oldest still kept
+     * @param channel the channel
+     * @return the smallest value
+     */
+    public long getMin(int level, int bucket, int channel) {
+        return mins[level][slot(level, bucket) + channel];
+    }
+
+    /**
+     * Returns the largest value of a channel in one of a level's buckets.
+     *
+     * @param level the level
+     * @param bucket the bucket, 0 being the oldest still kept
+     * @param channel the channel
+     * @return the largest value
+     */
+    public long getMax(int level, int bucket, int channel) {
+        return maxs[level][slot(level, bucket) + channel];
+    }
+
+    /**
+     * Returns the mean value of a channel over one of a level's buckets.
+     *
+     * @param level the level
+     * @param bucket the bucket, 0 being the oldest still kept
+     * @param channel the channel
+     * @return the mean value
+     */
+    public double getMean(int level, int bucket, int channel) {
+        return (double) sums[level][slot(level, bucket) + channel] / span[level];
+    }
+
+    /**
+     * Returns the number of minutes the sliding window covers.
+     *
+     * @return the window length
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Returns the sum of a channel over the last {@link #getWindow()} minutes,
+     * or over every minute if fewer have been recorded.
+     *
+     * @param channel the channel
+     * @return the sum, e.g. the number of deaths in the window
+     */
+    public long getWindowSum(int channel) {
+        return windowSums[channel];
+    }
+
+    /**
+     * Returns the mean of a channel over the last {@link #getWindow()}
+     * minutes, or over every minute if fewer have been recorded.
+     *
+     * @param channel the channel
+     * @return the mean, e.g. the share of the window someone was being treated
+     */
+    public double getWindowMean(int channel) {
+        long covered = Math.min(minutes, window);
+        return (covered == 0) ? 0 : (double) windowSums[channel] / covered;
+    }
+
+    /**
+     * Returns how many a channel counts per the given number of minutes,
+     * at the rate of the sliding window.
+     *
+     * @param channel the channel
+     * @param per the number of minutes, e.g. 1,000 for deaths per 1,000 minutes
+     * @return the rate
+     */
+    public double getWindowRate(int channel, long per) {
+        return getWindowMean(channel) * per;
+    }
+
+    /**
+     * Returns the number of one of a level's buckets since the first.
+     *
+     * @param level the level
+     * @param bucket the bucket, 0 being the oldest still kept
+     * @return the bucket's number
+     * @throws IndexOutOfBoundsException if the level does not have the bucket
+     */
+    private long index(int level, int bucket) {
+        int kept = getBuckets(level);
+        if (bucket < 0 || bucket >= kept) {
+            throw new IndexOutOfBoundsException("Bucket " + bucket + " of " + kept);
+        }
+        return finished[level] - kept + bucket;
+    }
+
+    /**
+     * Returns where one of a level's buckets starts in its arrays.
+     *
+     * @param level the level
+     * @param bucket the bucket, 0 being the oldest still kept
+     * @return the index of its first channel
+     */
+    private int slot(int level, int bucket) {
+        return (int) (index(level, bucket) % size(level)) * CHANNELS;
+    }
+}
@@ -45,6 +45,88 @@ class TreatAll extends Scenario {
     //*******         MAKE YOUR CHANGES BELOW        *******
     //******************************************************
     
+    /**
+     * The number of minutes this scenario has run, used as the clock for
+     * people's deadlines.
+     */
+    protected long clock = 0;
+
+    /**
+     * Everyone's deadlines when expiring people by deadline, otherwise
+     * {@code null} and everyone in line is ticked each minute instead.
+     */
+    protected DeadlineQueue deadlines;
+
+    /**
+     * The number of people who have died but are still physically in
+     * {@code treatmentLine}. In deadline mode, dead people are only removed
+     * once they reach the front of the line, so {@link #getTreatmentLine()}
+     * returns them too; {@link #getTreatmentLine(int)} leaves them out.
+     */
+    private int deadInLine = 0;
+
+    /**
+     * The filter used to sweep a line in tick mode.
+     */
+    private final java.util.function.Predicate<Person> deathSweep = this::tickAndRecordDead;
+
+    /**
+     * How long each person treated was in the treatment line, from joining
+     * it until their treatment finished.
+     */
+    private final LogHistogram treatmentWaits = new LogHistogram();
+
+    /**
+     * How long each person who died had been in the scenario.
+     */
+    private final LogHistogram deathTimes = new LogHistogram();
+
+    /**
+     * The minutes from one treatment finishing to the next.
+     */
+    private final LogHistogram treatmentGaps = new LogHistogram();
+
+    /**
+     * The time the last treatment finished, or -1 if none has.
+     */
+    private long lastTreatment = -1;
+
+    /**
+     * The number of minutes someone was being treated.
+     */
+    protected long treatingMinutes = 0;
+
+    /**
+     * Constructs a TreatAll scenario with the specified treatment time,
+     * optionally expiring people by absolute deadline.
+     * 
+     * @param treatmentTime the time required to administer a treatment regimen
+     * @param expireByDeadline whether to expire people by deadline instead of
+     *                         ticking everyone in line every minute
+     */
+    public TreatAll(int treatmentTime, boolean expireByDeadline) {
+        this(treatmentTime);
+        this.deadlines = expireByDeadline ? new DeadlineQueue() : null;
+    }
+
+    /**
+     * Provides the front of the treatment line for the GUI, leaving out
+     * anyone who has died but not yet reached the front.
+     * 
+     * @param limit the most people to return
+     * @return the first living people waiting for treatment, front first
+     */
+    public Line<Person> getTreatmentLine(int limit) {
+        Line<Person> front = new Line<>();
+        for (int i = 0; i < treatmentLine.getSize() && front.getSize() < limit; i++) {
+            Person p = treatmentLine.get(i);
+            if (!p.isDead()) {
+                front.add(p, front.getSize());
+            }
+        }
+        return front;
+    }
+    
     /**
      * Returns the number of people currently waiting in the treatment line.
      * 
@@ -52,7 +134,7 @@ class TreatAll extends Scenario {
      */
     @Override
     public int getPending() {
-        return treatmentLine.getSize();
+        return treatmentLine.getSize() - deadInLine;
     }
     
     /**
@@ -64,11 +146,16 @@ class TreatAll extends Scenario {
     @Override
     public void addPerson(Person p) {
         // Add a person to the back of the treatment line
+        p.arrive(clock);
         treatmentLine.add(p, treatmentLine.getSize());
+        startDeadline(p);
         
         // If they are the only person in line, they should start being treated
-        if (treatmentLine.getSize() == 1) {
+        if (getPending() == 1) {
             currentTreatmentTime = treatmentTime;
+            if (wants(SimEventSink.TREATMENT_START)) {
+                events.treatmentStart(scenarioNum, clock, p);
+            }
         }
     }
     
@@ -78,32 +165,433 @@ class TreatAll extends Scenario {
      */
     @Override
     public void tick() {
-        // Handle deaths in the line
-        for (int i = 0; i < treatmentLine.getSize(); i++) {
-            Person person = treatmentLine.get(i);
-            person.tick(); // Reduce their time left using the Person's tick method
-            if (person.isDead()) {
-                treatmentLine.remove(i);
-                numDeaths++;
-                i--;
-            }
+        clock++;
+        processMinute();
+        if (timeline != null) {
+            timeline.record(this, clock, 1);
         }
+    }
+
+    /**
+     * Does the work of one minute once {@link #tick()} has advanced the clock:
+     * handles deaths in the line and the treatment being administered.
+     */
+    protected void processMinute() {
+        // Handle deaths in the line
+        removeDeadFromTreatment();
 
         // Handle treatment being administered
-        if (treatmentLine.getSize() > 0) {
+        if (getPending() > 0) {
+            treatingMinutes++;
             currentTreatmentTime--;
             if (currentTreatmentTime <= 0) {
-                treatmentLine.remove(0);
+                Person treated = finishTreatment();
                 numSafe++;
+                recordTreatment(treated.getId(), treated.getQueued());
+                if (wants(SimEventSink.TREATMENT_FINISH)) {
+                    events.treatmentFinish(scenarioNum, clock, treated);
+                }
                 
                 // Reset treatment time if there are more people in line
-                if (treatmentLine.getSize() > 0) {
+                if (getPending() > 0) {
                     currentTreatmentTime = treatmentTime;
+                    if (wants(SimEventSink.TREATMENT_START)) {
+                        events.treatmentStart(scenarioNum, clock, peekTreatment());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns how many upcoming minutes are quiet. In deadline mode, that is
+     * until the next deadline and until the current treatment ends. In tick
+     * mode, everyone waiting is ticked every minute, so minutes are only
+     * quiet while nobody is waiting.
+     * 
+     * @return the number of quiet minutes ahead
+     */
+    @Override
+    public long getQuietMinutes() {
+        if (deadlines == null) {
+            return (getPending() == 0) ? Long.MAX_VALUE : 0;
+        }
+        long quiet = deadlines.peekDeadline() - clock - 1;
+        if (getPending() > 0) {
+            quiet = Math.min(quiet, currentTreatmentTime - 1);
+        }
+        return Math.max(quiet, 0);
+    }
+
+    /**
+     * Moves time forward over quiet minutes by just advancing the clock and
+     * the treatment countdown.
+     * 
+     * @param minutes the number of minutes to skip, at most {@link #getQuietMinutes()}
+     */
+    @Override
+    public void skip(long minutes) {
+        clock += minutes;
+        if (getPending() > 0) {
+            currentTreatmentTime -= (int) minutes;
+            treatingMinutes += minutes;
+        }
+        if (timeline != null) {
+            timeline.record(this, clock, minutes);
+        }
+    }
+
+    /**
+     * Ticks everyone waiting for treatment and removes anyone who has died,
+     * counting them in {@code numDeaths}. In deadline mode, only people whose
+     * deadline has passed are visited.
+     */
+    protected void removeDeadFromTreatment() {
+        if (deadlines != null) {
+            expireDeadlines();
+            return;
+        }
+        
+        // Reduce everyone's time left and drop the dead in one pass
+        numDeaths += treatmentLine.removeIf(deathSweep());
+    }
+
+    /**
+     * Returns the filter that ticks a person and reports whether they died,
+     * recording the death and reporting it to the event sink if it wants
+     * deaths.
+     *
+     * @return the filter to sweep a line with
+     */
+    protected java.util.function.Predicate<Person> deathSweep() {
+        return deathSweep;
+    }
+
+    /**
+     * Ticks a person and, if they died, records and reports their death.
+     *
+     * @param p the person to tick
+     * @return {@code true} if the person died
+     */
+    private boolean tickAndRecordDead(Person p) {
+        if (Person.tickAndCheckDead(p)) {
+            recordDeath(p.getId(), p.getArrived());
+            if (wants(SimEventSink.DEATH)) {
+                events.death(scenarioNum, clock, p);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the person currently at the front of the treatment line.
+     *
+     * @return the person being treated
+     */
+    protected Person peekTreatment() {
+        skipDeadInTreatment();
+        return treatmentLine.get(0);
+    }
+
+    /**
+     * Removes the person at the front of the treatment line once their
+     * treatment is complete.
+     *
+     * @return the person treated
+     */
+    protected Person finishTreatment() {
+        skipDeadInTreatment();
+        Person treated = treatmentLine.remove(0);
+        treated.clearDeadline();
+        return treated;
+    }
+
+    /**
+     * Removes dead people from the front of the treatment line. Dead people
+     * are left in line in deadline mode until they reach the front.
+     */
+    private void skipDeadInTreatment() {
+        while (treatmentLine.get(0).isDead()) {
+            treatmentLine.remove(0);
+            deadInLine--;
+        }
+    }
+
+    /**
+     * Starts a newly arrived person's deadline against this scenario's clock
+     * when running in deadline mode.
+     *
+     * @param p the person who just arrived
+     */
+    protected void startDeadline(Person p) {
+        if (deadlines != null) {
+            p.startDeadline(clock);
+            deadlines.add(p);
+        }
+    }
+
+    /**
+     * Kills everyone whose deadline has passed, counting them in
+     * {@code numDeaths} and handing each one to {@link #removeExpired}.
+     */
+    protected void expireDeadlines() {
+        Person p;
+        while ((p = deadlines.pollExpired(clock)) != null) {
+            // Skip people who already left the scenario
+            if (p.expire(clock)) {
+                numDeaths++;
+                recordDeath(p.getId(), p.getArrived());
+                removeExpired(p);
+                if (wants(SimEventSink.DEATH)) {
+                    events.death(scenarioNum, clock, p);
                 }
             }
         }
     }
+
+    /**
+     * Takes a person who just died by deadline out of their line. The
+     * treatment line is only cleaned up lazily, unless everyone in it is dead.
+     *
+     * @param p the person who died
+     */
+    protected void removeExpired(Person p) {
+        deadInLine++;
+        if (deadInLine == treatmentLine.getSize()) {
+            treatmentLine.removeIf(Person::isDead);
+            deadInLine = 0;
+        }
+    }
     
+    /**
+     * Records a treatment that just finished, and emits it to the flight
+     * recorder if a recording wants it.
+     *
+     * @param id the ID of the person treated
+     * @param queued the time the person treated joined the treatment line
+     */
+    protected void recordTreatment(long id, long queued) {
+        treatmentWaits.record(clock - queued);
+        if (lastTreatment >= 0) {
+            treatmentGaps.record(clock - lastTreatment);
+        }
+        lastTreatment = clock;
+        FlightEvents.treatmentFinish(scenarioNum, clock, id, clock - queued);
+    }
+
+    /**
+     * Records a death that just happened, and emits it to the flight
+     * recorder if a recording wants it.
+     *
+     * @param id the ID of the person who died
+     * @param arrived the time the person who died arrived
+     */
+    protected void recordDeath(long id, long arrived) {
+        deathTimes.record(clock - arrived);
+        FlightEvents.death(scenarioNum, clock, id, clock - arrived);
+    }
+
+    /**
+     * Returns how long the people treated were in the treatment line, from
+     * joining it until their treatment finished, in minutes. The histogram
+     * keeps being updated as the scenario runs.
+     *
+     * @return the treatment line times
+     */
+    public LogHistogram getTreatmentWaits() {
+        return treatmentWaits;
+    }
+
+    /**
+     * Returns how long the people who died had been in the scenario, in
+     * minutes. The histogram keeps being updated as the scenario runs.
+     *
+     * @return the times to death
+     */
+    public LogHistogram getDeathTimes() {
+        return deathTimes;
+    }
+
+    /**
+     * Returns the minutes from each treatment finishing to the next, which
+     * give the treatment throughput. The histogram keeps being updated as
+     * the scenario runs.
+     *
+     * @return the gaps between treatments
+     */
+    public LogHistogram getTreatmentGaps() {
+        return treatmentGaps;
+    }
+
+    /**
+     * Returns the number of minutes someone was being treated, which over
+     * the minutes run is how busy treatment was.
+     *
+     * @return the minutes spent treating
+     */
+    public long getTreatingMinutes() {
+        return treatingMinutes;
+    }
+
+    /**
+     * Adds the time spent treating to the state {@code Scenario} reports.
+     *
+     * @param values where to put each channel's value
+     */
+    @Override
+    protected void sampleMetrics(long[] values) {
+        super.sampleMetrics(values);
+        values[Timeline.TREATING] = treatingMinutes;
+    }
+
+    /**
+     * Returns whether this scenario expires people by deadline.
+     *
+     * @return {@code true} in deadline mode, {@code false} in tick mode
+     */
+    boolean isExpiringByDeadline() {
+        return deadlines != null;
+    }
+
+    /**
+     * Writes the clock, the treatment countdown, the histograms, the
+     * treatment line and, in deadline mode, the deadline heap to a checkpoint.
+     *
+     * @param out where to write
+     * @throws java.io.IOException if the checkpoint cannot be written
+     */
+    @Override
+    protected void writeState(Checkpoint.Writer out) throws java.io.IOException {
+        super.writeState(out);
+        out.putLong(clock);
+        out.putInt(currentTreatmentTime);
+        out.putInt(deadInLine);
+        out.putLong(lastTreatment);
+        out.putLong(treatingMinutes);
+        treatmentWaits.writeTo(out);
+        deathTimes.writeTo(out);
+        treatmentGaps.writeTo(out);
+        out.putInt(treatmentLine.getSize());
+        for (int i = 0; i < treatmentLine.getSize(); i++) {
+            out.putPerson(treatmentLine.get(i));
+        }
+        if (deadlines != null) {
+            out.putInt(deadlines.getSize());
+            for (int i = 0; i < deadlines.getSize(); i++) {
+                out.putLong(deadlines.getDeadline(i));
+                out.putPerson(deadlines.get(i));
+            }
+        }
+    }
+
+    /**
+     * Reads the state written by {@link #writeState}.
+     *
+     * @param in where to read from
+     */
+    @Override
+    protected void readState(Checkpoint.Reader in) {
+        super.readState(in);
+        clock = in.getLong();
+        currentTreatmentTime = in.getInt();
+        deadInLine = in.getInt();
+        lastTreatment = in.getLong();
+        treatingMinutes = in.getLong();
+        treatmentWaits.readFrom(in);
+        deathTimes.readFrom(in);
+        treatmentGaps.readFrom(in);
+        treatmentLine = new Line<>();
+        for (int i = in.getCount(); i > 0; i--) {
+            treatmentLine.add(in.getPerson(), treatmentLine.getSize());
+        }
+        if (deadlines != null) {
+            for (int i = in.getCount(); i > 0; i--) {
+                long deadline = in.getLong();
+                deadlines.append(deadline, in.getPerson());
+            }
+        }
+    }
+
+    /**
+     * Creates a branch of this scenario with the same treatment time.
+     *
+     * @return the branch
+     * @see Scenario#fork()
+     */
+    @Override
+    public TreatAll fork() {
+        return fork(treatmentTime);
+    }
+
+    /**
+     * Creates a branch of this scenario that treats people in the given time
+     * from now on; a treatment already under way keeps its countdown. Every
+     * {@link Person} is copied, since people change as they wait.
+     *
+     * @param treatmentTime the branch's treatment time
+     * @return the branch
+     * @throws UnsupportedOperationException if this is a subclass that cannot be forked
+     */
+    public TreatAll fork(int treatmentTime) {
+        requireForkable(TreatAll.class);
+        TreatAll branch = new TreatAll(treatmentTime, deadlines != null);
+        branch.copyState(this, new java.util.IdentityHashMap<>(countEntries()));
+        return branch;
+    }
+
+    /**
+     * Copies the clock, the treatment countdown, the histograms, the
+     * treatment line and, in deadline mode, the deadline heap of another
+     * scenario into this one.
+     *
+     * @param from the scenario to copy
+     * @param copies the copy made so far of each person
+     */
+    @Override
+    protected void copyState(Scenario from, java.util.Map<Person, Person> copies) {
+        super.copyState(from, copies);
+        TreatAll other = (TreatAll) from;
+        clock = other.clock;
+        currentTreatmentTime = other.currentTreatmentTime;
+        deadInLine = other.deadInLine;
+        lastTreatment = other.lastTreatment;
+        treatingMinutes = other.treatingMinutes;
+        treatmentWaits.copyFrom(other.treatmentWaits);
+        deathTimes.copyFrom(other.deathTimes);
+        treatmentGaps.copyFrom(other.treatmentGaps);
+        treatmentLine = new Line<>();
+        for (int i = 0; i < other.treatmentLine.getSize(); i++) {
+            treatmentLine.add(copyOf(other.treatmentLine.get(i), copies), treatmentLine.getSize());
+        }
+        if (deadlines != null) {
+            for (int i = 0; i < other.deadlines.getSize(); i++) {
+                deadlines.append(other.deadlines.getDeadline(i), copyOf(other.deadlines.get(i), copies));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of places people are kept in: an upper bound on the
+     * number of people a fork copies, used to size the table of copies.
+     *
+     * @return the number of line and deadline entries
+     */
+    protected int countEntries() {
+        return treatmentLine.getSize() + ((deadlines != null) ? deadlines.getSize() : 0);
+    }
+
+    /**
+     * Returns the copy of a person for a branch, making it the first time.
+     *
+     * @param p the person in the scenario being forked
+     * @param copies the copy made so far of each person
+     * @return the person's copy
+     */
+    protected static Person copyOf(Person p, java.util.Map<Person, Person> copies) {
+        return copies.computeIfAbsent(p, Person::copy);
+    }
+
     /**
      * Returns a string representation of the scenario, indicating the 
      * number of minutes until the doctor is free to treat the next person.
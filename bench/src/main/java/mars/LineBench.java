@@ -0,0 +1,120 @@
+package mars;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link Line}: adding and removing at the head, the tail and
+ * the middle, and {@link Line#get(int)}. Every add is paired with a remove at
+ * the same place, so the line keeps its size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineBench {
+    /**
+     * The number of people in the line.
+     */
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    /**
+     * The line being measured.
+     */
+    private Line<Person> line;
+
+    /**
+     * The person added and removed.
+     */
+    private Person person;
+
+    /**
+     * The next index read by {@link #get()}.
+     */
+    private int index;
+
+    /**
+     * Fills the line.
+     */
+    @Setup
+    public void setup() {
+        line = new Line<>();
+        for (int i = 0; i < size; i++) {
+            line.add(new Person(0.5, Integer.MAX_VALUE, i), line.getSize());
+        }
+        person = new Person(0.5, Integer.MAX_VALUE, size);
+        index = 0;
+    }
+
+    /**
+     * Adds a person at the front of the line and removes them again.
+     *
+     * @return the removed person
+     */
+    @Benchmark
+    public Person addRemoveHead() {
+        line.add(person, 0);
+        return line.remove(0);
+    }
+
+    /**
+     * Adds a person at the back of the line and removes them again.
+     *
+     * @return the removed person
+     */
+    @Benchmark
+    public Person addRemoveTail() {
+        line.add(person, size);
+        return line.remove(size);
+    }
+
+    /**
+     * Adds a person in the middle of the line and removes them again.
+     *
+     * @return the removed person
+     */
+    @Benchmark
+    public Person addRemoveMiddle() {
+        line.add(person, size / 2);
+        return line.remove(size / 2);
+    }
+
+    /**
+     * Moves the person at the front of the line to the back, the way people
+     * pass through a first-come first-served line.
+     *
+     * @return the moved person
+     */
+    @Benchmark
+    public Person rotate() {
+        Person p = line.remove(0);
+        line.add(p, size - 1);
+        return p;
+    }
+
+    /**
+     * Reads the next person in the line, wrapping around at the end.
+     *
+     * @return the person read
+     */
+    @Benchmark
+    public Person get() {
+        Person p = line.get(index);
+        index = (index + 1 == size) ? 0 : index + 1;
+        return p;
+    }
+}
@@ -0,0 +1,116 @@
+package mars;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the Test-and-Treat priority line: inserting someone by test
+ * result, as {@code TestAndTreat} does after a positive test, and taking the
+ * highest priority person out for treatment. Each insert is paired with a
+ * poll so the line keeps its size. Both the {@link PriorityLine} of
+ * {@link Person} objects and the compact {@link HandleHeap} are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriorityBench {
+    /**
+     * The number of people in the line.
+     */
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    /**
+     * The number of pre-drawn test results, a power of two.
+     */
+    private static final int RESULTS = 1 << 16;
+
+    /**
+     * Test results to insert, drawn up front so the benchmark does not
+     * measure the random number generator.
+     */
+    private double[] results;
+
+    /**
+     * The line of {@code Person} objects.
+     */
+    private PriorityLine<Person> line;
+
+    /**
+     * The store behind {@code heap}.
+     */
+    private PersonStore store;
+
+    /**
+     * The line of handles.
+     */
+    private HandleHeap heap;
+
+    /**
+     * The ID of the next person inserted.
+     */
+    private long nextId;
+
+    /**
+     * Fills both lines with the same people.
+     */
+    @Setup
+    public void setup() {
+        SplittableRandom rng = new SplittableRandom(0);
+        results = new double[RESULTS];
+        for (int i = 0; i < RESULTS; i++) {
+            results[i] = rng.nextDouble();
+        }
+        line = new PriorityLine<>();
+        store = new PersonStore();
+        heap = new HandleHeap(store);
+        for (nextId = 0; nextId < size; nextId++) {
+            double testResult = results[(int) nextId & (RESULTS - 1)];
+            line.add(new Person(testResult, Integer.MAX_VALUE, nextId));
+            heap.add(store.add(nextId, testResult, Integer.MAX_VALUE, 0));
+        }
+    }
+
+    /**
+     * Inserts a new person into the {@code PriorityLine} and takes out the
+     * one with the highest priority.
+     *
+     * @return the person taken out
+     */
+    @Benchmark
+    public Person insertPoll() {
+        long id = nextId++;
+        line.add(new Person(results[(int) id & (RESULTS - 1)], Integer.MAX_VALUE, id));
+        return line.poll();
+    }
+
+    /**
+     * Inserts a new person into the {@code HandleHeap} and takes out the one
+     * with the highest priority.
+     *
+     * @return the handle taken out
+     */
+    @Benchmark
+    public int insertPollCompact() {
+        long id = nextId++;
+        heap.add(store.add(id, results[(int) id & (RESULTS - 1)], Integer.MAX_VALUE, 0));
+        int h = heap.poll();
+        store.remove(h);
+        return h;
+    }
+}
@@ -0,0 +1,93 @@
+package mars;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end benchmarks of a {@link Simulation} with the default parameters:
+ * drawing the arrivals and running both scenarios for a minute. The
+ * simulation is rebuilt for every iteration, so each iteration covers the
+ * same stretch of minutes from the start of a run.
+ *
+ * <p>{@code mode} is as in {@link TickBench}; {@code rng} picks the single
+ * {@code Random} of earlier versions or split random streams.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulationBench {
+    /**
+     * The number of minutes run by {@link #runUntil()}.
+     */
+    private static final int MINUTES = 1000;
+
+    /**
+     * How the scenarios keep their people.
+     */
+    @Param({"tick", "deadline", "compact-tick", "compact"})
+    public String mode;
+
+    /**
+     * Where the arrivals come from, {@code legacy} or {@code split}.
+     */
+    @Param({"legacy", "split"})
+    public String rng;
+
+    /**
+     * The simulation being measured.
+     */
+    private Simulation sim;
+
+    /**
+     * Starts a new simulation with logging turned off.
+     */
+    @Setup(Level.Iteration)
+    public void setup() {
+        SimParams params = SimParams.defaults();
+        ArrivalGenerator arrivals = rng.equals("split")
+                ? new ArrivalGenerator(ArrivalGenerator.newStream(0), params)
+                : new ArrivalGenerator(0, params);
+        sim = new Simulation(arrivals, params, !mode.endsWith("tick"), mode.startsWith("compact"));
+        sim.setEventSink(SimEventSink.NONE);
+    }
+
+    /**
+     * Runs one minute with {@link Simulation#step()}.
+     *
+     * @return the minute reached
+     */
+    @Benchmark
+    public long step() {
+        sim.step();
+        return sim.getMinute();
+    }
+
+    /**
+     * Runs {@value #MINUTES} minutes with {@link Simulation#runUntil(long)},
+     * which skips quiet minutes in deadline mode. Reported per minute.
+     *
+     * @return the minute reached
+     */
+    @Benchmark
+    @OperationsPerInvocation(MINUTES)
+    public long runUntil() {
+        sim.runUntil(sim.getMinute() + MINUTES);
+        return sim.getMinute();
+    }
+}
@@ -0,0 +1,100 @@
+package mars;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of a {@link Simulation} under sparse load, where most minutes
+ * have nothing happening: {@link Simulation#step()} against
+ * {@link Simulation#runUntil(long)}, which jumps from one arrival or
+ * scenario event to the next. Both are reported per simulated minute.
+ *
+ * <p>{@code mode} and {@code rng} are as in {@link SimulationBench}. With
+ * {@code split} streams, the gaps between arrivals are drawn directly, so
+ * {@code runUntil} does not even draw a random number per minute.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SparseBench {
+    /**
+     * The number of minutes run by each call of {@link #runUntil()}.
+     */
+    private static final int MINUTES = 100_000;
+
+    /**
+     * The probability that someone arrives in a minute.
+     */
+    @Param({"0.001", "0.01", "0.05"})
+    public double arrivalProb;
+
+    /**
+     * How the scenarios keep their people.
+     */
+    @Param({"tick", "deadline", "compact-tick", "compact"})
+    public String mode;
+
+    /**
+     * Where the arrivals come from, {@code legacy} or {@code split}.
+     */
+    @Param({"legacy", "split"})
+    public String rng;
+
+    /**
+     * The simulation being measured.
+     */
+    private Simulation sim;
+
+    /**
+     * Starts a new simulation with logging turned off.
+     */
+    @Setup(Level.Iteration)
+    public void setup() {
+        SimParams params = SimParams.defaults().with("arrivalProb", arrivalProb);
+        ArrivalGenerator arrivals = rng.equals("split")
+                ? new ArrivalGenerator(ArrivalGenerator.newStream(0), params)
+                : new ArrivalGenerator(0, params);
+        sim = new Simulation(arrivals, params, !mode.endsWith("tick"), mode.startsWith("compact"));
+        sim.setEventSink(SimEventSink.NONE);
+    }
+
+    /**
+     * Runs one minute with {@link Simulation#step()}.
+     *
+     * @return the minute reached
+     */
+    @Benchmark
+    public long step() {
+        sim.step();
+        return sim.getMinute();
+    }
+
+    /**
+     * Runs {@value #MINUTES} minutes with {@link Simulation#runUntil(long)}.
+     * Reported per minute.
+     *
+     * @return the minute reached
+     */
+    @Benchmark
+    @OperationsPerInvocation(MINUTES)
+    public long runUntil() {
+        sim.runUntil(sim.getMinute() + MINUTES);
+        return sim.getMinute();
+    }
+}
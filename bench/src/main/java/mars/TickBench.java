@@ -0,0 +1,155 @@
+package mars;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks one minute of {@link TreatAll#tick()} and
+ * {@link TestAndTreat#tick()} with a long line of waiting people.
+ *
+ * <p>Treatments and tests take so long that nobody leaves the line during a
+ * run except by dying. Each person's survival time is drawn evenly between 1
+ * and twice {@code survivalTime}, so about {@code queueLength / survivalTime}
+ * people die every minute; with {@code survivalTime} at
+ * {@code Integer.MAX_VALUE} nobody is infected and nobody dies. After each
+ * tick the line is topped up with new arrivals to {@code queueLength}, so it
+ * keeps its length however long JMH runs it, and the allocations of those
+ * arrivals show up in the GC profiler like they would in a real run.
+ *
+ * <p>{@code mode} picks how the scenario is built: {@code tick} and
+ * {@code deadline} are the {@code Person} based scenarios counting everyone
+ * down each minute or expiring them by deadline, and {@code compact-tick}
+ * and {@code compact} are the same on a {@link PersonStore}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TickBench {
+    /**
+     * A treatment or testing time longer than any run.
+     */
+    private static final int FOREVER = 1_000_000_000;
+
+    /**
+     * The number of pre-drawn survival times, a power of two.
+     */
+    private static final int DRAWS = 1 << 16;
+
+    /**
+     * The scenario to tick, {@code TreatAll} or {@code TestAndTreat}.
+     */
+    @Param({"TreatAll", "TestAndTreat"})
+    public String scenario;
+
+    /**
+     * How the scenario keeps its people.
+     */
+    @Param({"tick", "deadline", "compact-tick", "compact"})
+    public String mode;
+
+    /**
+     * The number of people kept waiting in line.
+     */
+    @Param({"10", "1000", "100000", "1000000"})
+    public int queueLength;
+
+    /**
+     * The average survival time, or {@code Integer.MAX_VALUE} for nobody dying.
+     */
+    @Param({"2147483647", "100000", "1000"})
+    public int survivalTime;
+
+    /**
+     * The scenario being measured.
+     */
+    private Scenario s;
+
+    /**
+     * Survival times for arrivals, drawn up front so the benchmark does not
+     * measure the random number generator.
+     */
+    private int[] timeLefts;
+
+    /**
+     * The number of people added so far, which is also the next ID.
+     */
+    private long added;
+
+    /**
+     * Builds the scenario and fills its line. This is redone for every
+     * iteration so each one starts from the same state.
+     */
+    @Setup(Level.Iteration)
+    public void setup() {
+        SplittableRandom rng = new SplittableRandom(0);
+        timeLefts = new int[DRAWS];
+        for (int i = 0; i < DRAWS; i++) {
+            timeLefts[i] = (survivalTime == Integer.MAX_VALUE)
+                    ? Integer.MAX_VALUE : 1 + rng.nextInt(2 * survivalTime);
+        }
+        s = newScenario(scenario, mode);
+        added = 0;
+        topUp();
+    }
+
+    /**
+     * Ticks the scenario one minute and refills its line.
+     *
+     * @return the number of deaths so far
+     */
+    @Benchmark
+    public int tick() {
+        s.tick();
+        topUp();
+        return s.getDeaths();
+    }
+
+    /**
+     * Adds arrivals until {@code queueLength} people are alive in the scenario.
+     */
+    private void topUp() {
+        while (added - s.getDeaths() - s.getSafe() < queueLength) {
+            s.addArrival(added, 0.5, timeLefts[(int) added & (DRAWS - 1)]);
+            added++;
+        }
+    }
+
+    /**
+     * Creates a scenario in which nobody finishes being tested or treated.
+     *
+     * @param scenario {@code TreatAll} or {@code TestAndTreat}
+     * @param mode {@code tick}, {@code deadline}, {@code compact-tick} or {@code compact}
+     * @return the scenario
+     */
+    static Scenario newScenario(String scenario, String mode) {
+        boolean compact = mode.startsWith("compact");
+        boolean expireByDeadline = !mode.endsWith("tick");
+        double threshold = SimParams.DEFAULT_TRIAGE_THRESHOLD;
+        switch (scenario) {
+            case "TreatAll":
+                return compact ? new CompactTreatAll(FOREVER, expireByDeadline)
+                        : new TreatAll(FOREVER, expireByDeadline);
+            case "TestAndTreat":
+                return compact ? new CompactTestAndTreat(FOREVER, FOREVER, threshold, expireByDeadline)
+                        : new TestAndTreat(FOREVER, FOREVER, threshold, expireByDeadline);
+            default:
+                throw new IllegalArgumentException("Unknown scenario: " + scenario);
+        }
+    }
+}